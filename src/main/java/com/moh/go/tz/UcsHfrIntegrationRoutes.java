@@ -1,18 +1,52 @@
 package com.moh.go.tz;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.NotUsed;
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpCharsets;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.MediaTypes;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ETag;
+import akka.http.javadsl.model.headers.EntityTag;
+import akka.http.javadsl.model.headers.RetryAfter;
+import akka.http.javadsl.server.PathMatchers;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
+import com.moh.go.tz.domain.DeadLetter;
 import com.moh.go.tz.domain.HfrFacilityPayload;
 import com.moh.go.tz.domain.SyncResponse;
+import com.moh.go.tz.domain.WarmUpStatus;
+import com.moh.go.tz.service.AdmissionControl;
 import com.moh.go.tz.service.LocationSyncService;
+import com.moh.go.tz.service.RefreshScheduler;
+import com.moh.go.tz.service.RegionRouter;
 import com.moh.go.tz.util.CustomJacksonSupport;
+import com.moh.go.tz.util.LocationExportFormat;
+import com.moh.go.tz.util.SyncMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static akka.http.javadsl.server.Directives.*;
 
@@ -22,30 +56,313 @@ import static akka.http.javadsl.server.Directives.*;
 public class UcsHfrIntegrationRoutes {
     //#routes-class
     private final static Logger log = LoggerFactory.getLogger(UcsHfrIntegrationRoutes.class);
+    /**
+     * Request header that asks for the timing breakdown of a facility sync in the response.
+     */
+    public static final String TIMINGS_HEADER = "X-Sync-Timings";
+    private static final int EXPORT_ROWS_PER_CHUNK = 256;
     private final LocationSyncService locationSyncService;
+    private final SyncMetrics metrics;
+    private final ActorSystem<?> system;
+    private final ActorRef<RefreshScheduler.Command> refreshScheduler;
+    private final Duration askTimeout;
+    private final int replayParallelism;
+    private final long retryAfterSeconds;
     private final Executor executor;
+    private final AdmissionControl facilityAdmission;
+    private final AdmissionControl replayAdmission;
+    private final int maxLookupCodes;
+    private final int maxSearchResults;
+    private final int maxNearestFacilities;
 
     public UcsHfrIntegrationRoutes(ActorSystem<?> system, LocationSyncService locationSyncService) {
+        this(system, locationSyncService, null);
+    }
+
+    /**
+     * @param refreshScheduler when set (cluster mode), manual refreshes are handed to the singleton scheduler
+     *                         so that only one refresh runs across the cluster
+     */
+    public UcsHfrIntegrationRoutes(ActorSystem<?> system, LocationSyncService locationSyncService,
+                                   ActorRef<RefreshScheduler.Command> refreshScheduler) {
+        this.system = system;
         this.locationSyncService = locationSyncService;
+        this.metrics = locationSyncService.getMetrics();
+        this.refreshScheduler = refreshScheduler;
+        this.askTimeout = system.settings().config().getDuration("integration-service.routes.ask-timeout");
+        this.replayParallelism = system.settings().config().getInt("hfr.dead-letter.replay-parallelism");
+        this.retryAfterSeconds = system.settings().config().getDuration("integration-service.startup.retry-after").toSeconds();
         executor = system.classicSystem().dispatcher();
+        this.facilityAdmission = new AdmissionControl(system.settings().config(), "facility", metrics);
+        this.replayAdmission = new AdmissionControl(system.settings().config(), "dead-letter-replay", metrics);
+        this.maxLookupCodes = system.settings().config().getInt("integration-service.locations.max-lookup-codes");
+        this.maxSearchResults = system.settings().config().getInt("integration-service.locations.max-search-results");
+        this.maxNearestFacilities = system.settings().config().getInt("hfr.facility-index.max-results");
     }
 
     private CompletionStage<SyncResponse> syncFacility(HfrFacilityPayload payload) {
-        return CompletableFuture.supplyAsync(() -> locationSyncService.syncFacility(payload), executor);
+        if (locationSyncService.isJournalEnabled()) {
+            return timed("/hfr/facility",
+                    CompletableFuture.supplyAsync(() -> locationSyncService.acceptFacility(payload), executor));
+        }
+        return timed("/hfr/facility", applyFacility(payload));
     }
 
-    private CompletionStage<SyncResponse> refreshHierarchy() {
-        return CompletableFuture.supplyAsync(locationSyncService::refreshFromHfr, executor);
+    private CompletableFuture<SyncResponse> applyFacility(HfrFacilityPayload payload) {
+        RegionRouter router = locationSyncService.getRegionRouter();
+        return router != null && payload != null
+                ? router.syncFacility(payload).toCompletableFuture()
+                : CompletableFuture.supplyAsync(() -> locationSyncService.syncFacility(payload), executor);
+    }
+
+    /**
+     * Re-runs dead-lettered payloads through the normal sync path, at most {@code replayParallelism}
+     * at a time. Facilities that now sync are removed from the store.
+     */
+    private CompletionStage<SyncResponse> replayDeadLetters(List<DeadLetter> deadLetters) {
+        CompletionStage<int[]> counts = Source.from(deadLetters)
+                .mapAsyncUnordered(replayParallelism, deadLetter -> applyFacility(deadLetter.getPayload())
+                        .handle((response, error) -> {
+                            boolean ok = error == null && "success".equalsIgnoreCase(response.getStatus());
+                            if (ok) {
+                                locationSyncService.getDeadLetters().resolve(deadLetter.getPayload());
+                            }
+                            return ok;
+                        }))
+                .runFold(new int[2], (acc, ok) -> {
+                    acc[ok ? 0 : 1]++;
+                    return acc;
+                }, system);
+        return timed("/hfr/dead-letters/replay", counts.toCompletableFuture().thenApply(acc ->
+                new SyncResponse("success", String.format("Replayed %d dead-lettered facilities: %d succeeded, %d failed",
+                        deadLetters.size(), acc[0], acc[1]))));
+    }
+
+    private Route withDeadLetterFilter(Function<List<DeadLetter>, Route> inner) {
+        return parameterOptional("region", region ->
+                parameterOptional("errorType", errorType ->
+                        parameterOptional(StringUnmarshallers.LONG, "olderThanMinutes", olderThan ->
+                                inner.apply(locationSyncService.getDeadLetters().list(
+                                        region.orElse(null),
+                                        errorType.orElse(null),
+                                        olderThan.map(minutes -> Duration.ofMinutes(minutes).toMillis())
+                                                .orElse(null))))));
+    }
+
+    private CompletionStage<SyncResponse> refreshHierarchy(boolean resume) {
+        if (refreshScheduler != null) {
+            return AskPattern.<RefreshScheduler.Command, SyncResponse>ask(refreshScheduler,
+                    replyTo -> new RefreshScheduler.TriggerRefresh(resume, replyTo), askTimeout, system.scheduler());
+        }
+        return timed("/hfr/refresh-hierarchy",
+                CompletableFuture.completedFuture(locationSyncService.startRefresh(resume, "manual",
+                        system.dispatchers().lookup(DispatcherSelector.blocking()))));
+    }
+
+    private CompletionStage<SyncResponse> timed(String endpoint, CompletableFuture<SyncResponse> future) {
+        long started = System.nanoTime();
+        return future.whenComplete((response, error) -> {
+            String outcome = error != null ? "exception" : response.getStatus();
+            metrics.recordEndpoint(endpoint, outcome, System.nanoTime() - started);
+        });
     }
 
     private Route completeResponse(SyncResponse response) {
-        var status = "error".equalsIgnoreCase(response.getStatus()) ? StatusCodes.BAD_REQUEST : StatusCodes.OK;
+        return completeResponse(response, false);
+    }
+
+    private Route completeResponse(SyncResponse response, boolean withTimings) {
+        if (!withTimings) {
+            response = response.withoutTimings();
+        }
+        var status = "error".equalsIgnoreCase(response.getStatus()) ? StatusCodes.BAD_REQUEST
+                : LocationSyncService.REFRESH_BUSY.equals(response.getStatus()) ? StatusCodes.CONFLICT
+                : "accepted".equalsIgnoreCase(response.getStatus()) ? StatusCodes.ACCEPTED : StatusCodes.OK;
         log.info("HFR sync responded with {} - {}", response.getStatus(), response.getMessage());
         return complete(status, response, CustomJacksonSupport.customJacksonMarshaller());
     }
 
     /**
-     * Routes that expose HFR endpoints.
+     * Runs the inner route once the location cache has loaded; until then answers 503 with Retry-After.
+     */
+    private Route whenReady(Supplier<Route> inner) {
+        if (locationSyncService.isReady()) {
+            return inner.get();
+        }
+        WarmUpStatus status = locationSyncService.getWarmUpStatus();
+        return respondWithHeader(RetryAfter.create(retryAfterSeconds), () ->
+                complete(StatusCodes.SERVICE_UNAVAILABLE,
+                        new SyncResponse("unavailable", String.format(
+                                "Location cache is still loading (%d locations so far)", status.getLoadedLocations())),
+                        CustomJacksonSupport.customJacksonMarshaller()));
+    }
+
+    /**
+     * Runs {@code task} under {@code admission} and completes with its response, or answers 429/503 with
+     * Retry-After at once if the endpoint is saturated.
+     */
+    private Route admitted(AdmissionControl admission, Supplier<CompletionStage<SyncResponse>> task,
+                           Function<SyncResponse, Route> inner) {
+        CompletionStage<SyncResponse> response;
+        try {
+            response = admission.submit(task);
+        } catch (AdmissionControl.Rejected rejected) {
+            log.warn("Shed request to {}: {}", admission.getEndpoint(), rejected.getMessage());
+            return respondWithHeader(RetryAfter.create(rejected.getRetryAfterSeconds()), () ->
+                    complete(StatusCodes.get(rejected.getStatus()),
+                            new SyncResponse("unavailable", rejected.getMessage()),
+                            CustomJacksonSupport.customJacksonMarshaller()));
+        }
+        return onSuccess(response, inner);
+    }
+
+    /**
+     * Serves a read from the location cache with a strong ETag of the cache version, answering 304 when
+     * the client's If-None-Match still matches and 404 when {@code read} finds nothing.
+     */
+    private Route fromCache(Supplier<Object> read) {
+        EntityTag tag = EntityTag.create(locationSyncService.getCacheTag(), false);
+        return conditional(tag, () -> onSuccess(CompletableFuture.supplyAsync(read, executor), result ->
+                result != null
+                        ? complete(StatusCodes.OK, result, CustomJacksonSupport.customJacksonMarshaller())
+                        : complete(StatusCodes.NOT_FOUND, new SyncResponse("error", "Location is not cached"),
+                        CustomJacksonSupport.customJacksonMarshaller())));
+    }
+
+    /**
+     * Batch lookup by code. The ETag also covers the requested codes, and a matching If-None-Match is
+     * answered with 304 although this is a POST, since the lookup does not change anything. The tag is weak
+     * because the same codes in another order give the same locations in that order.
+     */
+    private Route lookupLocations(String[] codes) {
+        if (codes.length > maxLookupCodes) {
+            return complete(StatusCodes.BAD_REQUEST, new SyncResponse("error",
+                            String.format("At most %d codes per lookup", maxLookupCodes)),
+                    CustomJacksonSupport.customJacksonMarshaller());
+        }
+        EntityTag tag = EntityTag.create(locationSyncService.getCacheTag() + "-" + codesDigest(codes), true);
+        return respondWithHeader(ETag.create(tag), () -> optionalHeaderValueByName("If-None-Match", ifNoneMatch ->
+                ifNoneMatch.filter(value -> ifNoneMatchMatches(value, tag.tag())).isPresent()
+                        ? complete(StatusCodes.NOT_MODIFIED)
+                        : onSuccess(CompletableFuture.supplyAsync(
+                                () -> locationSyncService.lookupLocations(Arrays.asList(codes)), executor),
+                        lookup -> complete(StatusCodes.OK, lookup, CustomJacksonSupport.customJacksonMarshaller()))));
+    }
+
+    /**
+     * SHA-256 of the distinct codes, sorted, as hex.
+     */
+    static String codesDigest(String[] codes) {
+        TreeSet<String> sorted = new TreeSet<>();
+        for (String code : codes) {
+            sorted.add(String.valueOf(code));
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String code : sorted) {
+                digest.update(code.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Whether an If-None-Match value matches {@code opaqueTag} with the weak comparison RFC 9110 prescribes
+     * for it: {@code *}, or a comma-separated list of entity tags, each optionally {@code W/}-prefixed. A
+     * malformed value matches nothing.
+     */
+    static boolean ifNoneMatchMatches(String value, String opaqueTag) {
+        if ("*".equals(value.trim())) {
+            return true;
+        }
+        int i = 0;
+        int length = value.length();
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == ' ' || c == '\t' || c == ',') {
+                i++;
+                continue;
+            }
+            if (value.startsWith("W/", i)) {
+                i += 2;
+            }
+            if (i >= length || value.charAt(i) != '"') {
+                return false;
+            }
+            int end = value.indexOf('"', i + 1);
+            if (end < 0) {
+                return false;
+            }
+            if (value.regionMatches(i + 1, opaqueTag, 0, opaqueTag.length()) && end - i - 1 == opaqueTag.length()) {
+                return true;
+            }
+            i = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Streams the cached hierarchy as a chunked NDJSON or CSV body, a few hundred rows per chunk, without
+     * holding the whole export in memory.
+     */
+    private Route exportLocations(String format, String codePrefix) {
+        boolean csv = LocationExportFormat.CSV.equalsIgnoreCase(format);
+        if (!csv && !LocationExportFormat.NDJSON.equalsIgnoreCase(format)) {
+            return complete(StatusCodes.BAD_REQUEST, new SyncResponse("error", "format must be ndjson or csv"),
+                    CustomJacksonSupport.customJacksonMarshaller());
+        }
+        Source<ByteString, NotUsed> rows = Source.fromIterator(() -> locationSyncService.exportLocations(codePrefix))
+                .map(row -> csv ? LocationExportFormat.csv(row) : LocationExportFormat.ndjson(row))
+                .grouped(EXPORT_ROWS_PER_CHUNK)
+                .map(lines -> {
+                    ByteStringBuilder chunk = new ByteStringBuilder();
+                    lines.forEach(chunk::putBytes);
+                    return chunk.result();
+                });
+        if (csv) {
+            rows = Source.single(ByteString.fromArray(LocationExportFormat.csvHeader())).concat(rows);
+        }
+        ContentType contentType = csv
+                ? MediaTypes.TEXT_CSV.toContentType(HttpCharsets.UTF_8)
+                : MediaTypes.applicationWithFixedCharset("x-ndjson", HttpCharsets.UTF_8).toContentType();
+        return complete(HttpEntities.create(contentType, rows));
+    }
+
+    private Route nearestFacilities() {
+        return parameter(StringUnmarshallers.DOUBLE, "lat", lat ->
+                parameter(StringUnmarshallers.DOUBLE, "lon", lon ->
+                        parameterOptional(StringUnmarshallers.INTEGER, "k", k ->
+                                parameterOptional(StringUnmarshallers.DOUBLE, "radiusKm", radiusKm ->
+                                        parameterOptional("type", type -> {
+                                            if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+                                                return complete(StatusCodes.BAD_REQUEST,
+                                                        new SyncResponse("error", "lat/lon out of range"),
+                                                        CustomJacksonSupport.customJacksonMarshaller());
+                                            }
+                                            int limit = Math.min(k.orElse(10), maxNearestFacilities);
+                                            double radiusMeters = radiusKm.map(km -> km * 1000).orElse(0.0);
+                                            return complete(StatusCodes.OK, locationSyncService.findNearestFacilities(
+                                                            lat, lon, limit, radiusMeters, type.orElse(null)),
+                                                    CustomJacksonSupport.customJacksonMarshaller());
+                                        })))));
+    }
+
+    private Route readiness() {
+        WarmUpStatus status = locationSyncService.getWarmUpStatus();
+        if (status.isReady()) {
+            return complete(StatusCodes.OK, status, CustomJacksonSupport.customJacksonMarshaller());
+        }
+        return respondWithHeader(RetryAfter.create(retryAfterSeconds), () ->
+                complete(StatusCodes.SERVICE_UNAVAILABLE, status, CustomJacksonSupport.customJacksonMarshaller()));
+    }
+
+    /**
+     * Routes that expose HFR endpoints. Facility syncs (unless journaled), refreshes and replays are
+     * rejected with 503 until the location cache has loaded; facility syncs and replays are also subject
+     * to admission control.
      */
     public Route routes() {
         return concat(
@@ -54,13 +371,97 @@ public class UcsHfrIntegrationRoutes {
                                 path("facility", () ->
                                         post(() ->
                                                 entity(CustomJacksonSupport.customJacksonUnmarshaller(HfrFacilityPayload.class),
-                                                        payload -> onSuccess(syncFacility(payload), this::completeResponse))
+                                                        payload -> optionalHeaderValueByName(TIMINGS_HEADER, timings -> {
+                                                            boolean withTimings = timings.map(Boolean::parseBoolean).orElse(false);
+                                                            return locationSyncService.isJournalEnabled()
+                                                                    ? admitted(facilityAdmission, () -> syncFacility(payload),
+                                                                    this::completeResponse)
+                                                                    : whenReady(() -> admitted(facilityAdmission,
+                                                                    () -> syncFacility(payload),
+                                                                    response -> completeResponse(response, withTimings)));
+                                                        }))
+                                        )
+                                ),
+                                pathPrefix("dead-letters", () ->
+                                        concat(
+                                                pathEnd(() -> get(() -> withDeadLetterFilter(deadLetters ->
+                                                        complete(StatusCodes.OK, deadLetters,
+                                                                CustomJacksonSupport.customJacksonMarshaller())))),
+                                                path("replay", () -> post(() -> whenReady(() ->
+                                                        withDeadLetterFilter(deadLetters -> admitted(replayAdmission,
+                                                                () -> replayDeadLetters(deadLetters), this::completeResponse)))))
                                         )
                                 ),
+                                path("drift", () ->
+                                        get(() -> whenReady(() -> parameterOptional(StringUnmarshallers.INTEGER, "limit", limit ->
+                                                parameterOptional("prefix", prefix ->
+                                                        onSuccess(CompletableFuture.supplyAsync(() -> locationSyncService
+                                                                        .detectDrift(limit.orElse(null), prefix.orElse(null)), executor),
+                                                                report -> complete(StatusCodes.OK, report,
+                                                                        CustomJacksonSupport.customJacksonMarshaller()))))))
+                                ),
+                                path("slow-syncs", () ->
+                                        get(() -> complete(StatusCodes.OK, locationSyncService.getRecentSlowSyncs(),
+                                                CustomJacksonSupport.customJacksonMarshaller()))
+                                ),
+                                path("refresh-runs", () ->
+                                        get(() -> complete(StatusCodes.OK, locationSyncService.getRecentRefreshRuns(),
+                                                CustomJacksonSupport.customJacksonMarshaller()))
+                                ),
                                 path("refresh-hierarchy", () ->
-                                        post(() -> onSuccess(refreshHierarchy(), this::completeResponse))
+                                        post(() -> whenReady(() -> parameterOptional("resume", resume ->
+                                                onSuccess(refreshHierarchy(resume.map(Boolean::parseBoolean).orElse(false)),
+                                                        this::completeResponse))))
+                                )
+                        )
+                ),
+                pathPrefix("locations", () -> whenReady(() ->
+                        concat(
+                                path("export", () ->
+                                        get(() -> parameterOptional("format", format ->
+                                                parameterOptional("prefix", prefix ->
+                                                        exportLocations(format.orElse(LocationExportFormat.NDJSON),
+                                                                prefix.orElse(null)))))
+                                ),
+                                path("search", () ->
+                                        get(() -> parameter("q", q ->
+                                                parameterOptional("tag", tag ->
+                                                        parameterOptional("ancestor", ancestor ->
+                                                                parameterOptional(StringUnmarshallers.INTEGER, "limit", limit ->
+                                                                        fromCache(() -> locationSyncService.searchLocations(q,
+                                                                                tag.orElse(null), ancestor.orElse(null),
+                                                                                Math.min(limit.orElse(10), maxSearchResults))))))))
+                                ),
+                                path(PathMatchers.segment("by-code").slash(PathMatchers.segment()), code ->
+                                        get(() -> fromCache(() -> locationSyncService.findLocationView(code)))
+                                ),
+                                path(PathMatchers.segment().slash("ancestors"), uuid ->
+                                        get(() -> fromCache(() -> locationSyncService.findAncestors(uuid)))
+                                ),
+                                path("code-mismatches", () ->
+                                        get(() -> parameterOptional("prefix", prefix ->
+                                                parameterOptional(StringUnmarshallers.INTEGER, "limit", limit ->
+                                                        fromCache(() -> locationSyncService.findCodeParentMismatches(
+                                                                prefix.orElse(null), limit.orElse(null))))))
+                                ),
+                                path("lookup", () ->
+                                        post(() -> entity(CustomJacksonSupport.customJacksonUnmarshaller(String[].class),
+                                                this::lookupLocations))
                                 )
                         )
+                )),
+                path(PathMatchers.segment("facilities").slash("nearest"), () ->
+                        get(this::nearestFacilities)
+                ),
+                pathPrefix("health", () ->
+                        concat(
+                                path("live", () -> get(() -> complete(StatusCodes.OK, new SyncResponse("success", "live"),
+                                        CustomJacksonSupport.customJacksonMarshaller()))),
+                                path("ready", () -> get(this::readiness))
+                        )
+                ),
+                path("metrics", () ->
+                        get(() -> complete(HttpEntities.create(ContentTypes.TEXT_PLAIN_UTF8, metrics.render())))
                 )
         );
     }
@@ -1,13 +1,20 @@
 package com.moh.go.tz;
 
 import akka.NotUsed;
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.typed.ClusterSingleton;
+import akka.cluster.typed.SingletonActor;
 import akka.http.javadsl.Http;
 import akka.http.javadsl.ServerBinding;
 import akka.http.javadsl.server.Route;
+import com.moh.go.tz.service.ClusterFacilitySync;
 import com.moh.go.tz.service.LocationSyncService;
+import com.moh.go.tz.service.RefreshScheduler;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.CompletionStage;
@@ -35,19 +42,36 @@ public class UcsHfrIntegrationServiceApp {
 
     public static void main(String[] args) throws Exception {
         //#server-bootstrapping
+        Config config = ConfigFactory.load();
+        boolean clustered = config.getBoolean("integration-service.cluster.enabled");
+        if (clustered) {
+            config = ConfigFactory.parseString("akka.actor.provider = cluster").withFallback(config);
+        }
+
         Behavior<NotUsed> rootBehavior = Behaviors.setup(context -> {
-            LocationSyncService locationSyncService = new LocationSyncService();
+            Config systemConfig = context.getSystem().settings().config();
+            LocationSyncService locationSyncService = new LocationSyncService(systemConfig);
+            ActorRef<RefreshScheduler.Command> refreshScheduler = null;
+            if (clustered) {
+                locationSyncService.setRegionRouter(new ClusterFacilitySync(context.getSystem(), locationSyncService));
+                refreshScheduler = ClusterSingleton.get(context.getSystem()).init(
+                        SingletonActor.of(RefreshScheduler.create(locationSyncService, systemConfig), "hfr-refresh-scheduler"));
+            } else if (systemConfig.getBoolean("integration-service.scheduler.enabled")) {
+                context.spawn(RefreshScheduler.create(locationSyncService, systemConfig), "hfr-refresh-scheduler");
+            }
             UcsHfrIntegrationRoutes ucsHfrIntegrationRoutes =
                     new UcsHfrIntegrationRoutes(context.getSystem(),
-                            locationSyncService);
+                            locationSyncService, refreshScheduler);
             Route routes = ucsHfrIntegrationRoutes.routes();
             startHttpServer(routes, context.getSystem());
+            // Load the location cache only after binding, so a slow OpenMRS does not keep the port closed
+            locationSyncService.startWarmUp();
 
             return Behaviors.empty();
         });
 
         // boot up server using the route as defined below
-        ActorSystem.create(rootBehavior, "UcsHfrIntegrationServiceServer");
+        ActorSystem.create(rootBehavior, "UcsHfrIntegrationServiceServer", config);
         //#server-bootstrapping
     }
 
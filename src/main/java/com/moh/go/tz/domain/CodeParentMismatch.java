@@ -0,0 +1,50 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A cached location whose OpenMRS parent is not the location its code implies, e.g. a ward
+ * {@code TZ.LK.GE.MW.3.13} that OpenMRS keeps under a council other than {@code TZ.LK.GE.MW.3}.
+ * {@code parentUuid}/{@code parentCode} are the actual parent, null if it has none.
+ */
+public class CodeParentMismatch {
+    private final LocationView location;
+    private final String parentUuid;
+    private final String parentCode;
+    private final String expectedParentUuid;
+    private final String expectedParentCode;
+
+    @JsonCreator
+    public CodeParentMismatch(@JsonProperty("location") LocationView location,
+                              @JsonProperty("parentUuid") String parentUuid,
+                              @JsonProperty("parentCode") String parentCode,
+                              @JsonProperty("expectedParentUuid") String expectedParentUuid,
+                              @JsonProperty("expectedParentCode") String expectedParentCode) {
+        this.location = location;
+        this.parentUuid = parentUuid;
+        this.parentCode = parentCode;
+        this.expectedParentUuid = expectedParentUuid;
+        this.expectedParentCode = expectedParentCode;
+    }
+
+    public LocationView getLocation() {
+        return location;
+    }
+
+    public String getParentUuid() {
+        return parentUuid;
+    }
+
+    public String getParentCode() {
+        return parentCode;
+    }
+
+    public String getExpectedParentUuid() {
+        return expectedParentUuid;
+    }
+
+    public String getExpectedParentCode() {
+        return expectedParentCode;
+    }
+}
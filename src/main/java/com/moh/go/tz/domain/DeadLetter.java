@@ -0,0 +1,69 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A facility payload whose sync failed, kept until a later sync of the same facility succeeds.
+ */
+public class DeadLetter {
+    private final String facilityCode;
+    private final String regionCode;
+    private final String errorType;
+    private final String error;
+    private final int attempts;
+    private final long firstFailedAt;
+    private final long lastFailedAt;
+    private final HfrFacilityPayload payload;
+
+    @JsonCreator
+    public DeadLetter(@JsonProperty("facilityCode") String facilityCode,
+                      @JsonProperty("regionCode") String regionCode,
+                      @JsonProperty("errorType") String errorType,
+                      @JsonProperty("error") String error,
+                      @JsonProperty("attempts") int attempts,
+                      @JsonProperty("firstFailedAt") long firstFailedAt,
+                      @JsonProperty("lastFailedAt") long lastFailedAt,
+                      @JsonProperty("payload") HfrFacilityPayload payload) {
+        this.facilityCode = facilityCode;
+        this.regionCode = regionCode;
+        this.errorType = errorType;
+        this.error = error;
+        this.attempts = attempts;
+        this.firstFailedAt = firstFailedAt;
+        this.lastFailedAt = lastFailedAt;
+        this.payload = payload;
+    }
+
+    public String getFacilityCode() {
+        return facilityCode;
+    }
+
+    public String getRegionCode() {
+        return regionCode;
+    }
+
+    public String getErrorType() {
+        return errorType;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getFirstFailedAt() {
+        return firstFailedAt;
+    }
+
+    public long getLastFailedAt() {
+        return lastFailedAt;
+    }
+
+    public HfrFacilityPayload getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,57 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One administrative location where OpenMRS differs from HFR. {@code reason} is {@code missingInOpenmrs},
+ * {@code missingInHfr}, {@code changed} (name or parent) or {@code childrenDiffer} (villages or
+ * facilities of a ward).
+ */
+public class DriftEntry {
+    private final String level;
+    private final String code;
+    private final String regionCode;
+    private final String reason;
+    private final String hfrName;
+    private final String openmrsName;
+
+    @JsonCreator
+    public DriftEntry(@JsonProperty("level") String level,
+                      @JsonProperty("code") String code,
+                      @JsonProperty("regionCode") String regionCode,
+                      @JsonProperty("reason") String reason,
+                      @JsonProperty("hfrName") String hfrName,
+                      @JsonProperty("openmrsName") String openmrsName) {
+        this.level = level;
+        this.code = code;
+        this.regionCode = regionCode;
+        this.reason = reason;
+        this.hfrName = hfrName;
+        this.openmrsName = openmrsName;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getRegionCode() {
+        return regionCode;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public String getHfrName() {
+        return hfrName;
+    }
+
+    public String getOpenmrsName() {
+        return openmrsName;
+    }
+}
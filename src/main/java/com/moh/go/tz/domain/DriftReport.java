@@ -0,0 +1,78 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Result of comparing the HFR hierarchy seen by the last refresh with the cached OpenMRS hierarchy.
+ */
+public class DriftReport {
+    private final String status;
+    private final String message;
+    private final int hfrLocations;
+    private final int openmrsLocations;
+    private final boolean includesLeaves;
+    private final long elapsedMillis;
+    private final boolean truncated;
+    private final List<String> differingRegions;
+    private final List<DriftEntry> entries;
+
+    @JsonCreator
+    public DriftReport(@JsonProperty("status") String status,
+                       @JsonProperty("message") String message,
+                       @JsonProperty("hfrLocations") int hfrLocations,
+                       @JsonProperty("openmrsLocations") int openmrsLocations,
+                       @JsonProperty("includesLeaves") boolean includesLeaves,
+                       @JsonProperty("elapsedMillis") long elapsedMillis,
+                       @JsonProperty("truncated") boolean truncated,
+                       @JsonProperty("differingRegions") List<String> differingRegions,
+                       @JsonProperty("entries") List<DriftEntry> entries) {
+        this.status = status;
+        this.message = message;
+        this.hfrLocations = hfrLocations;
+        this.openmrsLocations = openmrsLocations;
+        this.includesLeaves = includesLeaves;
+        this.elapsedMillis = elapsedMillis;
+        this.truncated = truncated;
+        this.differingRegions = differingRegions;
+        this.entries = entries;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getHfrLocations() {
+        return hfrLocations;
+    }
+
+    public int getOpenmrsLocations() {
+        return openmrsLocations;
+    }
+
+    public boolean isIncludesLeaves() {
+        return includesLeaves;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public List<String> getDifferingRegions() {
+        return differingRegions;
+    }
+
+    public List<DriftEntry> getEntries() {
+        return entries;
+    }
+}
@@ -3,9 +3,10 @@ package com.moh.go.tz.domain;
 import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.moh.go.tz.util.CborSerializable;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class HfrFacilityPayload {
+public class HfrFacilityPayload implements CborSerializable {
 
     @JsonProperty("Fac_IDNumber")
     private String facIdNumber;
@@ -18,6 +18,7 @@ public class Location extends BaseDataObject {
     private Location parentLocation;
     private Set<String> tags;
     private Map<String, String> attributes;
+    private Boolean retired;
 
     public Location() {
     }
@@ -129,6 +130,28 @@ public class Location extends BaseDataObject {
         }
     }
 
+    /**
+     * Whether the location is retired in OpenMRS, or null if that is not known.
+     */
+    public Boolean getRetired() {
+        return retired;
+    }
+
+    public void setRetired(Boolean retired) {
+        this.retired = retired;
+    }
+
+    /**
+     * A copy with its own tag, attribute and identifier collections, sharing the parent instance.
+     */
+    public Location copy() {
+        Location copy = new Location(locationId, name, identifiers != null ? new HashMap<>(identifiers) : null,
+                parentLocation, tags != null ? new HashSet<>(tags) : null,
+                attributes != null ? new HashMap<>(attributes) : null);
+        copy.retired = retired;
+        return copy;
+    }
+
     public Location withLocationId(String locationId) {
         this.locationId = locationId;
         return this;
@@ -0,0 +1,22 @@
+package com.moh.go.tz.domain;
+
+/**
+ * A location attribute as written to OpenMRS: the attribute type uuid and its value.
+ */
+public class LocationAttributeValue {
+    private final String attributeType;
+    private final String value;
+
+    public LocationAttributeValue(String attributeType, String value) {
+        this.attributeType = attributeType;
+        this.value = value;
+    }
+
+    public String getAttributeType() {
+        return attributeType;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,61 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Body of {@code POST /ws/rest/v1/location} creating a location.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class LocationCreateRequest {
+    private final String name;
+    private final String description;
+    private final String parentLocation;
+    private final List<TagRef> tags;
+    private final List<LocationAttributeValue> attributes;
+
+    public LocationCreateRequest(String name, String description, String parentLocation,
+                                 List<TagRef> tags, List<LocationAttributeValue> attributes) {
+        this.name = name;
+        this.description = description;
+        this.parentLocation = parentLocation;
+        this.tags = tags;
+        this.attributes = attributes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Uuid of the parent location.
+     */
+    public String getParentLocation() {
+        return parentLocation;
+    }
+
+    public List<TagRef> getTags() {
+        return tags;
+    }
+
+    public List<LocationAttributeValue> getAttributes() {
+        return attributes;
+    }
+
+    public static class TagRef {
+        private final String name;
+
+        public TagRef(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * One location of {@code GET /locations/export} with its ancestors, root first.
+ */
+public class LocationExportRow {
+    private final String uuid;
+    private final String code;
+    private final String name;
+    private final String level;
+    private final Boolean retired;
+    private final List<PathEntry> path;
+
+    @JsonCreator
+    public LocationExportRow(@JsonProperty("uuid") String uuid,
+                             @JsonProperty("code") String code,
+                             @JsonProperty("name") String name,
+                             @JsonProperty("level") String level,
+                             @JsonProperty("retired") Boolean retired,
+                             @JsonProperty("path") List<PathEntry> path) {
+        this.uuid = uuid;
+        this.code = code;
+        this.name = name;
+        this.level = level;
+        this.retired = retired;
+        this.path = path;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public Boolean getRetired() {
+        return retired;
+    }
+
+    public List<PathEntry> getPath() {
+        return path;
+    }
+
+    public static class PathEntry {
+        private final String uuid;
+        private final String code;
+        private final String name;
+        private final String level;
+
+        @JsonCreator
+        public PathEntry(@JsonProperty("uuid") String uuid,
+                         @JsonProperty("code") String code,
+                         @JsonProperty("name") String name,
+                         @JsonProperty("level") String level) {
+            this.uuid = uuid;
+            this.code = code;
+            this.name = name;
+            this.level = level;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLevel() {
+            return level;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a batch lookup by code: the cached locations keyed by the codes as requested, and the
+ * requested codes the cache does not hold.
+ */
+public class LocationLookup {
+    private final Map<String, LocationView> found;
+    private final List<String> missing;
+
+    @JsonCreator
+    public LocationLookup(@JsonProperty("found") Map<String, LocationView> found,
+                          @JsonProperty("missing") List<String> missing) {
+        this.found = found;
+        this.missing = missing;
+    }
+
+    public Map<String, LocationView> getFound() {
+        return found;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+}
@@ -0,0 +1,29 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The fields of an OpenMRS location response the sync uses; everything else is skipped while parsing.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LocationResponse {
+    private final String uuid;
+    private final String name;
+
+    @JsonCreator
+    public LocationResponse(@JsonProperty("uuid") String uuid,
+                            @JsonProperty("name") String name) {
+        this.uuid = uuid;
+        this.name = name;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
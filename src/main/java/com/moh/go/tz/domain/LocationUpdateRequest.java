@@ -0,0 +1,71 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Body of {@code POST /ws/rest/v1/location/{uuid}} changing one aspect of a location; unset fields are
+ * left out so OpenMRS keeps their current values.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LocationUpdateRequest {
+    private final String name;
+    private final ParentRef parentLocation;
+    private final List<LocationAttributeValue> attributes;
+    private final Boolean retired;
+
+    private LocationUpdateRequest(String name, ParentRef parentLocation, List<LocationAttributeValue> attributes,
+                                  Boolean retired) {
+        this.name = name;
+        this.parentLocation = parentLocation;
+        this.attributes = attributes;
+        this.retired = retired;
+    }
+
+    public static LocationUpdateRequest rename(String name) {
+        return new LocationUpdateRequest(name, null, null, null);
+    }
+
+    public static LocationUpdateRequest reparent(String parentUuid) {
+        return new LocationUpdateRequest(null, new ParentRef(parentUuid), null, null);
+    }
+
+    public static LocationUpdateRequest setAttribute(String attributeTypeUuid, String value) {
+        return new LocationUpdateRequest(null, null,
+                Collections.singletonList(new LocationAttributeValue(attributeTypeUuid, value)), null);
+    }
+
+    public static LocationUpdateRequest unretire() {
+        return new LocationUpdateRequest(null, null, null, false);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ParentRef getParentLocation() {
+        return parentLocation;
+    }
+
+    public List<LocationAttributeValue> getAttributes() {
+        return attributes;
+    }
+
+    public Boolean getRetired() {
+        return retired;
+    }
+
+    public static class ParentRef {
+        private final String uuid;
+
+        public ParentRef(String uuid) {
+            this.uuid = uuid;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+    }
+}
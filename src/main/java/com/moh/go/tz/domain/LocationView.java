@@ -0,0 +1,59 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A cached OpenMRS location as served by the read API. {@code level} is the hierarchy tag (Region ...
+ * Facility, Village). Fields the cache does not know yet, such as the name and level of a location
+ * whose details have not been loaded, are null and left out of the JSON.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LocationView {
+    private final String uuid;
+    private final String code;
+    private final String name;
+    private final String level;
+    private final String parentUuid;
+    private final Boolean retired;
+
+    @JsonCreator
+    public LocationView(@JsonProperty("uuid") String uuid,
+                        @JsonProperty("code") String code,
+                        @JsonProperty("name") String name,
+                        @JsonProperty("level") String level,
+                        @JsonProperty("parentUuid") String parentUuid,
+                        @JsonProperty("retired") Boolean retired) {
+        this.uuid = uuid;
+        this.code = code;
+        this.name = name;
+        this.level = level;
+        this.parentUuid = parentUuid;
+        this.retired = retired;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getParentUuid() {
+        return parentUuid;
+    }
+
+    public Boolean getRetired() {
+        return retired;
+    }
+}
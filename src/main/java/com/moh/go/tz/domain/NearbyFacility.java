@@ -0,0 +1,69 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A facility returned by {@code GET /facilities/nearest}, with its great-circle distance from the query point.
+ */
+public class NearbyFacility {
+    private final String code;
+    private final String name;
+    private final String facilityType;
+    private final String operatingStatus;
+    private final String regionCode;
+    private final double latitude;
+    private final double longitude;
+    private final double distanceMeters;
+
+    @JsonCreator
+    public NearbyFacility(@JsonProperty("code") String code,
+                          @JsonProperty("name") String name,
+                          @JsonProperty("facilityType") String facilityType,
+                          @JsonProperty("operatingStatus") String operatingStatus,
+                          @JsonProperty("regionCode") String regionCode,
+                          @JsonProperty("latitude") double latitude,
+                          @JsonProperty("longitude") double longitude,
+                          @JsonProperty("distanceMeters") double distanceMeters) {
+        this.code = code;
+        this.name = name;
+        this.facilityType = facilityType;
+        this.operatingStatus = operatingStatus;
+        this.regionCode = regionCode;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.distanceMeters = distanceMeters;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFacilityType() {
+        return facilityType;
+    }
+
+    public String getOperatingStatus() {
+        return operatingStatus;
+    }
+
+    public String getRegionCode() {
+        return regionCode;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getDistanceMeters() {
+        return distanceMeters;
+    }
+}
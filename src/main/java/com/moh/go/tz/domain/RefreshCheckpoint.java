@@ -0,0 +1,40 @@
+package com.moh.go.tz.domain;
+
+/**
+ * Progress marker for an HFR refresh: the last page of an endpoint that was fully applied to OpenMRS.
+ */
+public class RefreshCheckpoint {
+    private final String runId;
+    private final String endpoint;
+    private final int lastPage;
+    private final long updatedAt;
+
+    public RefreshCheckpoint(String runId, String endpoint, int lastPage, long updatedAt) {
+        this.runId = runId;
+        this.endpoint = endpoint;
+        this.lastPage = lastPage;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public int getLastPage() {
+        return lastPage;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "RefreshCheckpoint{runId=" + runId + ", endpoint=" + endpoint + ", lastPage=" + lastPage
+                + ", updatedAt=" + updatedAt + "}";
+    }
+}
@@ -0,0 +1,80 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Outcome of one HFR refresh, kept for trend analysis of durations and row counts.
+ */
+public class RefreshRun {
+    private final String runId;
+    private final String trigger;
+    private final boolean resumed;
+    private final long startedAt;
+    private final long durationMillis;
+    private final String status;
+    private final int adminRows;
+    private final int facilityRows;
+    private final String message;
+
+    @JsonCreator
+    public RefreshRun(@JsonProperty("runId") String runId,
+                      @JsonProperty("trigger") String trigger,
+                      @JsonProperty("resumed") boolean resumed,
+                      @JsonProperty("startedAt") long startedAt,
+                      @JsonProperty("durationMillis") long durationMillis,
+                      @JsonProperty("status") String status,
+                      @JsonProperty("adminRows") int adminRows,
+                      @JsonProperty("facilityRows") int facilityRows,
+                      @JsonProperty("message") String message) {
+        this.runId = runId;
+        this.trigger = trigger;
+        this.resumed = resumed;
+        this.startedAt = startedAt;
+        this.durationMillis = durationMillis;
+        this.status = status;
+        this.adminRows = adminRows;
+        this.facilityRows = facilityRows;
+        this.message = message;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getAdminRows() {
+        return adminRows;
+    }
+
+    public int getFacilityRows() {
+        return facilityRows;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public SyncResponse toSyncResponse() {
+        return new SyncResponse(status, message);
+    }
+}
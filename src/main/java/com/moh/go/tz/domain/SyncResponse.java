@@ -1,17 +1,27 @@
 package com.moh.go.tz.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.moh.go.tz.util.CborSerializable;
 
-public class SyncResponse {
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SyncResponse implements CborSerializable {
     private final String status;
     private final String message;
+    private final SyncTimings timings;
+
+    public SyncResponse(String status, String message) {
+        this(status, message, null);
+    }
 
     @JsonCreator
     public SyncResponse(@JsonProperty("status") String status,
-                        @JsonProperty("message") String message) {
+                        @JsonProperty("message") String message,
+                        @JsonProperty("timings") SyncTimings timings) {
         this.status = status;
         this.message = message;
+        this.timings = timings;
     }
 
     public String getStatus() {
@@ -21,4 +31,15 @@ public class SyncResponse {
     public String getMessage() {
         return message;
     }
+
+    /**
+     * Timing breakdown of the sync, only returned to callers that asked for it.
+     */
+    public SyncTimings getTimings() {
+        return timings;
+    }
+
+    public SyncResponse withoutTimings() {
+        return timings == null ? this : new SyncResponse(status, message);
+    }
 }
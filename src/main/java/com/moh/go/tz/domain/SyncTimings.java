@@ -0,0 +1,147 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.moh.go.tz.util.CborSerializable;
+
+import java.util.List;
+
+/**
+ * Where the time of one facility sync went: waiting for the region lock, then each hierarchy level
+ * (and retire/unretire) with its outcome and the outbound calls it made, counting every retry attempt.
+ */
+public class SyncTimings implements CborSerializable {
+    private final String facilityCode;
+    private final String regionCode;
+    private final long startedAt;
+    private final double totalMillis;
+    private final double lockWaitMillis;
+    private final List<Stage> stages;
+
+    @JsonCreator
+    public SyncTimings(@JsonProperty("facilityCode") String facilityCode,
+                       @JsonProperty("regionCode") String regionCode,
+                       @JsonProperty("startedAt") long startedAt,
+                       @JsonProperty("totalMillis") double totalMillis,
+                       @JsonProperty("lockWaitMillis") double lockWaitMillis,
+                       @JsonProperty("stages") List<Stage> stages) {
+        this.facilityCode = facilityCode;
+        this.regionCode = regionCode;
+        this.startedAt = startedAt;
+        this.totalMillis = totalMillis;
+        this.lockWaitMillis = lockWaitMillis;
+        this.stages = stages;
+    }
+
+    public String getFacilityCode() {
+        return facilityCode;
+    }
+
+    public String getRegionCode() {
+        return regionCode;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public double getLockWaitMillis() {
+        return lockWaitMillis;
+    }
+
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    /**
+     * One hierarchy level, e.g. {@code Ward}, and how it was resolved ({@code cached}, {@code created}, ...).
+     */
+    public static class Stage implements CborSerializable {
+        private final String name;
+        private final String code;
+        private final String outcome;
+        private final double millis;
+        private final List<Call> calls;
+
+        @JsonCreator
+        public Stage(@JsonProperty("name") String name,
+                     @JsonProperty("code") String code,
+                     @JsonProperty("outcome") String outcome,
+                     @JsonProperty("millis") double millis,
+                     @JsonProperty("calls") List<Call> calls) {
+            this.name = name;
+            this.code = code;
+            this.outcome = outcome;
+            this.millis = millis;
+            this.calls = calls;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public double getMillis() {
+            return millis;
+        }
+
+        public List<Call> getCalls() {
+            return calls;
+        }
+    }
+
+    /**
+     * Outbound calls of one operation within a stage; {@code attempts} above one means retries.
+     */
+    public static class Call implements CborSerializable {
+        private final String target;
+        private final String operation;
+        private final int attempts;
+        private final int failures;
+        private final double millis;
+
+        @JsonCreator
+        public Call(@JsonProperty("target") String target,
+                    @JsonProperty("operation") String operation,
+                    @JsonProperty("attempts") int attempts,
+                    @JsonProperty("failures") int failures,
+                    @JsonProperty("millis") double millis) {
+            this.target = target;
+            this.operation = operation;
+            this.attempts = attempts;
+            this.failures = failures;
+            this.millis = millis;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public double getMillis() {
+            return millis;
+        }
+    }
+}
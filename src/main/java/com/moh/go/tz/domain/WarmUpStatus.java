@@ -0,0 +1,55 @@
+package com.moh.go.tz.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Progress of the startup load of the OpenMRS location cache, reported by {@code GET /health/ready}.
+ */
+public class WarmUpStatus {
+    private final boolean ready;
+    private final String phase;
+    private final String scope;
+    private final int loadedLocations;
+    private final int unhydratedLocations;
+    private final long elapsedMillis;
+
+    @JsonCreator
+    public WarmUpStatus(@JsonProperty("ready") boolean ready,
+                        @JsonProperty("phase") String phase,
+                        @JsonProperty("scope") String scope,
+                        @JsonProperty("loadedLocations") int loadedLocations,
+                        @JsonProperty("unhydratedLocations") int unhydratedLocations,
+                        @JsonProperty("elapsedMillis") long elapsedMillis) {
+        this.ready = ready;
+        this.phase = phase;
+        this.scope = scope;
+        this.loadedLocations = loadedLocations;
+        this.unhydratedLocations = unhydratedLocations;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public int getLoadedLocations() {
+        return loadedLocations;
+    }
+
+    public int getUnhydratedLocations() {
+        return unhydratedLocations;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,202 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.util.SyncMetrics;
+import com.typesafe.config.Config;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Bounded admission for one endpoint, configured under {@code integration-service.admission.<endpoint>}:
+ * at most {@code max-concurrent} requests run, up to {@code max-queued} more wait for a slot, and the rest
+ * are turned away at once. A request is refused with 429 when the queue is full, or with 503 when the queue
+ * would take longer than {@code max-queue-wait} to drain, so callers back off instead of piling up until the
+ * ask timeout. The drain rate is the running requests divided by their recent average duration; Retry-After
+ * is the time the queue ahead would take at that rate. A {@code max-concurrent} of 0 admits everything.
+ */
+public class AdmissionControl {
+    public static final int TOO_MANY_REQUESTS = 429;
+    public static final int SERVICE_UNAVAILABLE = 503;
+
+    private final String endpoint;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxQueueWaitNanos;
+    private final long maxRetryAfterSeconds;
+    private final Deque<Pending> queue = new ArrayDeque<>();
+    private int running;
+    private long shed;
+    private double averageNanos;
+
+    public AdmissionControl(Config config, String endpoint, SyncMetrics metrics) {
+        Config settings = config.getConfig("integration-service.admission");
+        Config limits = settings.getConfig(endpoint);
+        this.endpoint = endpoint;
+        this.maxConcurrent = limits.getInt("max-concurrent");
+        this.maxQueued = limits.getInt("max-queued");
+        this.maxQueueWaitNanos = limits.getDuration("max-queue-wait").toNanos();
+        this.maxRetryAfterSeconds = Math.max(1, settings.getDuration("max-retry-after").toSeconds());
+        metrics.registerGauge("hfr_admission_in_flight", "Admitted requests currently running",
+                "endpoint", endpoint, this::running);
+        metrics.registerGauge("hfr_admission_queued", "Admitted requests waiting for a free slot",
+                "endpoint", endpoint, this::queued);
+        metrics.registerGauge("hfr_admission_drain_rate", "Requests per second the endpoint currently completes",
+                "endpoint", endpoint, this::drainRate);
+        metrics.registerCounter("hfr_admission_shed_total", "Requests refused with 429 or 503 by admission control",
+                "endpoint", endpoint, this::shed);
+    }
+
+    /**
+     * Runs {@code task} now if a slot is free, or once one frees up if the request fits in the queue.
+     *
+     * @throws Rejected if the request was not admitted
+     */
+    public <T> CompletionStage<T> submit(Supplier<? extends CompletionStage<T>> task) {
+        if (maxConcurrent <= 0) {
+            return task.get();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Pending pending = new Pending(() -> start(task, result));
+        synchronized (this) {
+            if (running < maxConcurrent) {
+                running++;
+            } else {
+                Rejected rejected = rejection();
+                if (rejected != null) {
+                    shed++;
+                    throw rejected;
+                }
+                queue.addLast(pending);
+                return result;
+            }
+        }
+        pending.run.run();
+        return result;
+    }
+
+    /**
+     * Why a request arriving now would not be admitted, or null if it fits in the queue.
+     */
+    private Rejected rejection() {
+        double rate = drainRate();
+        long waitNanos = rate > 0 ? (long) ((queue.size() + 1) / rate * 1_000_000_000L) : 0;
+        Pending oldest = queue.peekFirst();
+        if (oldest != null && System.nanoTime() - oldest.queuedAt > maxQueueWaitNanos) {
+            // The queue has stalled, e.g. OpenMRS stopped answering, whatever the last durations said
+            waitNanos = Long.MAX_VALUE;
+        }
+        if (queue.size() >= maxQueued) {
+            return new Rejected(TOO_MANY_REQUESTS, retryAfterSeconds(rate, waitNanos),
+                    String.format("%s is at capacity (%d running, %d queued)", endpoint, running, queue.size()));
+        }
+        if (waitNanos > maxQueueWaitNanos) {
+            return new Rejected(SERVICE_UNAVAILABLE, retryAfterSeconds(rate, waitNanos),
+                    String.format("%s is overloaded: %d queued requests drain at %.1f/s", endpoint, queue.size(), rate));
+        }
+        return null;
+    }
+
+    private long retryAfterSeconds(double rate, long waitNanos) {
+        if (waitNanos == Long.MAX_VALUE) {
+            return maxRetryAfterSeconds;
+        }
+        if (rate <= 0) {
+            waitNanos = maxQueueWaitNanos;
+        }
+        long seconds = (waitNanos + 999_999_999L) / 1_000_000_000L;
+        return Math.min(maxRetryAfterSeconds, Math.max(1, seconds));
+    }
+
+    private <T> void start(Supplier<? extends CompletionStage<T>> task, CompletableFuture<T> result) {
+        long started = System.nanoTime();
+        CompletionStage<T> stage;
+        try {
+            stage = task.get();
+        } catch (RuntimeException e) {
+            finished(started);
+            result.completeExceptionally(e);
+            return;
+        }
+        stage.whenComplete((value, error) -> {
+            finished(started);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void finished(long started) {
+        Pending next;
+        synchronized (this) {
+            long elapsed = System.nanoTime() - started;
+            averageNanos = averageNanos == 0 ? elapsed : averageNanos * 0.8 + elapsed * 0.2;
+            next = queue.pollFirst();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            next.run.run();
+        }
+    }
+
+    /**
+     * Requests per second at the current concurrency, or 0 before anything has completed.
+     */
+    public synchronized double drainRate() {
+        return averageNanos > 0 ? Math.max(1, running) * 1_000_000_000.0 / averageNanos : 0;
+    }
+
+    public synchronized int running() {
+        return running;
+    }
+
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    public synchronized long shed() {
+        return shed;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    private static final class Pending {
+        private final Runnable run;
+        private final long queuedAt = System.nanoTime();
+
+        private Pending(Runnable run) {
+            this.run = run;
+        }
+    }
+
+    /**
+     * A request refused by admission control, with the status and Retry-After to answer it with.
+     */
+    public static class Rejected extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+        private final long retryAfterSeconds;
+
+        public Rejected(int status, long retryAfterSeconds, String message) {
+            super(message, null, false, false);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.moh.go.tz.service;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.domain.SyncResponse;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Cluster mode routing: facility syncs and admin hierarchy rows are sharded by region code so that every
+ * region's hierarchy is written by exactly one node, whichever node received the request.
+ */
+public class ClusterFacilitySync implements RegionRouter {
+    public static final EntityTypeKey<FacilitySyncEntity.Command> TYPE_KEY =
+            EntityTypeKey.create(FacilitySyncEntity.Command.class, "FacilitySync");
+    private static final String UNASSIGNED_REGION = "unassigned";
+
+    private final ClusterSharding sharding;
+    private final Duration askTimeout;
+    private final Duration refreshAskTimeout;
+
+    public ClusterFacilitySync(ActorSystem<?> system, LocationSyncService locationSyncService) {
+        Config config = system.settings().config();
+        this.askTimeout = config.getDuration("integration-service.routes.ask-timeout");
+        this.refreshAskTimeout = config.getDuration("integration-service.cluster.refresh-ask-timeout");
+        Duration cacheReloadAfter = config.getDuration("integration-service.cluster.cache-reload-on-handover-after");
+        Executor executor = system.dispatchers().lookup(DispatcherSelector.blocking());
+        this.sharding = ClusterSharding.get(system);
+        sharding.init(Entity.of(TYPE_KEY, context ->
+                FacilitySyncEntity.create(context.getEntityId(), locationSyncService, executor, cacheReloadAfter)));
+    }
+
+    @Override
+    public CompletionStage<SyncResponse> syncFacility(HfrFacilityPayload payload) {
+        return sharding.entityRefFor(TYPE_KEY, entityId(payload.getRegionCode()))
+                .ask(replyTo -> new FacilitySyncEntity.SyncFacility(payload, replyTo), askTimeout);
+    }
+
+    @Override
+    public CompletionStage<SyncResponse> applyAdminRows(String regionCode, Map<String, String> zoneUuids, List<String> rows) {
+        return sharding.entityRefFor(TYPE_KEY, entityId(regionCode))
+                .ask(replyTo -> new FacilitySyncEntity.ApplyAdminRows(zoneUuids, rows, replyTo), refreshAskTimeout);
+    }
+
+    private static String entityId(String regionCode) {
+        String key = LocationSyncService.partitionKey(regionCode);
+        return key.isEmpty() ? UNASSIGNED_REGION : key;
+    }
+}
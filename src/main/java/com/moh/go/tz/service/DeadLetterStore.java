@@ -0,0 +1,167 @@
+package com.moh.go.tz.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.moh.go.tz.domain.DeadLetter;
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.util.CustomJacksonObjectMapper;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Failed facility payloads keyed by facility code, so repeated failures of one facility bump its
+ * attempt count instead of piling up. Changes are appended to a JSON lines file (an entry per failure,
+ * {@code {"removed": code}} once a facility syncs again), which is compacted when the store is opened.
+ */
+public class DeadLetterStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterStore.class);
+
+    private final Path file;
+    private final Map<String, DeadLetter> entries = new LinkedHashMap<>();
+
+    public DeadLetterStore(Config config) {
+        this(Paths.get(config.getString("hfr.dead-letter.file")));
+    }
+
+    public DeadLetterStore(Path file) {
+        this.file = file;
+        load();
+    }
+
+    public synchronized void recordFailure(HfrFacilityPayload payload, String errorType, String error) {
+        String code = key(payload);
+        long now = System.currentTimeMillis();
+        DeadLetter previous = entries.get(code);
+        DeadLetter entry = new DeadLetter(code, payload.getRegionCode(), errorType, error,
+                previous != null ? previous.getAttempts() + 1 : 1,
+                previous != null ? previous.getFirstFailedAt() : now,
+                now, payload);
+        entries.put(code, entry);
+        append(CustomJacksonObjectMapper.mapper.valueToTree(entry));
+    }
+
+    /**
+     * Drops the dead letter of a facility that has since synced successfully, if there is one.
+     */
+    public synchronized void resolve(HfrFacilityPayload payload) {
+        String code = key(payload);
+        if (entries.remove(code) != null) {
+            append(CustomJacksonObjectMapper.mapper.createObjectNode().put("removed", code));
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Dead letters matching all given filters, oldest failure first. Null filters match everything.
+     *
+     * @param regionCode   region code, compared case-insensitively
+     * @param errorType    simple name of the exception, e.g. {@code SocketTimeoutException}
+     * @param olderThanMs  only entries that first failed at least this many milliseconds ago
+     */
+    public synchronized List<DeadLetter> list(String regionCode, String errorType, Long olderThanMs) {
+        long now = System.currentTimeMillis();
+        List<DeadLetter> matches = new ArrayList<>();
+        for (DeadLetter entry : entries.values()) {
+            if (regionCode != null && !LocationSyncService.partitionKey(regionCode)
+                    .equals(LocationSyncService.partitionKey(entry.getRegionCode()))) {
+                continue;
+            }
+            if (errorType != null && !errorType.equalsIgnoreCase(entry.getErrorType())) {
+                continue;
+            }
+            if (olderThanMs != null && now - entry.getFirstFailedAt() < olderThanMs) {
+                continue;
+            }
+            matches.add(entry);
+        }
+        matches.sort(Comparator.comparingLong(DeadLetter::getFirstFailedAt));
+        return matches;
+    }
+
+    private static String key(HfrFacilityPayload payload) {
+        return payload.getFacIdNumber() != null ? payload.getFacIdNumber() : "";
+    }
+
+    private void append(JsonNode line) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.write(file, (line.toString() + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOGGER.error("Failed to append to dead-letter store {}", file, e);
+        }
+    }
+
+    /**
+     * Replays the file, skipping lines that do not parse (e.g. one torn by a crash mid-append), and
+     * rewrites it without them so the next append does not continue a torn line.
+     */
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            // Decoded leniently, as a torn line may end inside a multi-byte character
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            int lineNumber = 0;
+            int skipped = 0;
+            for (String line : content.split("\n")) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonNode node = CustomJacksonObjectMapper.mapper.readTree(line);
+                    if (node.has("removed")) {
+                        entries.remove(node.get("removed").asText());
+                    } else {
+                        DeadLetter entry = CustomJacksonObjectMapper.mapper.treeToValue(node, DeadLetter.class);
+                        if (entry.getFacilityCode() == null) {
+                            throw new IOException("no facility code");
+                        }
+                        entries.put(entry.getFacilityCode(), entry);
+                    }
+                } catch (IOException e) {
+                    skipped++;
+                    LOGGER.warn("Skipping unreadable line {} of dead-letter store {}: {}", lineNumber, file, e.getMessage());
+                }
+            }
+            compact();
+            LOGGER.info("Loaded {} dead-lettered facilities from {}{}", entries.size(), file,
+                    skipped > 0 ? ", skipped " + skipped + " damaged lines" : "");
+        } catch (IOException e) {
+            LOGGER.warn("Could not read dead-letter store {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (DeadLetter entry : entries.values()) {
+                writer.write(CustomJacksonObjectMapper.mapper.writeValueAsString(entry));
+                writer.write('\n');
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,263 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.domain.NearbyFacility;
+import com.typesafe.config.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * HFR facility coordinates in a uniform latitude/longitude grid of {@code hfr.facility-index.cell-size}
+ * degrees, kept up to date from the facility payloads the service sees. Nearest-facility queries search
+ * rings of cells outwards from the query point and stop once no unvisited cell can be closer than the
+ * k-th facility found, so they touch a handful of cells instead of every facility. Distances are
+ * great-circle; the grid does not wrap at the antimeridian.
+ */
+public class FacilityIndex {
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+
+    private final double cellDegrees;
+    private final Map<String, Entry> byCode = new HashMap<>();
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+    private int minCol = Integer.MAX_VALUE;
+    private int maxCol = Integer.MIN_VALUE;
+
+    public FacilityIndex(Config config) {
+        this(config.getDouble("hfr.facility-index.cell-size"));
+    }
+
+    public FacilityIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * Adds or moves the facility, or drops it if the payload has no usable coordinates.
+     */
+    public void put(HfrFacilityPayload payload) {
+        String code = payload.getFacIdNumber();
+        if (code == null || code.isBlank()) {
+            return;
+        }
+        double latitude = parseCoordinate(payload.getLatitude(), 90);
+        double longitude = parseCoordinate(payload.getLongitude(), 180);
+        boolean located = !Double.isNaN(latitude) && !Double.isNaN(longitude) && (latitude != 0 || longitude != 0);
+        String key = code.trim().toUpperCase();
+        lock.writeLock().lock();
+        try {
+            Entry previous = byCode.remove(key);
+            if (previous != null) {
+                List<Entry> cell = cells.get(cellKey(previous.row, previous.col));
+                cell.remove(previous);
+                if (cell.isEmpty()) {
+                    cells.remove(cellKey(previous.row, previous.col));
+                }
+            }
+            if (!located) {
+                return;
+            }
+            Entry entry = new Entry(payload, latitude, longitude, row(latitude), col(longitude));
+            byCode.put(key, entry);
+            cells.computeIfAbsent(cellKey(entry.row, entry.col), k -> new ArrayList<>(4)).add(entry);
+            minRow = Math.min(minRow, entry.row);
+            maxRow = Math.max(maxRow, entry.row);
+            minCol = Math.min(minCol, entry.col);
+            maxCol = Math.max(maxCol, entry.col);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byCode.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code k} facilities nearest to the point, closest first, only those within
+     * {@code radiusMeters} when that is positive and only those whose facility type or type group (name
+     * or code) equals {@code type} when that is given.
+     */
+    public List<NearbyFacility> nearest(double latitude, double longitude, int k, double radiusMeters, String type) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        double latRad = Math.toRadians(latitude);
+        double cosLat = Math.cos(latRad);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(k + 1, Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+        lock.readLock().lock();
+        try {
+            if (byCode.isEmpty()) {
+                return Collections.emptyList();
+            }
+            int row0 = row(latitude);
+            int col0 = col(longitude);
+            int rings = Math.max(Math.max(Math.abs(row0 - minRow), Math.abs(maxRow - row0)),
+                    Math.max(Math.abs(col0 - minCol), Math.abs(maxCol - col0)));
+            for (int ring = 0; ring <= rings; ring++) {
+                double bound = ringLowerBound(latitude, ring);
+                if (radiusMeters > 0 && bound > radiusMeters) {
+                    break;
+                }
+                if (best.size() == k && bound > best.peek().distance) {
+                    break;
+                }
+                if (ring == 0) {
+                    visit(row0, col0, latRad, cosLat, longitude, k, radiusMeters, type, best);
+                    continue;
+                }
+                for (int dr = -ring; dr <= ring; dr++) {
+                    visit(row0 + dr, col0 - ring, latRad, cosLat, longitude, k, radiusMeters, type, best);
+                    visit(row0 + dr, col0 + ring, latRad, cosLat, longitude, k, radiusMeters, type, best);
+                }
+                for (int dc = -ring + 1; dc < ring; dc++) {
+                    visit(row0 - ring, col0 + dc, latRad, cosLat, longitude, k, radiusMeters, type, best);
+                    visit(row0 + ring, col0 + dc, latRad, cosLat, longitude, k, radiusMeters, type, best);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<NearbyFacility> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            Candidate candidate = best.poll();
+            Entry e = candidate.entry;
+            result.add(new NearbyFacility(e.code, e.name, e.facilityType, e.operatingStatus, e.regionCode,
+                    e.latitude, e.longitude, Math.round(candidate.distance * 10) / 10.0));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private void visit(int row, int col, double latRad, double cosLat, double longitude, int k, double radiusMeters,
+                       String type, PriorityQueue<Candidate> best) {
+        List<Entry> cell = cells.get(cellKey(row, col));
+        if (cell == null) {
+            return;
+        }
+        for (Entry entry : cell) {
+            if (type != null && !entry.hasType(type)) {
+                continue;
+            }
+            double distance = distance(latRad, cosLat, longitude, entry);
+            if (radiusMeters > 0 && distance > radiusMeters) {
+                continue;
+            }
+            if (best.size() < k) {
+                best.add(new Candidate(entry, distance));
+            } else if (distance < best.peek().distance) {
+                best.poll();
+                best.add(new Candidate(entry, distance));
+            }
+        }
+    }
+
+    /**
+     * No point in a cell of this ring is closer than this. Cells in ring r are at least r - 1 whole cells
+     * away; a cell is narrowest in metres at the highest latitude the ring reaches.
+     */
+    private double ringLowerBound(double latitude, int ring) {
+        if (ring <= 1) {
+            return 0;
+        }
+        double farthestLatitude = Math.min(90, Math.abs(latitude) + (ring + 1) * cellDegrees);
+        return (ring - 1) * cellDegrees * METERS_PER_DEGREE * Math.cos(Math.toRadians(farthestLatitude));
+    }
+
+    private static double distance(double latRad, double cosLat, double longitude, Entry entry) {
+        double sinDLat = Math.sin((entry.latRad - latRad) / 2);
+        double sinDLon = Math.sin(Math.toRadians(entry.longitude - longitude) / 2);
+        double a = sinDLat * sinDLat + cosLat * entry.cosLat * sinDLon * sinDLon;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellDegrees);
+    }
+
+    private int col(double longitude) {
+        return (int) Math.floor(longitude / cellDegrees);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    /**
+     * Parses an HFR coordinate, or returns NaN if it is missing, not a number or beyond {@code limit}.
+     */
+    static double parseCoordinate(String value, double limit) {
+        if (value == null || value.isBlank()) {
+            return Double.NaN;
+        }
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            return Math.abs(parsed) <= limit ? parsed : Double.NaN;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static final class Entry {
+        private final String code;
+        private final String name;
+        private final String facilityType;
+        private final String facilityTypeCode;
+        private final String facilityTypeGroup;
+        private final String facilityTypeGroupCode;
+        private final String operatingStatus;
+        private final String regionCode;
+        private final double latitude;
+        private final double longitude;
+        private final double latRad;
+        private final double cosLat;
+        private final int row;
+        private final int col;
+
+        private Entry(HfrFacilityPayload payload, double latitude, double longitude, int row, int col) {
+            this.code = payload.getFacIdNumber();
+            this.name = payload.getName();
+            this.facilityType = payload.getFacilityType();
+            this.facilityTypeCode = payload.getFacilityTypeCode();
+            this.facilityTypeGroup = payload.getFacilityTypeGroup();
+            this.facilityTypeGroupCode = payload.getFacilityTypeGroupCode();
+            this.operatingStatus = payload.getOperatingStatus();
+            this.regionCode = payload.getRegionCode();
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.latRad = Math.toRadians(latitude);
+            this.cosLat = Math.cos(latRad);
+            this.row = row;
+            this.col = col;
+        }
+
+        private boolean hasType(String type) {
+            return type.equalsIgnoreCase(facilityType) || type.equalsIgnoreCase(facilityTypeCode)
+                    || type.equalsIgnoreCase(facilityTypeGroup) || type.equalsIgnoreCase(facilityTypeGroupCode);
+        }
+    }
+
+    private static final class Candidate {
+        private final Entry entry;
+        private final double distance;
+
+        private Candidate(Entry entry, double distance) {
+            this.entry = entry;
+            this.distance = distance;
+        }
+    }
+}
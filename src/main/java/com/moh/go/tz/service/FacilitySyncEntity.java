@@ -0,0 +1,101 @@
+package com.moh.go.tz.service;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.domain.SyncResponse;
+import com.moh.go.tz.util.CborSerializable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Sharded entity that owns one region's hierarchy. Commands are applied one after another on a blocking
+ * executor, in the order they arrive, without blocking the actor itself.
+ */
+public class FacilitySyncEntity extends AbstractBehavior<FacilitySyncEntity.Command> {
+
+    public interface Command extends CborSerializable {
+    }
+
+    public static final class SyncFacility implements Command {
+        public final HfrFacilityPayload payload;
+        public final ActorRef<SyncResponse> replyTo;
+
+        @JsonCreator
+        public SyncFacility(@JsonProperty("payload") HfrFacilityPayload payload,
+                            @JsonProperty("replyTo") ActorRef<SyncResponse> replyTo) {
+            this.payload = payload;
+            this.replyTo = replyTo;
+        }
+    }
+
+    public static final class ApplyAdminRows implements Command {
+        public final Map<String, String> zoneUuids;
+        public final List<String> rows;
+        public final ActorRef<SyncResponse> replyTo;
+
+        @JsonCreator
+        public ApplyAdminRows(@JsonProperty("zoneUuids") Map<String, String> zoneUuids,
+                              @JsonProperty("rows") List<String> rows,
+                              @JsonProperty("replyTo") ActorRef<SyncResponse> replyTo) {
+            this.zoneUuids = zoneUuids;
+            this.rows = rows;
+            this.replyTo = replyTo;
+        }
+    }
+
+    private final String regionCode;
+    private final LocationSyncService locationSyncService;
+    private final Executor executor;
+    private CompletableFuture<?> tail;
+
+    public static Behavior<Command> create(String regionCode, LocationSyncService locationSyncService,
+                                           Executor executor, Duration cacheReloadAfter) {
+        return Behaviors.setup(context ->
+                new FacilitySyncEntity(context, regionCode, locationSyncService, executor, cacheReloadAfter));
+    }
+
+    private FacilitySyncEntity(ActorContext<Command> context, String regionCode,
+                               LocationSyncService locationSyncService, Executor executor, Duration cacheReloadAfter) {
+        super(context);
+        this.regionCode = regionCode;
+        this.locationSyncService = locationSyncService;
+        this.executor = executor;
+        context.getLog().info("Region {} is now owned by this node", regionCode);
+        this.tail = CompletableFuture.runAsync(
+                () -> locationSyncService.refreshLocationCacheIfOlderThan(cacheReloadAfter), executor);
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(SyncFacility.class, command ->
+                        enqueue(() -> locationSyncService.syncFacility(command.payload), command.replyTo))
+                .onMessage(ApplyAdminRows.class, command ->
+                        enqueue(() -> locationSyncService.applyAdminRows(regionCode, command.zoneUuids, command.rows),
+                                command.replyTo))
+                .build();
+    }
+
+    private Behavior<Command> enqueue(Supplier<SyncResponse> work, ActorRef<SyncResponse> replyTo) {
+        CompletableFuture<SyncResponse> next = tail
+                .handle((ignored, error) -> null)
+                .thenApplyAsync(ignored -> work.get(), executor);
+        next.whenComplete((response, error) -> replyTo.tell(error == null
+                ? response
+                : new SyncResponse("error", "Sync for region " + regionCode + " failed: " + error.getMessage())));
+        tail = next;
+        return this;
+    }
+}
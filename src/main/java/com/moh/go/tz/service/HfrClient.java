@@ -1,5 +1,8 @@
 package com.moh.go.tz.service;
 
+import com.moh.go.tz.util.CompressedBody;
+import com.moh.go.tz.util.SyncEvents;
+import com.moh.go.tz.util.SyncMetrics;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigException;
 import org.json.JSONArray;
@@ -7,22 +10,29 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Base64;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class HfrClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(HfrClient.class);
+    public static final String ENDPOINT_FACILITIES = "facilities";
+    public static final String ENDPOINT_HIERARCHY = "hierarchy";
 
     private final String baseUrlGetHealthFacilities;
     private final String baseUrlGetHierarchy;
     private final String username;
     private final String password;
+    private final SyncMetrics metrics;
 
     public HfrClient(Config config) {
+        this(config, new SyncMetrics());
+    }
+
+    public HfrClient(Config config, SyncMetrics metrics) {
+        this.metrics = metrics;
         Config hfrConfig = config.hasPath("hfr") ? config.getConfig("hfr") : config;
         try {
             this.baseUrlGetHealthFacilities = hfrConfig.getString("base-url-health-facilities");
@@ -35,56 +45,137 @@ public class HfrClient {
     }
 
     public int fetchHealthFacilityData(Consumer<JSONArray> consumer) throws Exception {
-        return fetchPagedData(baseUrlGetHealthFacilities, consumer);
+        return fetchHealthFacilityData(1, (page, data) -> consumer.accept(data));
     }
 
     public int fetchAdminHierarchyData(Consumer<JSONArray> consumer) throws Exception {
-        return fetchPagedData(baseUrlGetHierarchy, consumer);
+        return fetchAdminHierarchyData(1, (page, data) -> consumer.accept(data));
     }
 
-    private int fetchPagedData(String baseUrl, Consumer<JSONArray> consumer) throws Exception {
-        int page = 1;
+    /**
+     * Fetches facility pages starting at {@code startPage}, handing each page number and its rows to the consumer.
+     */
+    public int fetchHealthFacilityData(int startPage, BiConsumer<Integer, JSONArray> consumer) throws Exception {
+        return fetchPagedData(ENDPOINT_FACILITIES, baseUrlGetHealthFacilities, startPage, consumer);
+    }
+
+    /**
+     * Fetches admin hierarchy pages starting at {@code startPage}, handing each page number and its rows to the consumer.
+     */
+    public int fetchAdminHierarchyData(int startPage, BiConsumer<Integer, JSONArray> consumer) throws Exception {
+        return fetchPagedData(ENDPOINT_HIERARCHY, baseUrlGetHierarchy, startPage, consumer);
+    }
+
+    private int fetchPagedData(String endpoint, String baseUrl, int startPage,
+                               BiConsumer<Integer, JSONArray> consumer) throws Exception {
+        int page = Math.max(startPage, 1);
         int totalPageCount;
         int processed = 0;
         do {
-            LOGGER.info("Fetching HFR data from {} page {}", baseUrl, page);
-            String url = baseUrl + page;
-            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Authorization", "Basic " + getBasicAuth());
-            connection.setRequestProperty("Accept", "application/json");
-
-            int responseCode = connection.getResponseCode();
-
-            if (responseCode == 200) {
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                    String inputLine;
-                    StringBuilder response = new StringBuilder();
-
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-
-                    JSONObject rootObject = new JSONObject(response.toString());
-                    JSONObject metaDataObject = rootObject.getJSONObject("metaData");
-                    totalPageCount = metaDataObject.getInt("pageCount");
-                    page = metaDataObject.getInt("currentPage");
-
-                    JSONArray dataArray = rootObject.getJSONArray("data");
-                    consumer.accept(dataArray);
-                    processed += dataArray.length();
-                }
-
-                page++;
-            } else {
-                throw new Exception("Failed to fetch data. HTTP response code: " + responseCode);
-            }
-
-            connection.disconnect();
+            JSONObject rootObject = fetchPageJson(endpoint, baseUrl, page);
+            JSONObject metaDataObject = rootObject.getJSONObject("metaData");
+            totalPageCount = metaDataObject.getInt("pageCount");
+            page = metaDataObject.getInt("currentPage");
+
+            JSONArray dataArray = rootObject.getJSONArray("data");
+            consumer.accept(page, dataArray);
+            processed += dataArray.length();
+            page++;
         } while (page <= totalPageCount);
         return processed;
     }
 
+    /**
+     * Downloads a single page of the given endpoint and returns the raw response body.
+     */
+    public String fetchPage(String endpoint, int page) throws Exception {
+        return fetchPage(endpoint, baseUrlFor(endpoint), page);
+    }
+
+    private String fetchPage(String endpoint, String baseUrl, int page) throws Exception {
+        SyncEvents.HfrPageFetch event = new SyncEvents.HfrPageFetch();
+        event.begin();
+        HttpURLConnection connection = openPage(baseUrl, page);
+        try {
+            long parseStarted = System.nanoTime();
+            CompressedBody body = CompressedBody.open(connection, SyncMetrics.TARGET_HFR, metrics);
+            String text = body.readString();
+            metrics.recordHfrPage(endpoint);
+            commitPageEvent(event, endpoint, page, body, System.nanoTime() - parseStarted);
+            return text;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Like {@link #fetchPage(String, int)} but parses the page while it is downloaded.
+     */
+    private JSONObject fetchPageJson(String endpoint, String baseUrl, int page) throws Exception {
+        SyncEvents.HfrPageFetch event = new SyncEvents.HfrPageFetch();
+        event.begin();
+        HttpURLConnection connection = openPage(baseUrl, page);
+        try {
+            long parseStarted = System.nanoTime();
+            CompressedBody body = CompressedBody.open(connection, SyncMetrics.TARGET_HFR, metrics);
+            JSONObject json = body.readJsonObject();
+            metrics.recordHfrPage(endpoint);
+            commitPageEvent(event, endpoint, page, body, System.nanoTime() - parseStarted);
+            return json;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void commitPageEvent(SyncEvents.HfrPageFetch event, String endpoint, int page,
+                                        CompressedBody body, long parseNanos) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.endpoint = endpoint;
+            event.page = page;
+            event.wireBytes = body.getWireBytes();
+            event.decodedBytes = body.getDecodedBytes();
+            event.parseTime = parseNanos;
+            event.commit();
+        }
+    }
+
+    private HttpURLConnection openPage(String baseUrl, int page) throws Exception {
+        LOGGER.info("Fetching HFR data from {} page {}", baseUrl, page);
+        String url = baseUrl + page;
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Authorization", "Basic " + getBasicAuth());
+        connection.setRequestProperty("Accept", "application/json");
+        CompressedBody.requestCompression(connection);
+
+        long started = System.nanoTime();
+        int responseCode;
+        try {
+            responseCode = connection.getResponseCode();
+        } catch (Exception e) {
+            connection.disconnect();
+            throw e;
+        }
+        metrics.recordOutbound(SyncMetrics.TARGET_HFR, SyncMetrics.OP_FETCH, responseCode, System.nanoTime() - started);
+
+        if (responseCode != 200) {
+            connection.disconnect();
+            throw new Exception("Failed to fetch data. HTTP response code: " + responseCode);
+        }
+        return connection;
+    }
+
+    private String baseUrlFor(String endpoint) {
+        if (ENDPOINT_HIERARCHY.equals(endpoint)) {
+            return baseUrlGetHierarchy;
+        }
+        if (ENDPOINT_FACILITIES.equals(endpoint)) {
+            return baseUrlGetHealthFacilities;
+        }
+        throw new IllegalArgumentException("Unknown HFR endpoint " + endpoint);
+    }
+
     private String getBasicAuth() {
         String auth = username + ":" + password;
         return Base64.getEncoder().encodeToString(auth.getBytes());
@@ -0,0 +1,274 @@
+package com.moh.go.tz.service;
+
+import com.typesafe.config.Config;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Downloads every page of an HFR endpoint into a local append-only spool file before any OpenMRS
+ * writes happen, so slow OpenMRS calls no longer hold the HFR connection cadence hostage and an HFR
+ * hiccup only costs a retry of one page. The spool can be replayed for re-runs without contacting HFR.
+ *
+ * <p>File layout: a header ({@code int} magic, {@code byte} version, {@code byte} compressed flag)
+ * followed by length-prefixed records of {@code int page, int length, long crc32, byte[length] body}.
+ * The body is the raw page response, gzipped when compression is on, and the CRC covers the stored
+ * bytes. A record with page {@code -1} marks a complete download.
+ */
+public class HfrSpool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HfrSpool.class);
+    private static final int MAGIC = 0x48465253;
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 6;
+    private static final int RECORD_HEADER_LENGTH = 16;
+    private static final int END_OF_SPOOL = -1;
+
+    private final HfrClient hfrClient;
+    private final boolean enabled;
+    private final Path directory;
+    private final boolean compress;
+    private final int pageRetries;
+    private final Duration retryBackoff;
+    private final Duration maxAge;
+
+    public HfrSpool(Config config, HfrClient hfrClient) {
+        Config spoolConfig = config.getConfig("hfr.spool");
+        this.hfrClient = hfrClient;
+        this.enabled = spoolConfig.getBoolean("enabled");
+        this.directory = Paths.get(spoolConfig.getString("directory"));
+        this.compress = spoolConfig.getBoolean("compress");
+        this.pageRetries = spoolConfig.getInt("page-retries");
+        this.retryBackoff = spoolConfig.getDuration("retry-backoff");
+        this.maxAge = spoolConfig.getDuration("max-age");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Makes sure a complete spool exists for the endpoint. With {@code reuse} set, a complete spool
+     * younger than the configured max age is used as is and a partial one is continued from its last
+     * intact page; otherwise the spool is downloaded from scratch.
+     */
+    public synchronized void prepare(String endpoint, boolean reuse) throws Exception {
+        Path file = spoolFile(endpoint);
+        Files.createDirectories(directory);
+        if (!reuse) {
+            Files.deleteIfExists(file);
+        } else if (Files.exists(file)
+                && System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > maxAge.toMillis()) {
+            LOGGER.info("Discarding stale HFR spool {}", file);
+            Files.deleteIfExists(file);
+        }
+
+        Scan scan = scan(file);
+        if (scan != null && scan.complete) {
+            LOGGER.info("Reusing complete HFR spool {} with {} pages", file, scan.lastPage);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            boolean compressed;
+            int page;
+            if (scan == null) {
+                channel.truncate(0);
+                compressed = compress;
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.putInt(MAGIC).put(VERSION).put((byte) (compressed ? 1 : 0)).flip();
+                writeFully(channel, header);
+                page = 1;
+            } else {
+                channel.truncate(scan.validLength);
+                channel.position(scan.validLength);
+                compressed = scan.compressed;
+                page = scan.lastPage + 1;
+                LOGGER.info("Continuing partial HFR spool {} from page {}", file, page);
+            }
+
+            int totalPageCount;
+            do {
+                String body = fetchWithRetries(endpoint, page);
+                JSONObject metaData = new JSONObject(body).getJSONObject("metaData");
+                totalPageCount = metaData.getInt("pageCount");
+                appendRecord(channel, page, encode(body, compressed));
+                page++;
+            } while (page <= totalPageCount);
+
+            appendRecord(channel, END_OF_SPOOL, new byte[0]);
+            channel.force(true);
+            LOGGER.info("Spooled {} pages of HFR {} to {}", totalPageCount, endpoint, file);
+        }
+    }
+
+    /**
+     * Streams the spooled pages from {@code startPage} onwards to the consumer and returns the number of rows.
+     * A record that fails its integrity check discards the spool so that the next run downloads it again.
+     */
+    public int replay(String endpoint, int startPage, BiConsumer<Integer, JSONArray> consumer) throws IOException {
+        Path file = spoolFile(endpoint);
+        int processed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            boolean compressed = readHeader(in);
+            CRC32 crc = new CRC32();
+            while (true) {
+                int page = in.readInt();
+                int length = in.readInt();
+                long expectedCrc = in.readLong();
+                if (page == END_OF_SPOOL) {
+                    return processed;
+                }
+                byte[] stored = new byte[length];
+                in.readFully(stored);
+                if (page < startPage) {
+                    continue;
+                }
+                crc.reset();
+                crc.update(stored);
+                if (crc.getValue() != expectedCrc) {
+                    Files.deleteIfExists(file);
+                    throw new IOException("HFR spool " + file + " page " + page + " failed its integrity check");
+                }
+                JSONArray data = new JSONObject(decode(stored, compressed)).getJSONArray("data");
+                consumer.accept(page, data);
+                processed += data.length();
+            }
+        } catch (EOFException e) {
+            throw new IOException("HFR spool " + file + " is incomplete", e);
+        }
+    }
+
+    public Path spoolFile(String endpoint) {
+        return directory.resolve(endpoint + ".spool");
+    }
+
+    private String fetchWithRetries(String endpoint, int page) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return hfrClient.fetchPage(endpoint, page);
+            } catch (Exception e) {
+                if (attempt >= pageRetries) {
+                    throw e;
+                }
+                LOGGER.warn("Fetching HFR {} page {} failed (attempt {} of {}): {}",
+                        endpoint, page, attempt, pageRetries, e.getMessage());
+                Thread.sleep(retryBackoff.toMillis() * attempt);
+            }
+        }
+    }
+
+    /**
+     * Walks the records of an existing spool, verifying each CRC, and reports where the intact prefix ends.
+     * Returns null when there is no usable spool, including one cut off inside its header.
+     */
+    private Scan scan(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Scan scan = new Scan();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            try {
+                scan.compressed = readHeader(in);
+            } catch (EOFException e) {
+                LOGGER.warn("HFR spool {} is cut off inside its header, starting over", file);
+                return null;
+            }
+            scan.validLength = HEADER_LENGTH;
+            CRC32 crc = new CRC32();
+            while (true) {
+                int page = in.readInt();
+                int length = in.readInt();
+                long expectedCrc = in.readLong();
+                if (page == END_OF_SPOOL) {
+                    scan.complete = true;
+                    return scan;
+                }
+                byte[] stored = new byte[length];
+                in.readFully(stored);
+                crc.reset();
+                crc.update(stored);
+                if (crc.getValue() != expectedCrc || page != scan.lastPage + 1) {
+                    LOGGER.warn("HFR spool {} is damaged after page {}, truncating", file, scan.lastPage);
+                    return scan;
+                }
+                scan.lastPage = page;
+                scan.validLength += RECORD_HEADER_LENGTH + length;
+            }
+        } catch (EOFException e) {
+            return scan;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring unreadable HFR spool {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Not an HFR spool file");
+        }
+        return in.readByte() == 1;
+    }
+
+    private static void appendRecord(FileChannel channel, int page, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + body.length);
+        record.putInt(page).putInt(body.length).putLong(crc.getValue()).put(body).flip();
+        writeFully(channel, record);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] encode(String body, boolean compressed) throws IOException {
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        if (!compressed) {
+            return raw;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    private static String decode(byte[] stored, boolean compressed) throws IOException {
+        if (!compressed) {
+            return new String(stored, StandardCharsets.UTF_8);
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(stored))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Scan {
+        private boolean compressed;
+        private boolean complete;
+        private int lastPage;
+        private long validLength;
+    }
+}
@@ -0,0 +1,345 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.DriftEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A location hierarchy reduced to code, name and parent code per node, with a Merkle hash per subtree:
+ * a node's hash covers its own fields and the hashes of its children, so two hierarchies agree below a
+ * node exactly when the node's hashes match. Regions are the roots; names compare case-insensitively.
+ *
+ * <p>Hashes are kept on the nodes and computed on first use. A {@link #put} that changes a node, or a
+ * {@link #sweep} that removes one, drops the kept hashes of the node and its ancestors only, so a
+ * {@link #diff} after a few changes rehashes just the paths above them. Putting a node unchanged keeps its
+ * hashes.
+ *
+ * <p>Nodes carry the stamp of the refresh that last saw them, so a complete refresh can {@link #sweep}
+ * whatever HFR no longer lists.
+ */
+public class HierarchyDigest {
+    public static final List<String> ADMIN_LEVELS = List.of("Region", "District", "Council", "Ward");
+    public static final List<String> LEAF_LEVELS = List.of("Village", "Facility");
+    private static final int MAX_DEPTH = ADMIN_LEVELS.size() + LEAF_LEVELS.size();
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<String, Set<String>> children = new HashMap<>();
+    private final Set<String> roots = new TreeSet<>();
+    private final MessageDigest sha256;
+    private long stamp;
+    private long hashesComputed;
+
+    public HierarchyDigest() {
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void put(String level, String code, String name, String parentCode) {
+        if (code == null || code.isBlank()) {
+            return;
+        }
+        String key = code.trim().toUpperCase();
+        Node node = new Node(level, key, name != null ? name.trim() : "",
+                "Region".equals(level) || parentCode == null ? null : parentCode.trim().toUpperCase(), stamp);
+        Node previous = nodes.put(key, node);
+        if (previous != null && previous.sameFields(node)) {
+            // Same hash input: hand the kept hashes on
+            node.hash = previous.hash;
+            node.adminHash = previous.adminHash;
+            node.leafHash = previous.leafHash;
+            return;
+        }
+        if (previous != null) {
+            unlink(previous);
+        }
+        if ("Region".equals(level)) {
+            roots.add(key);
+        } else if (node.parentCode != null) {
+            children.computeIfAbsent(node.parentCode, k -> new TreeSet<>()).add(key);
+        }
+        invalidate(node.parentCode);
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Subtree hashes computed so far, rather than reused.
+     */
+    synchronized long hashesComputed() {
+        return hashesComputed;
+    }
+
+    /**
+     * Starts a new stamp; nodes put from now on belong to it.
+     */
+    public synchronized long beginSweep() {
+        return ++stamp;
+    }
+
+    /**
+     * Removes nodes not put since {@link #beginSweep} returned {@code sweepStamp}.
+     */
+    public synchronized void sweep(long sweepStamp) {
+        sweep(sweepStamp, "");
+    }
+
+    /**
+     * Removes nodes under {@code codePrefix} not put since {@link #beginSweep} returned {@code sweepStamp},
+     * after only that part of the hierarchy was put again.
+     */
+    public synchronized void sweep(long sweepStamp, String codePrefix) {
+        String prefix = codePrefix.trim().toUpperCase();
+        List<Node> stale = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.stamp < sweepStamp && node.code.startsWith(prefix)) {
+                stale.add(node);
+            }
+        }
+        for (Node node : stale) {
+            nodes.remove(node.code);
+            unlink(node);
+        }
+    }
+
+    private void unlink(Node node) {
+        if ("Region".equals(node.level)) {
+            roots.remove(node.code);
+        } else if (node.parentCode != null) {
+            Set<String> siblings = children.get(node.parentCode);
+            if (siblings != null) {
+                siblings.remove(node.code);
+                if (siblings.isEmpty()) {
+                    children.remove(node.parentCode);
+                }
+            }
+        }
+        invalidate(node.parentCode);
+    }
+
+    /**
+     * Drops the kept hashes of a node and its ancestors. A node without hashes never has an ancestor with
+     * them, since hashes are computed bottom-up, so the walk stops at the first one already dropped.
+     */
+    private void invalidate(String code) {
+        String current = code;
+        for (int depth = 0; current != null && depth < MAX_DEPTH; depth++) {
+            Node node = nodes.get(current);
+            if (node == null || (node.hash == null && node.adminHash == null && node.leafHash == null)) {
+                return;
+            }
+            node.hash = null;
+            node.adminHash = null;
+            node.leafHash = null;
+            current = node.parentCode;
+        }
+    }
+
+    /**
+     * Differences between this (HFR) hierarchy and {@code openmrs} at the administrative levels, found by
+     * descending only into subtrees whose hashes differ. With {@code leaves} set, villages and facilities
+     * count towards their ward's hash; they are never reported individually. With {@code codePrefix},
+     * only the subtrees of the topmost administrative locations whose codes start with it are compared.
+     */
+    public List<DriftEntry> diff(HierarchyDigest openmrs, boolean leaves, int limit, String codePrefix) {
+        synchronized (this) {
+            synchronized (openmrs) {
+                List<DriftEntry> entries = new ArrayList<>();
+                if (codePrefix == null) {
+                    descend(roots, openmrs.roots, this, openmrs, leaves, null, entries, limit);
+                } else {
+                    String prefix = codePrefix.trim().toUpperCase();
+                    descend(topmost(prefix), openmrs.topmost(prefix), this, openmrs, leaves, null, entries, limit);
+                }
+                return entries;
+            }
+        }
+    }
+
+    private static void descend(Collection<String> hfrCodes, Collection<String> openmrsCodes, HierarchyDigest hfr,
+                                HierarchyDigest openmrs, boolean leaves, String regionCode, List<DriftEntry> entries,
+                                int limit) {
+        Set<String> codes = new TreeSet<>(hfrCodes);
+        codes.addAll(openmrsCodes);
+        for (String code : codes) {
+            if (entries.size() >= limit) {
+                return;
+            }
+            Node hfrNode = hfr.adminNode(code);
+            Node openmrsNode = openmrs.adminNode(code);
+            if (hfrNode == null && openmrsNode == null) {
+                continue;
+            }
+            String region = regionCode != null ? regionCode : hfr.regionOf(code, openmrs);
+            if (openmrsNode == null) {
+                entries.add(new DriftEntry(hfrNode.level, code, region, "missingInOpenmrs", hfrNode.name, null));
+                continue;
+            }
+            if (hfrNode == null) {
+                entries.add(new DriftEntry(openmrsNode.level, code, region, "missingInHfr", null, openmrsNode.name));
+                continue;
+            }
+            if (Arrays.equals(hfr.hash(hfrNode, leaves), openmrs.hash(openmrsNode, leaves))) {
+                continue;
+            }
+            if (!hfrNode.sameFields(openmrsNode)) {
+                entries.add(new DriftEntry(hfrNode.level, code, region, "changed", hfrNode.name, openmrsNode.name));
+            } else if (leaves && !Arrays.equals(hfr.leafHash(hfrNode), openmrs.leafHash(openmrsNode))) {
+                entries.add(new DriftEntry(hfrNode.level, code, region, "childrenDiffer", hfrNode.name, openmrsNode.name));
+            }
+            descend(hfr.adminChildren(code), openmrs.adminChildren(code), hfr, openmrs, leaves, region, entries, limit);
+        }
+    }
+
+    /**
+     * Administrative codes starting with {@code prefix} whose parent's code does not.
+     */
+    private List<String> topmost(String prefix) {
+        List<String> codes = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (ADMIN_LEVELS.contains(node.level) && node.code.startsWith(prefix)
+                    && (node.parentCode == null || !node.parentCode.startsWith(prefix))) {
+                codes.add(node.code);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * The region code above an administrative code, following parents in this hierarchy and then in
+     * {@code other}; the code itself if neither knows its region.
+     */
+    private String regionOf(String code, HierarchyDigest other) {
+        String current = code;
+        for (int depth = 0; depth < ADMIN_LEVELS.size(); depth++) {
+            Node node = nodes.get(current);
+            if (node == null) {
+                node = other.nodes.get(current);
+            }
+            if (node == null || "Region".equals(node.level) || node.parentCode == null) {
+                return node != null && "Region".equals(node.level) ? node.code : code;
+            }
+            current = node.parentCode;
+        }
+        return code;
+    }
+
+    private Node adminNode(String code) {
+        Node node = nodes.get(code);
+        return node != null && ADMIN_LEVELS.contains(node.level) ? node : null;
+    }
+
+    private List<String> adminChildren(String code) {
+        List<String> codes = new ArrayList<>();
+        for (String child : children.getOrDefault(code, Collections.emptySet())) {
+            if (adminNode(child) != null) {
+                codes.add(child);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Hash of the node's subtree, counting villages and facilities only with {@code leaves}; kept until
+     * the subtree changes.
+     */
+    private byte[] hash(Node node, boolean leaves) {
+        byte[] kept = leaves ? node.hash : node.adminHash;
+        if (kept != null) {
+            return kept;
+        }
+        List<byte[]> childHashes = new ArrayList<>();
+        for (String child : adminChildren(node.code)) {
+            childHashes.add(hash(nodes.get(child), leaves));
+        }
+        byte[] leafHash = leaves ? leafHash(node) : null;
+        update(ownFields(node));
+        for (byte[] childHash : childHashes) {
+            sha256.update(childHash);
+        }
+        if (leafHash != null) {
+            sha256.update(leafHash);
+        }
+        byte[] hash = sha256.digest();
+        hashesComputed++;
+        if (leaves) {
+            node.hash = hash;
+        } else {
+            node.adminHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Hash of the villages and facilities directly under the node, or null if it has none.
+     */
+    private byte[] leafHash(Node node) {
+        if (node.leafHash != null) {
+            return node.leafHash;
+        }
+        boolean any = false;
+        for (String child : children.getOrDefault(node.code, Collections.emptySet())) {
+            Node leaf = nodes.get(child);
+            if (leaf != null && LEAF_LEVELS.contains(leaf.level)) {
+                update(ownFields(leaf));
+                any = true;
+            }
+        }
+        if (!any) {
+            return null;
+        }
+        node.leafHash = sha256.digest();
+        return node.leafHash;
+    }
+
+    private static String ownFields(Node node) {
+        return node.level + '\u0000' + node.code + '\u0000' + node.nameKey + '\u0000'
+                + (node.parentCode != null ? node.parentCode : "") + '\u0001';
+    }
+
+    private void update(String value) {
+        sha256.update(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Node {
+        private final String level;
+        private final String code;
+        private final String name;
+        private final String nameKey;
+        private final String parentCode;
+        private final long stamp;
+        private byte[] hash;
+        private byte[] adminHash;
+        private byte[] leafHash;
+
+        private Node(String level, String code, String name, String parentCode, long stamp) {
+            this.level = level;
+            this.code = code;
+            this.name = name;
+            this.nameKey = name.toLowerCase();
+            this.parentCode = parentCode;
+            this.stamp = stamp;
+        }
+
+        private boolean sameFields(Node other) {
+            return level.equals(other.level) && nameKey.equals(other.nameKey)
+                    && Objects.equals(parentCode, other.parentCode);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.moh.go.tz.service;
+
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of accepted webhook payloads. Entries are addressed by a logical
+ * byte offset that keeps growing across segment files; each segment is named after the offset of its
+ * first entry. A consumer reads entries in order and commits the offset after the last applied one,
+ * which is kept in a small mapped file so processing resumes from there after a restart.
+ *
+ * <p>Entry layout: {@code int length, int crc32, byte[length] body}, always followed by a zero
+ * {@code int} when it fits so recovery stops at the first unwritten or torn entry. An entry that does
+ * not fit in the active segment starts a new one.
+ *
+ * <p>The {@code fsync} policy decides when mapped pages are forced to disk: {@code always} before an
+ * append or commit returns, {@code interval} every {@code fsync-interval}, {@code os} never explicitly.
+ */
+public class IngestJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestJournal.class);
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String COMMIT_FILE = "committed.offset";
+    private static final int ENTRY_HEADER_LENGTH = 8;
+
+    public static final String FSYNC_ALWAYS = "always";
+    public static final String FSYNC_INTERVAL = "interval";
+    public static final String FSYNC_OS = "os";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final String fsync;
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final MappedByteBuffer commitBuffer;
+    private final ScheduledExecutorService flusher;
+
+    private long activeBase;
+    private MappedByteBuffer active;
+    private volatile long endOffset;
+    private volatile long committedOffset;
+
+    public IngestJournal(Config config) throws IOException {
+        this(Paths.get(config.getString("hfr.journal.directory")),
+                (int) Math.min(config.getBytes("hfr.journal.segment-size"), Integer.MAX_VALUE),
+                config.getString("hfr.journal.fsync"),
+                config.getDuration("hfr.journal.fsync-interval"));
+    }
+
+    public IngestJournal(Path directory, int segmentSize, String fsync, Duration fsyncInterval) throws IOException {
+        if (!FSYNC_ALWAYS.equals(fsync) && !FSYNC_INTERVAL.equals(fsync) && !FSYNC_OS.equals(fsync)) {
+            throw new IllegalArgumentException("Unknown journal fsync policy '" + fsync + "'");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        try (FileChannel channel = FileChannel.open(directory.resolve(COMMIT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.commitBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+        recover();
+        if (FSYNC_INTERVAL.equals(fsync)) {
+            long millis = Math.max(1, fsyncInterval.toMillis());
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ingest-journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, millis, millis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Appends an entry and returns its offset. With the {@code always} policy the entry is on disk when
+     * this returns.
+     */
+    public synchronized long append(byte[] body) throws IOException {
+        int needed = ENTRY_HEADER_LENGTH + body.length;
+        if (needed > segmentSize) {
+            throw new IllegalArgumentException("Journal entry of " + body.length + " bytes exceeds the segment size");
+        }
+        int position = (int) (endOffset - activeBase);
+        if (position + needed > segmentSize) {
+            openSegment(endOffset);
+            position = 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        active.put(position + ENTRY_HEADER_LENGTH, body);
+        active.putInt(position + 4, (int) crc.getValue());
+        if (position + needed + 4 <= segmentSize) {
+            active.putInt(position + needed, 0);
+        }
+        active.putInt(position, body.length);
+        if (FSYNC_ALWAYS.equals(fsync)) {
+            active.force();
+        }
+        long offset = endOffset;
+        endOffset = offset + needed;
+        notifyAll();
+        return offset;
+    }
+
+    /**
+     * Returns the body of the entry at {@code offset}, or null if nothing has been appended there yet.
+     * The next entry starts at {@link #nextOffset}.
+     */
+    public byte[] read(long offset) {
+        if (offset >= endOffset) {
+            return null;
+        }
+        MappedByteBuffer segment;
+        long base;
+        synchronized (this) {
+            Map.Entry<Long, MappedByteBuffer> entry = segments.floorEntry(offset);
+            if (entry == null) {
+                throw new IllegalArgumentException("Journal offset " + offset + " has been deleted");
+            }
+            base = entry.getKey();
+            segment = entry.getValue();
+        }
+        int position = (int) (offset - base);
+        int length = segment.getInt(position);
+        byte[] body = new byte[length];
+        segment.get(position + ENTRY_HEADER_LENGTH, body);
+        return body;
+    }
+
+    public static long nextOffset(long offset, byte[] body) {
+        return offset + ENTRY_HEADER_LENGTH + body.length;
+    }
+
+    /**
+     * Blocks until an entry exists at {@code offset} or the timeout passes.
+     */
+    public synchronized void awaitAppend(long offset, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (endOffset <= offset && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Records that every entry before {@code offset} has been applied and deletes segments that only
+     * hold applied entries.
+     */
+    public synchronized void commit(long offset) {
+        commitBuffer.putLong(0, offset);
+        if (FSYNC_ALWAYS.equals(fsync)) {
+            commitBuffer.force();
+        }
+        committedOffset = offset;
+        Long next;
+        while ((next = segments.higherKey(segments.firstKey())) != null && next <= offset) {
+            long base = segments.pollFirstEntry().getKey();
+            try {
+                Files.deleteIfExists(segmentFile(base));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete applied journal segment {}: {}", base, e.getMessage());
+            }
+        }
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public synchronized void flush() {
+        active.force();
+        commitBuffer.force();
+    }
+
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(base -> segments.put(base, null));
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+            endOffset = 0;
+        } else {
+            for (Long base : segments.keySet()) {
+                segments.put(base, map(base));
+            }
+            activeBase = segments.lastKey();
+            active = segments.get(activeBase);
+            endOffset = activeBase + scanValidLength(active);
+        }
+        long committed = commitBuffer.getLong(0);
+        long firstBase = segments.firstKey();
+        if (committed < firstBase || committed > endOffset) {
+            LOGGER.warn("Journal committed offset {} is outside [{}, {}], clamping it", committed, firstBase, endOffset);
+            committed = Math.max(firstBase, Math.min(committed, endOffset));
+        }
+        committedOffset = committed;
+        LOGGER.info("Opened ingest journal {}: {} segment(s), committed offset {}, end offset {}",
+                directory, segments.size(), committedOffset, endOffset);
+    }
+
+    /**
+     * Length of the intact entries at the start of a segment; a torn last entry is zeroed out.
+     */
+    private int scanValidLength(MappedByteBuffer segment) {
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + ENTRY_HEADER_LENGTH <= segmentSize) {
+            int length = segment.getInt(position);
+            if (length <= 0 || position + ENTRY_HEADER_LENGTH + length > segmentSize) {
+                break;
+            }
+            byte[] body = new byte[length];
+            segment.get(position + ENTRY_HEADER_LENGTH, body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != segment.getInt(position + 4)) {
+                LOGGER.warn("Discarding torn journal entry at segment position {}", position);
+                segment.putInt(position, 0);
+                break;
+            }
+            position += ENTRY_HEADER_LENGTH + length;
+        }
+        return position;
+    }
+
+    private void openSegment(long base) throws IOException {
+        if (active != null) {
+            active.force();
+        }
+        MappedByteBuffer segment = map(base);
+        segments.put(base, segment);
+        activeBase = base;
+        active = segment;
+    }
+
+    private MappedByteBuffer map(long base) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile(base),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+}
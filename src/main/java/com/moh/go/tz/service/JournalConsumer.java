@@ -0,0 +1,101 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.domain.SyncResponse;
+import com.moh.go.tz.util.CustomJacksonObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Applies journaled facility payloads in order on a single background thread and commits the journal
+ * offset after each one. A payload whose sync reports an error is logged and committed like any other;
+ * an exception (e.g. a cluster ask timing out) is retried with backoff so no entry is skipped.
+ */
+public class JournalConsumer implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalConsumer.class);
+    private static final long IDLE_WAIT_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private final IngestJournal journal;
+    private final LocationSyncService locationSyncService;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public JournalConsumer(IngestJournal journal, LocationSyncService locationSyncService) {
+        this.journal = journal;
+        this.locationSyncService = locationSyncService;
+    }
+
+    /**
+     * Starts the consumer thread, once; later calls do nothing.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this, "ingest-journal-consumer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        long offset = journal.getCommittedOffset();
+        LOGGER.info("Applying journaled facility payloads from offset {}", offset);
+        long backoff = 1000;
+        while (running) {
+            try {
+                byte[] entry = journal.read(offset);
+                if (entry == null) {
+                    journal.awaitAppend(offset, IDLE_WAIT_MILLIS);
+                    continue;
+                }
+                apply(offset, entry);
+                offset = IngestJournal.nextOffset(offset, entry);
+                journal.commit(offset);
+                backoff = 1000;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.error("Failed to apply journal entry at offset {}, retrying in {} ms", offset, backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void apply(long offset, byte[] entry) {
+        HfrFacilityPayload payload;
+        try {
+            payload = CustomJacksonObjectMapper.mapper.readValue(entry, HfrFacilityPayload.class);
+        } catch (IOException e) {
+            LOGGER.error("Skipping unreadable journal entry at offset {}: {}", offset, e.getMessage());
+            return;
+        }
+        RegionRouter router = locationSyncService.getRegionRouter();
+        SyncResponse response = router != null
+                ? router.syncFacility(payload).toCompletableFuture().join()
+                : locationSyncService.syncFacility(payload);
+        if ("error".equalsIgnoreCase(response.getStatus())) {
+            LOGGER.error("Journaled facility {} at offset {} failed: {}",
+                    payload.getFacIdNumber(), offset, response.getMessage());
+        } else {
+            LOGGER.debug("Applied journaled facility {} at offset {}", payload.getFacIdNumber(), offset);
+        }
+    }
+}
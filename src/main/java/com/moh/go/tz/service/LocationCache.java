@@ -0,0 +1,548 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.Location;
+import com.moh.go.tz.util.SnapshotMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * OpenMRS locations indexed by code and by uuid. Administrative levels are pinned; leaf locations
+ * (facilities and villages, recognised by tag or by an HFR code) are kept in a least-recently-used
+ * tier of about {@code maxLeafEntries} codes when that is positive, so the cache stays bounded as
+ * more location types are added. Evicted leaves are looked up in OpenMRS again when next needed.
+ *
+ * <p>The cache is a series of immutable {@link Snapshot}s. Readers take the current one without locking
+ * and see a consistent state for as long as they hold it; writers are serialized, never change a
+ * published {@link Location} but replace it with a changed copy ({@link #update}), and publish a new
+ * snapshot sharing everything they did not touch. A reload is built aside with {@link #beginLoad} and
+ * swapped in by {@link #publish}, so the cache is never seen empty or half loaded. The name and code
+ * indexes behind {@link Snapshot#searchByName} and {@link Snapshot#subtree} are shared by the snapshots of
+ * one load and updated by writers just before they publish.
+ */
+public class LocationCache {
+    public static final String CODE_ATTRIBUTE = "Code";
+    public static final String HFR_CODE_ATTRIBUTE = "HFR Code";
+
+    private final int maxLeafEntries;
+    private final int evictionBatch;
+    private final Set<String> leafTags;
+    private final LongAdder evictions = new LongAdder();
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot;
+    private Load load;
+    private long version;
+
+    public LocationCache(int maxLeafEntries, Set<String> leafTags) {
+        this.maxLeafEntries = maxLeafEntries;
+        this.evictionBatch = Math.max(1, maxLeafEntries / 64);
+        this.leafTags = leafTags;
+        this.snapshot = emptySnapshot();
+    }
+
+    private static Snapshot emptySnapshot() {
+        return new Snapshot(SnapshotMap.empty(), SnapshotMap.empty(), 0, 0, new LocationNameIndex(),
+                new LocationCodeTrie());
+    }
+
+    /**
+     * The current snapshot; take it once for reads that must agree with each other.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public boolean isBounded() {
+        return maxLeafEntries > 0;
+    }
+
+    public boolean isLeafTierFull() {
+        return isBounded() && snapshot.leafCount >= maxLeafEntries;
+    }
+
+    public Location getByCode(String code) {
+        return snapshot.getByCode(code);
+    }
+
+    public Location getByUuid(String uuid) {
+        return snapshot.getByUuid(uuid);
+    }
+
+    /**
+     * Indexes the location by uuid and by its code attribute, if it has one. A retired location does not
+     * take a code over from an active one.
+     */
+    public void put(Location location) {
+        if (location == null || location.getLocationId() == null) {
+            return;
+        }
+        write(writer -> writer.put(location));
+    }
+
+    /**
+     * Indexes the location under {@code code}, e.g. after its code attribute was set.
+     */
+    public void putCode(String code, Location location) {
+        write(writer -> writer.putCode(code, location));
+    }
+
+    /**
+     * Indexes a location by uuid only, e.g. a parent known just by its uuid.
+     */
+    public void putUuidOnly(Location location) {
+        write(writer -> writer.putUuidOnly(location));
+    }
+
+    /**
+     * Applies {@code change} to a copy of the latest cached version of the location (or of the location
+     * itself if it is not cached) and publishes the copy in its place. {@code change} returns false if it
+     * had nothing to do, in which case nothing is published. Returns the location as it now is.
+     */
+    public Location update(Location location, Predicate<Location> change) {
+        synchronized (writeLock) {
+            Writer writer = new Writer(snapshot);
+            Location updated = writer.update(location, change);
+            if (writer.changed) {
+                publishLocked(writer);
+                if (load != null) {
+                    load.replay.add(next -> next.update(location, change));
+                }
+            }
+            return updated;
+        }
+    }
+
+    /**
+     * Applies {@code change} to each of the locations as {@link #update} does, publishing once.
+     */
+    public void updateAll(Collection<Location> locations, Predicate<Location> change) {
+        write(writer -> locations.forEach(location -> writer.update(location, change)));
+    }
+
+    private void write(Consumer<Writer> change) {
+        synchronized (writeLock) {
+            Writer writer = new Writer(snapshot);
+            change.accept(writer);
+            if (writer.changed) {
+                publishLocked(writer);
+                if (load != null) {
+                    load.replay.add(change);
+                }
+            }
+        }
+    }
+
+    private void publishLocked(Writer writer) {
+        snapshot = writer.build(++version);
+    }
+
+    /**
+     * Starts building new cache content aside. Writes made to the live cache until it is
+     * {@link #publish published} are replayed on top of it, so the swap does not lose them.
+     */
+    public Load beginLoad() {
+        synchronized (writeLock) {
+            load = new Load(new Writer(emptySnapshot()));
+            return load;
+        }
+    }
+
+    /**
+     * Replaces the cache with what {@code load} built, in one step. {@code published} sees the new snapshot
+     * before any later write does, e.g. to reset counters that writes keep up to date.
+     */
+    public void publish(Load load, Consumer<Snapshot> published) {
+        synchronized (writeLock) {
+            load.replay.forEach(change -> change.accept(load.writer));
+            publishLocked(load.writer);
+            if (this.load == load) {
+                this.load = null;
+            }
+            published.accept(snapshot);
+        }
+    }
+
+    /**
+     * Drops {@code load} if it has not been {@link #publish published}: writes are no longer recorded for
+     * it and those recorded so far are discarded. Does nothing for a load already published or replaced.
+     */
+    public void abortLoad(Load load) {
+        synchronized (writeLock) {
+            if (this.load == load) {
+                this.load = null;
+                load.replay.clear();
+            }
+        }
+    }
+
+    /**
+     * Whether writes are being recorded for a load that is neither published nor aborted.
+     */
+    boolean isLoading() {
+        synchronized (writeLock) {
+            return load != null;
+        }
+    }
+
+    public long version() {
+        return snapshot.version;
+    }
+
+    public int codeCount() {
+        return snapshot.byCode.size();
+    }
+
+    public int uuidCount() {
+        return snapshot.byUuid.size();
+    }
+
+    public int nameCount() {
+        return snapshot.names.size();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Every location of the current snapshot.
+     */
+    public Collection<Location> locations() {
+        return snapshot.locations();
+    }
+
+    public List<Location> searchByName(String query, String level, Predicate<Location> filter, int limit) {
+        return snapshot.searchByName(query, level, filter, limit);
+    }
+
+    public Location findByName(String name) {
+        return snapshot.findByName(name);
+    }
+
+    public List<Location> expectedAncestors(String code) {
+        return snapshot.expectedAncestors(code);
+    }
+
+    public List<Location> subtree(String prefix) {
+        return snapshot.subtree(prefix);
+    }
+
+    private boolean isLeaf(Location location) {
+        if (location.getTags() != null) {
+            for (String tag : location.getTags()) {
+                if (leafTags.contains(tag)) {
+                    return true;
+                }
+            }
+        }
+        return location.getAttributes() != null && location.getAttributes().get(HFR_CODE_ATTRIBUTE) != null;
+    }
+
+    /**
+     * The Region, District, Council, Ward, Village or Facility tag of the location, or null.
+     */
+    static String levelOf(Location location) {
+        if (location.getTags() == null) {
+            return null;
+        }
+        for (String level : HierarchyDigest.ADMIN_LEVELS) {
+            if (location.getTags().contains(level)) {
+                return level;
+            }
+        }
+        for (String level : HierarchyDigest.LEAF_LEVELS) {
+            if (location.getTags().contains(level)) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    static String codeOf(Location location) {
+        Map<String, String> attributes = location.getAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        return attributes.get(CODE_ATTRIBUTE) != null ? attributes.get(CODE_ATTRIBUTE) : attributes.get(HFR_CODE_ATTRIBUTE);
+    }
+
+    /**
+     * One immutable version of the cache. Locations returned from it must not be changed.
+     */
+    public static final class Snapshot {
+        private final SnapshotMap<Location> byUuid;
+        private final SnapshotMap<CodeEntry> byCode;
+        private final int leafCount;
+        private final long version;
+        private final LocationNameIndex names;
+        private final LocationCodeTrie codes;
+
+        private Snapshot(SnapshotMap<Location> byUuid, SnapshotMap<CodeEntry> byCode, int leafCount, long version,
+                         LocationNameIndex names, LocationCodeTrie codes) {
+            this.byUuid = byUuid;
+            this.byCode = byCode;
+            this.leafCount = leafCount;
+            this.version = version;
+            this.names = names;
+            this.codes = codes;
+        }
+
+        public Location getByCode(String code) {
+            if (code == null) {
+                return null;
+            }
+            CodeEntry entry = byCode.get(code.toUpperCase());
+            if (entry == null) {
+                return null;
+            }
+            if (entry.leaf) {
+                entry.lastUsed = System.nanoTime();
+            }
+            return entry.location;
+        }
+
+        public Location getByUuid(String uuid) {
+            return uuid != null ? byUuid.get(uuid.toUpperCase()) : null;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public int size() {
+            return byUuid.size();
+        }
+
+        /**
+         * Every location of this snapshot, in no particular order.
+         */
+        public Collection<Location> locations() {
+            List<Location> locations = new ArrayList<>(byUuid.size());
+            byUuid.forEach(locations::add);
+            return locations;
+        }
+
+        /**
+         * Iterates this snapshot's locations without copying them.
+         */
+        public Iterator<Location> iterator() {
+            return byUuid.iterator();
+        }
+
+        /**
+         * Up to {@code limit} named locations with a word starting with {@code query}; see
+         * {@link LocationNameIndex#search}.
+         */
+        public List<Location> searchByName(String query, String level, Predicate<Location> filter, int limit) {
+            return inSnapshot(names.search(query, level, location -> inSnapshot(location) && filter.test(location), limit));
+        }
+
+        /**
+         * A location named {@code name}, ignoring case, or null.
+         */
+        public Location findByName(String name) {
+            Location location = name != null ? names.findByName(name) : null;
+            return location != null ? getByUuid(location.getLocationId()) : null;
+        }
+
+        /**
+         * The locations a code implies as its ancestors, root first; see
+         * {@link LocationCodeTrie#expectedAncestors}.
+         */
+        public List<Location> expectedAncestors(String code) {
+            return inSnapshot(codes.expectedAncestors(code));
+        }
+
+        /**
+         * The locations whose code starts with {@code prefix}, with the facilities under them; see
+         * {@link LocationCodeTrie#subtree}.
+         */
+        public List<Location> subtree(String prefix) {
+            return inSnapshot(codes.subtree(prefix));
+        }
+
+        /**
+         * The indexes may already hold a newer version of a location; answer with this snapshot's.
+         */
+        private List<Location> inSnapshot(List<Location> indexed) {
+            List<Location> locations = new ArrayList<>(indexed.size());
+            for (Location location : indexed) {
+                Location own = getByUuid(location.getLocationId());
+                if (own != null) {
+                    locations.add(own);
+                }
+            }
+            return locations;
+        }
+
+        private boolean inSnapshot(Location location) {
+            return getByUuid(location.getLocationId()) != null;
+        }
+    }
+
+    /**
+     * A reload in progress; nothing put here is visible until it is {@link #publish published}.
+     */
+    public final class Load {
+        private final Writer writer;
+        private final List<Consumer<Writer>> replay = new ArrayList<>();
+
+        private Load(Writer writer) {
+            this.writer = writer;
+        }
+
+        public void put(Location location) {
+            if (location != null && location.getLocationId() != null) {
+                writer.put(location);
+            }
+        }
+
+        public Location getByUuid(String uuid) {
+            return uuid != null ? writer.byUuid.get(uuid.toUpperCase()) : null;
+        }
+
+        public boolean isLeafTierFull() {
+            return isBounded() && writer.leafCount >= maxLeafEntries;
+        }
+
+        public int size() {
+            return writer.byUuid.size();
+        }
+
+        /**
+         * The locations loaded so far. They are not published yet, so the loader may still complete them
+         * in place, e.g. link their parents.
+         */
+        public Collection<Location> locations() {
+            List<Location> locations = new ArrayList<>(writer.byUuid.size());
+            writer.byUuid.forEach((uuid, location) -> locations.add(location));
+            return locations;
+        }
+    }
+
+    private static final class CodeEntry {
+        private final Location location;
+        private final boolean leaf;
+        private volatile long lastUsed = System.nanoTime();
+
+        private CodeEntry(Location location, boolean leaf) {
+            this.location = location;
+            this.leaf = leaf;
+        }
+    }
+
+    /**
+     * Changes on top of one snapshot. The name and code indexes are updated as the changes are made.
+     */
+    private final class Writer {
+        private final SnapshotMap.Builder<Location> byUuid;
+        private final SnapshotMap.Builder<CodeEntry> byCode;
+        private final LocationNameIndex names;
+        private final LocationCodeTrie codes;
+        private int leafCount;
+        private boolean changed;
+
+        private Writer(Snapshot base) {
+            this.byUuid = base.byUuid.toBuilder();
+            this.byCode = base.byCode.toBuilder();
+            this.names = base.names;
+            this.codes = base.codes;
+            this.leafCount = base.leafCount;
+        }
+
+        private void put(Location location) {
+            byUuid.put(location.getLocationId().toUpperCase(), location);
+            names.put(location);
+            changed = true;
+            String code = codeOf(location);
+            if (code != null && !(Boolean.TRUE.equals(location.getRetired()) && hasActive(code, location))) {
+                putCode(code, location);
+            }
+        }
+
+        private boolean hasActive(String code, Location other) {
+            CodeEntry existing = byCode.get(code.toUpperCase());
+            return existing != null && existing.location != other
+                    && !Boolean.TRUE.equals(existing.location.getRetired());
+        }
+
+        private void putCode(String code, Location location) {
+            String key = code.toUpperCase();
+            boolean leaf = isBounded() && isLeaf(location);
+            CodeEntry previous = byCode.put(key, new CodeEntry(location, leaf));
+            leafCount += (leaf ? 1 : 0) - (previous != null && previous.leaf ? 1 : 0);
+            codes.put(key, location);
+            changed = true;
+            if (leaf && leafCount > maxLeafEntries + evictionBatch) {
+                evictLeastRecentlyUsed();
+            }
+        }
+
+        private void putUuidOnly(Location location) {
+            byUuid.put(location.getLocationId().toUpperCase(), location);
+            changed = true;
+        }
+
+        private Location update(Location location, Predicate<Location> change) {
+            String uuid = location.getLocationId().toUpperCase();
+            Location current = byUuid.get(uuid);
+            Location updated = (current != null ? current : location).copy();
+            if (!change.test(updated)) {
+                return current != null ? current : location;
+            }
+            if (current == null) {
+                return updated;
+            }
+            byUuid.put(uuid, updated);
+            names.put(updated);
+            String code = codeOf(current);
+            CodeEntry entry = code != null ? byCode.get(code.toUpperCase()) : null;
+            if (entry != null && entry.location == current) {
+                byCode.put(code.toUpperCase(), new CodeEntry(updated, entry.leaf));
+                codes.put(code.toUpperCase(), updated);
+            }
+            changed = true;
+            return updated;
+        }
+
+        /**
+         * Drops the least recently used leaves down to {@code maxLeafEntries}. Runs once per
+         * {@code evictionBatch} leaves added rather than on each one.
+         */
+        private void evictLeastRecentlyUsed() {
+            List<Map.Entry<String, CodeEntry>> leaves = new ArrayList<>(leafCount);
+            byCode.forEach((code, entry) -> {
+                if (entry.leaf) {
+                    leaves.add(Map.entry(code, entry));
+                }
+            });
+            leaves.sort(Comparator.comparingLong(leaf -> leaf.getValue().lastUsed));
+            int excess = leafCount - maxLeafEntries;
+            for (int i = 0; i < excess && i < leaves.size(); i++) {
+                Location evicted = leaves.get(i).getValue().location;
+                byCode.remove(leaves.get(i).getKey());
+                String uuid = evicted.getLocationId().toUpperCase();
+                if (byUuid.get(uuid) == evicted) {
+                    byUuid.remove(uuid);
+                    names.remove(evicted);
+                }
+                codes.remove(evicted);
+                leafCount--;
+                evictions.increment();
+            }
+        }
+
+        private Snapshot build(long version) {
+            changed = false;
+            return new Snapshot(byUuid.build(), byCode.build(), leafCount, version, names, codes);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.Location;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cached locations by dotted HFR code ({@code TZ.LK.GE.MW.3.13.3}), one node per code segment, so the
+ * locations a code implies as its ancestors, and everything under a code prefix, are found without
+ * following parent links or scanning the cache. Facilities are known by an HFR code without that
+ * structure, so they hang off the node of their OpenMRS parent instead.
+ */
+class LocationCodeTrie {
+    private final Node root = new Node(null);
+    private final Map<String, Node> nodeByUuid = new HashMap<>();
+    private final Map<String, String> parentByUuid = new HashMap<>();
+    private final Map<String, Map<String, Location>> facilitiesByParent = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Indexes the location under {@code code}, moving it if it was indexed under another code before.
+     */
+    void put(String code, Location location) {
+        String uuid = location.getLocationId().toUpperCase();
+        boolean facility = location.getAttributes() != null
+                && code.equalsIgnoreCase(location.getAttributes().get(LocationCache.HFR_CODE_ATTRIBUTE))
+                && location.getAttributes().get(LocationCache.CODE_ATTRIBUTE) == null;
+        lock.writeLock().lock();
+        try {
+            removeLocked(uuid);
+            if (facility) {
+                attachLocked(uuid, location);
+                return;
+            }
+            Node node = root;
+            for (String segment : segments(code)) {
+                node = node.children.computeIfAbsent(segment, Node::new);
+            }
+            node.location = location;
+            nodeByUuid.put(uuid, node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Location location) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(location.getLocationId().toUpperCase());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void attachLocked(String uuid, Location location) {
+        String parent = parentKey(location);
+        parentByUuid.put(uuid, parent);
+        facilitiesByParent.computeIfAbsent(parent, k -> new LinkedHashMap<>()).put(uuid, location);
+    }
+
+    private void removeLocked(String uuid) {
+        Node node = nodeByUuid.remove(uuid);
+        if (node != null && node.location != null && uuid.equalsIgnoreCase(node.location.getLocationId())) {
+            node.location = null;
+        }
+        String parent = parentByUuid.remove(uuid);
+        if (parent != null) {
+            Map<String, Location> siblings = facilitiesByParent.get(parent);
+            siblings.remove(uuid);
+            if (siblings.isEmpty()) {
+                facilitiesByParent.remove(parent);
+            }
+        }
+    }
+
+    /**
+     * The cached locations whose codes are proper prefixes of {@code code}, root first, e.g. the ward,
+     * council, district and region of a village code.
+     */
+    List<Location> expectedAncestors(String code) {
+        List<String> segments = segments(code);
+        List<Location> ancestors = new ArrayList<>(segments.size());
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < segments.size() - 1 && node != null; i++) {
+                node = node.children.get(segments.get(i));
+                if (node != null && node.location != null) {
+                    ancestors.add(node.location);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ancestors;
+    }
+
+    /**
+     * Every indexed location whose code starts with {@code prefix}, parents before children, with the
+     * facilities under each. The last segment of the prefix may be partial: {@code TZ.LK.G} covers
+     * {@code TZ.LK.GE} and {@code TZ.LK.GI}.
+     */
+    List<Location> subtree(String prefix) {
+        List<String> segments = segments(prefix);
+        if (segments.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Location> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Node parent = root;
+            for (int i = 0; i < segments.size() - 1 && parent != null; i++) {
+                parent = parent.children.get(segments.get(i));
+            }
+            if (parent == null) {
+                return result;
+            }
+            String partial = segments.get(segments.size() - 1);
+            Deque<Node> pending = new ArrayDeque<>();
+            for (Node child : parent.children.values()) {
+                if (child.segment.startsWith(partial)) {
+                    pending.push(child);
+                }
+            }
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                if (node.location != null) {
+                    result.add(node.location);
+                    Map<String, Location> facilities =
+                            facilitiesByParent.get(node.location.getLocationId().toUpperCase());
+                    if (facilities != null) {
+                        result.addAll(facilities.values());
+                    }
+                }
+                node.children.values().forEach(pending::push);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private static String parentKey(Location location) {
+        Location parent = location.getParentLocation();
+        return parent != null && parent.getLocationId() != null ? parent.getLocationId().toUpperCase() : "";
+    }
+
+    private static List<String> segments(String code) {
+        List<String> segments = new ArrayList<>(8);
+        if (code == null) {
+            return segments;
+        }
+        String key = code.trim().toUpperCase();
+        int start = 0;
+        while (start <= key.length() && !key.isEmpty()) {
+            int dot = key.indexOf('.', start);
+            int end = dot < 0 ? key.length() : dot;
+            segments.add(key.substring(start, end));
+            if (dot < 0) {
+                break;
+            }
+            start = dot + 1;
+        }
+        return segments;
+    }
+
+    private static final class Node {
+        private final String segment;
+        private final Map<String, Node> children = new HashMap<>(4);
+        private Location location;
+
+        private Node(String segment) {
+            this.segment = segment;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.Location;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Cached locations by normalised name, for type-ahead search. Names are lowercased with accents and
+ * apostrophes dropped and other punctuation collapsed to single spaces, and every word of a name is a key,
+ * so {@code "mag"} finds "Kisesa - Magu" as well as "Magu DC". Keys live in one sorted map per hierarchy
+ * level, which makes a prefix a range and a level filter a choice of map. Reads do not lock; writers
+ * replace all keys of a location at once.
+ */
+class LocationNameIndex {
+    private static final char SEPARATOR = '\u0000';
+    private static final int MAX_WORDS = 8;
+    private static final String NO_LEVEL = "";
+
+    private final Map<String, ConcurrentSkipListMap<String, Location>> byLevel = new ConcurrentHashMap<>();
+    private final Map<String, Indexed> byUuid = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes the location under its current name and level, replacing what it was indexed under before.
+     * A location without a name yet is dropped until it has one.
+     */
+    synchronized void put(Location location) {
+        String uuid = location.getLocationId().toUpperCase();
+        String normalized = location.getName() != null ? normalize(location.getName()) : "";
+        if (normalized.isEmpty()) {
+            remove(uuid);
+            return;
+        }
+        String level = levelKey(LocationCache.levelOf(location));
+        Indexed previous = byUuid.get(uuid);
+        if (previous != null && previous.location == location && previous.level.equals(level)
+                && previous.normalized.equals(normalized)) {
+            return;
+        }
+        remove(uuid);
+        ConcurrentSkipListMap<String, Location> keys = byLevel.computeIfAbsent(level, k -> new ConcurrentSkipListMap<>());
+        List<String> added = new ArrayList<>(2);
+        for (int start = 0, words = 0; start < normalized.length() && words < MAX_WORDS; words++) {
+            String key = normalized.substring(start) + SEPARATOR + uuid;
+            keys.put(key, location);
+            added.add(key);
+            int space = normalized.indexOf(' ', start);
+            if (space < 0) {
+                break;
+            }
+            start = space + 1;
+        }
+        byUuid.put(uuid, new Indexed(location, level, normalized, added));
+    }
+
+    synchronized void remove(Location location) {
+        Indexed indexed = byUuid.get(location.getLocationId().toUpperCase());
+        if (indexed != null && indexed.location == location) {
+            remove(location.getLocationId().toUpperCase());
+        }
+    }
+
+    private void remove(String uuid) {
+        Indexed indexed = byUuid.remove(uuid);
+        if (indexed != null) {
+            ConcurrentSkipListMap<String, Location> keys = byLevel.get(indexed.level);
+            indexed.keys.forEach(keys::remove);
+        }
+    }
+
+    int size() {
+        return byUuid.size();
+    }
+
+    /**
+     * Up to {@code limit} locations with a word starting with {@code query}, in order of the matching
+     * words, only those at {@code level} when that is given and only those {@code filter} accepts.
+     */
+    List<Location> search(String query, String level, Predicate<Location> filter, int limit) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        if (level != null) {
+            ConcurrentSkipListMap<String, Location> keys = byLevel.get(levelKey(level));
+            return keys != null ? collect(keys, prefix, filter, limit, new ArrayList<>()) : Collections.emptyList();
+        }
+        // Take the best matches of every level, then merge them by key
+        List<Map.Entry<String, Location>> merged = new ArrayList<>();
+        for (ConcurrentSkipListMap<String, Location> keys : byLevel.values()) {
+            collectEntries(keys, prefix, filter, limit, merged);
+        }
+        merged.sort(Map.Entry.comparingByKey());
+        List<Location> result = new ArrayList<>(Math.min(limit, merged.size()));
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, Location> entry : merged) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (seen.add(entry.getValue().getLocationId())) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A location whose whole name equals {@code name} ignoring case, or null.
+     */
+    Location findByName(String name) {
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        for (ConcurrentSkipListMap<String, Location> keys : byLevel.values()) {
+            for (Location location : keys.subMap(normalized + SEPARATOR, normalized + (char) (SEPARATOR + 1)).values()) {
+                if (name.equalsIgnoreCase(location.getName())) {
+                    return location;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<Location> collect(ConcurrentSkipListMap<String, Location> keys, String prefix,
+                                          Predicate<Location> filter, int limit, List<Location> result) {
+        Set<String> seen = new HashSet<>();
+        for (Location location : keys.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            if (filter.test(location) && seen.add(location.getLocationId())) {
+                result.add(location);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void collectEntries(ConcurrentSkipListMap<String, Location> keys, String prefix,
+                                       Predicate<Location> filter, int limit, List<Map.Entry<String, Location>> result) {
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, Location> entry : keys.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+            if (filter.test(entry.getValue()) && seen.add(entry.getValue().getLocationId())) {
+                result.add(entry);
+                if (seen.size() >= limit) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String levelKey(String level) {
+        return level != null ? level.toLowerCase() : NO_LEVEL;
+    }
+
+    /**
+     * Lowercase letters and digits with accents and apostrophes dropped and every other run of characters
+     * turned into one space, e.g. {@code "Mama's  Clinic (Ilala)"} becomes {@code "mamas clinic ilala"}.
+     */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFKD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean gap = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (gap && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                gap = false;
+                normalized.append(Character.toLowerCase(c));
+            } else if (c != '\'' && c != '\u2019' && Character.getType(c) != Character.NON_SPACING_MARK) {
+                gap = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static final class Indexed {
+        private final Location location;
+        private final String level;
+        private final String normalized;
+        private final List<String> keys;
+
+        private Indexed(Location location, String level, String normalized, List<String> keys) {
+            this.location = location;
+            this.level = level;
+            this.normalized = normalized;
+            this.keys = keys;
+        }
+    }
+}
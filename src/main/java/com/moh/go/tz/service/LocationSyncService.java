@@ -1,45 +1,137 @@
 package com.moh.go.tz.service;
 
+import com.moh.go.tz.domain.CodeParentMismatch;
+import com.moh.go.tz.domain.DriftEntry;
+import com.moh.go.tz.domain.DriftReport;
 import com.moh.go.tz.domain.HfrFacilityPayload;
 import com.moh.go.tz.domain.Location;
+import com.moh.go.tz.domain.LocationAttributeValue;
+import com.moh.go.tz.domain.LocationCreateRequest;
+import com.moh.go.tz.domain.LocationExportRow;
+import com.moh.go.tz.domain.LocationLookup;
+import com.moh.go.tz.domain.LocationResponse;
+import com.moh.go.tz.domain.LocationUpdateRequest;
+import com.moh.go.tz.domain.LocationView;
+import com.moh.go.tz.domain.NearbyFacility;
+import com.moh.go.tz.domain.RefreshCheckpoint;
+import com.moh.go.tz.domain.RefreshRun;
 import com.moh.go.tz.domain.SyncResponse;
+import com.moh.go.tz.domain.SyncTimings;
+import com.moh.go.tz.domain.WarmUpStatus;
 import com.moh.go.tz.util.CapitalizeUtil;
 import com.moh.go.tz.util.CustomJacksonObjectMapper;
 import com.moh.go.tz.util.FetchLocationsHelper;
 import com.moh.go.tz.util.OpenmrsClient;
+import com.moh.go.tz.util.OpenmrsCodec;
+import com.moh.go.tz.util.SyncEvents;
+import com.moh.go.tz.util.SyncMetrics;
+import com.moh.go.tz.util.SyncTrace;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
 import com.typesafe.config.ConfigFactory;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Coordinates syncing HFR facility payloads into OpenMRS.
+ *
+ * <p>Work on a region's subtree is serialized by a per-region lock, so syncs for different regions can
+ * run concurrently. The location cache is read from immutable snapshots without locking; a reload builds
+ * the next snapshot aside while sync work carries on, and only one reload runs at a time.
+ *
+ * <p>The cache is first loaded by {@link #startWarmUp} on a background thread so the HTTP server can bind
+ * while OpenMRS is slow; sync work arriving earlier waits for it, and {@link #isReady} tells callers that
+ * would rather reject the request.
  */
 public class LocationSyncService {
+    /**
+     * Status of a refresh request turned away because another refresh is still running.
+     */
+    public static final String REFRESH_BUSY = "busy";
+    public static final String REFRESH_BUSY_MESSAGE = "An HFR refresh is already in progress";
+    /**
+     * Dead-letter error type of a facility whose location, or one of its ancestors, could not be created.
+     */
+    public static final String CREATE_FAILED = "CreateFailed";
     private static final Logger LOGGER = LoggerFactory.getLogger(LocationSyncService.class);
     private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final int NEGATIVE_CACHE_PURGE_SIZE = 10000;
+    private static final int MAX_HIERARCHY_DEPTH = 16;
 
     private final OpenmrsClient openmrsClient;
     private final FetchLocationsHelper fetchLocationsHelper;
     private final HfrClient hfrClient;
+    private final RefreshCheckpointStore checkpointStore;
+    private final HfrSpool hfrSpool;
+    private final RefreshRunHistory refreshHistory;
+    private final IngestJournal ingestJournal;
+    private final JournalConsumer journalConsumer;
+    private final DeadLetterStore deadLetters;
+    private final SlowSyncLog slowSyncs;
+    private final SyncMetrics metrics = new SyncMetrics();
     private final String openmrsBaseUrl;
     private final String codeLocationAttributeUuid;
     private final String hfrCodeLocationAttributeUuid;
+    private final ForkJoinPool refreshPool;
+    private final boolean twoTierWarmStart;
+    private final boolean backgroundHydration;
 
-    private final Map<String, Location> locationCache = new ConcurrentHashMap<>();
-    private final Map<String, Location> codeCache = new ConcurrentHashMap<>();
-    private List<Location> allLocations = new CopyOnWriteArrayList<>();
+    private final LocationCache cache;
+    private final List<String> pinnedTags;
+    private final List<String> leafTags;
+    private final Map<String, String> codeAttributeNames;
+    private final String lookupQuery;
+    private final String nameSearchQuery;
+    private final long negativeTtlMillis;
+    private final Map<String, Long> negativeCache = new ConcurrentHashMap<>();
+    private final Map<String, Object> regionLocks = new ConcurrentHashMap<>();
+    private final HierarchyDigest hfrHierarchy = new HierarchyDigest();
+    // The cached OpenMRS hierarchy as of openmrsHierarchyVersion, kept between drift checks with its hashes
+    private final HierarchyDigest openmrsHierarchy = new HierarchyDigest();
+    private long openmrsHierarchyVersion = -1;
+    private final FacilityIndex facilityIndex;
+    private volatile boolean hfrHierarchyComplete;
+    private final int driftMaxEntries;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private final Object[] hydrationLocks = new Object[64];
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile long cacheLoadedAt;
+    private final CountDownLatch warmedUp = new CountDownLatch(1);
+    private volatile long warmUpStartedAt;
+    private volatile String loadingScope;
+    private volatile LocationCache.Load loading;
+    private final AtomicLong cacheGeneration = new AtomicLong();
+    private final AtomicInteger pendingHydration = new AtomicInteger();
+    private final LongAdder skippedRetires = new LongAdder();
+    private final LongAdder skippedUnretires = new LongAdder();
+    private final String cacheInstance = UUID.randomUUID().toString().substring(0, 8);
+    private volatile RegionRouter regionRouter;
 
     public LocationSyncService() {
         this(ConfigFactory.load());
@@ -52,13 +144,230 @@ public class LocationSyncService {
         this.openmrsClient = new OpenmrsClient(
                 openmrsBaseUrl,
                 config.getString("openmrs.user"),
-                config.getString("openmrs.password"));
+                config.getString("openmrs.password"),
+                metrics);
         this.fetchLocationsHelper = new FetchLocationsHelper(openmrsClient);
-        this.hfrClient = new HfrClient(config);
-        refreshLocationCache();
+        this.hfrClient = new HfrClient(config, metrics);
+        this.checkpointStore = new RefreshCheckpointStore(config);
+        this.hfrSpool = new HfrSpool(config, hfrClient);
+        this.refreshHistory = new RefreshRunHistory(config);
+        this.deadLetters = new DeadLetterStore(config);
+        this.slowSyncs = new SlowSyncLog(config);
+        int parallelism = config.getInt("hfr.refresh.parallelism");
+        this.refreshPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.twoTierWarmStart = config.getBoolean("openmrs.warm-start.two-tier");
+        this.backgroundHydration = config.getBoolean("openmrs.warm-start.background-hydration");
+        this.pinnedTags = config.getStringList("openmrs.cache.pinned-tags");
+        this.leafTags = config.getStringList("openmrs.cache.leaf-tags");
+        int maxLeafEntries = config.getInt("openmrs.cache.max-leaf-entries");
+        if (maxLeafEntries > 0 && !config.getBoolean("openmrs.cache.lookup-on-miss")) {
+            // An evicted facility or village would be taken for a new one and created again
+            throw new ConfigException.BadValue(config.origin(), "openmrs.cache.max-leaf-entries",
+                    "a bounded leaf tier needs openmrs.cache.lookup-on-miss = true");
+        }
+        this.cache = new LocationCache(maxLeafEntries, new HashSet<>(leafTags));
+        for (int i = 0; i < hydrationLocks.length; i++) {
+            hydrationLocks[i] = new Object();
+        }
+        this.codeAttributeNames = Map.of(
+                codeLocationAttributeUuid, LocationCache.CODE_ATTRIBUTE,
+                hfrCodeLocationAttributeUuid, LocationCache.HFR_CODE_ATTRIBUTE);
+        this.lookupQuery = config.getBoolean("openmrs.cache.lookup-on-miss")
+                ? config.getString("openmrs.cache.lookup-query") : null;
+        this.nameSearchQuery = config.getString("openmrs.cache.lookup-query");
+        this.negativeTtlMillis = config.getDuration("openmrs.cache.negative-ttl").toMillis();
+        this.driftMaxEntries = config.getInt("hfr.drift.max-entries");
+        this.facilityIndex = new FacilityIndex(config);
+        metrics.registerGauge("hfr_cache_size", "Entries held in the location caches",
+                "cache", SyncMetrics.CACHE_CODE, cache::codeCount);
+        metrics.registerGauge("hfr_cache_size", "Entries held in the location caches",
+                "cache", SyncMetrics.CACHE_LOCATION, cache::uuidCount);
+        metrics.registerGauge("hfr_cache_size", "Entries held in the location caches",
+                "cache", SyncMetrics.CACHE_NEGATIVE, negativeCache::size);
+        metrics.registerGauge("hfr_cache_size", "Entries held in the location caches",
+                "cache", SyncMetrics.CACHE_NAME, cache::nameCount);
+        metrics.registerCounter("hfr_cache_evictions_total", "Leaf locations evicted from the bounded cache",
+                "cache", SyncMetrics.CACHE_CODE, cache::evictions);
+        metrics.registerGauge("hfr_cache_unhydrated", "Cached locations whose name and tags are not loaded yet",
+                "cache", SyncMetrics.CACHE_LOCATION, pendingHydration::get);
+        metrics.registerGauge("hfr_facility_index_size", "Facilities with coordinates in the nearest-facility index",
+                "kind", "facility", facilityIndex::size);
+        metrics.registerGauge("hfr_dead_letters", "Failed facility payloads waiting for replay",
+                "kind", "facility", deadLetters::size);
+        metrics.registerCounter("hfr_retire_skipped_total", "Retire/unretire calls skipped as no-ops",
+                "operation", SyncMetrics.OP_RETIRE, skippedRetires::sum);
+        metrics.registerCounter("hfr_retire_skipped_total", "Retire/unretire calls skipped as no-ops",
+                "operation", SyncMetrics.OP_UNRETIRE, skippedUnretires::sum);
+        metrics.registerGauge("hfr_ready", "1 once the location cache has been loaded at startup",
+                "cache", SyncMetrics.CACHE_LOCATION, () -> isReady() ? 1 : 0);
+        this.ingestJournal = config.getBoolean("hfr.journal.enabled") ? openJournal(config) : null;
+        this.journalConsumer = ingestJournal != null ? new JournalConsumer(ingestJournal, this) : null;
+    }
+
+    private IngestJournal openJournal(Config config) {
+        IngestJournal journal;
+        try {
+            journal = new IngestJournal(config);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open ingest journal", e);
+        }
+        metrics.registerGauge("hfr_journal_offset", "Ingest journal offsets in bytes",
+                "position", "end", journal::getEndOffset);
+        metrics.registerGauge("hfr_journal_offset", "Ingest journal offsets in bytes",
+                "position", "committed", journal::getCommittedOffset);
+        return journal;
+    }
+
+    /**
+     * Loads the location cache on a background thread. Until it completes, sync work blocks in
+     * {@link #awaitWarmUp} and {@link #isReady} is false. Also starts applying the ingest journal, so call
+     * this once the service is wired up, e.g. after {@link #setRegionRouter}: journaled payloads are routed
+     * through whatever router is set when they are applied.
+     */
+    public void startWarmUp() {
+        warmUpStartedAt = System.currentTimeMillis();
+        if (journalConsumer != null) {
+            journalConsumer.start();
+        }
+        Thread warmUp = new Thread(() -> {
+            while (true) {
+                try {
+                    refreshLocationCache();
+                    break;
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to load the location cache, retrying", e);
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+            warmedUp.countDown();
+            LOGGER.info("Location cache ready after {} ms", System.currentTimeMillis() - warmUpStartedAt);
+        }, "location-cache-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    public boolean isReady() {
+        return warmedUp.getCount() == 0;
+    }
+
+    public WarmUpStatus getWarmUpStatus() {
+        boolean ready = isReady();
+        String phase = ready ? "ready" : warmUpStartedAt == 0 ? "pending" : "loading";
+        long elapsed = warmUpStartedAt == 0 ? 0 : (ready ? cacheLoadedAt : System.currentTimeMillis()) - warmUpStartedAt;
+        LocationCache.Load load = loading;
+        return new WarmUpStatus(ready, phase, ready ? null : loadingScope, load != null ? load.size() : cache.uuidCount(),
+                pendingHydration.get(), Math.max(0, elapsed));
+    }
+
+    private void awaitWarmUp() {
+        try {
+            warmedUp.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the location cache to load", e);
+        }
+    }
+
+    public SyncMetrics getMetrics() {
+        return metrics;
+    }
+
+    public DeadLetterStore getDeadLetters() {
+        return deadLetters;
+    }
+
+    public List<SyncTimings> getRecentSlowSyncs() {
+        return slowSyncs.recent();
+    }
+
+    public RegionRouter getRegionRouter() {
+        return regionRouter;
+    }
+
+    /**
+     * Routes region-scoped refresh work through the given router, e.g. to the cluster node owning each region.
+     */
+    public void setRegionRouter(RegionRouter regionRouter) {
+        this.regionRouter = regionRouter;
+    }
+
+    /**
+     * Syncs one facility. The response carries the timing breakdown of the sync; callers that did not
+     * ask for it should drop it with {@link SyncResponse#withoutTimings()}.
+     */
+    public SyncResponse syncFacility(HfrFacilityPayload payload) {
+        if (payload == null) {
+            return new SyncResponse("error", "Empty payload");
+        }
+        recordHfrFacility(payload);
+        long queuedAt = System.nanoTime();
+        return withRegion(payload.getRegionCode(), () -> {
+            SyncTrace.begin(payload.getFacIdNumber(), payload.getRegionCode(), queuedAt);
+            SyncResponse response;
+            SyncTimings timings;
+            try {
+                response = doSyncFacility(payload);
+            } finally {
+                timings = SyncTrace.end();
+            }
+            slowSyncs.record(timings);
+            return new SyncResponse(response.getStatus(), response.getMessage(), timings);
+        });
+    }
+
+    public boolean isJournalEnabled() {
+        return ingestJournal != null;
+    }
+
+    /**
+     * Appends the payload to the ingest journal and returns without syncing it; the journal consumer
+     * applies it in arrival order.
+     */
+    public SyncResponse acceptFacility(HfrFacilityPayload payload) {
+        if (payload == null) {
+            return new SyncResponse("error", "Empty payload");
+        }
+        try {
+            long offset = ingestJournal.append(CustomJacksonObjectMapper.mapper.writeValueAsBytes(payload));
+            return new SyncResponse("accepted", String.format("Queued facility %s (%s) at journal offset %d",
+                    payload.getName(), payload.getFacIdNumber(), offset));
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.error("Failed to journal facility {}", payload.getFacIdNumber(), e);
+            return new SyncResponse("error", "Failed to journal facility: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies admin hierarchy rows for one region on this node. Zones are passed by uuid because they
+     * are resolved by the node running the refresh.
+     */
+    public SyncResponse applyAdminRows(String regionCode, Map<String, String> zoneUuids, List<String> rows) {
+        Map<String, Location> zones = new HashMap<>();
+        zoneUuids.forEach((zoneCode, uuid) -> zones.put(zoneCode, resolveForeignParent(uuid)));
+        List<JSONObject> parsed = rows.stream().map(JSONObject::new).collect(Collectors.toList());
+        int failed = withRegion(regionCode, () -> applyAdminRows(parsed, zones));
+        if (failed > 0) {
+            return new SyncResponse("error", String.format("%d of %d admin hierarchy rows for %s failed",
+                    failed, rows.size(), regionCode));
+        }
+        return new SyncResponse("success", String.format("Applied %d admin hierarchy rows for %s", rows.size(), regionCode));
     }
 
-    public synchronized SyncResponse syncFacility(HfrFacilityPayload payload) {
+    private <T> T withRegion(String regionCode, Supplier<T> work) {
+        awaitWarmUp();
+        synchronized (regionLocks.computeIfAbsent(partitionKey(regionCode), k -> new Object())) {
+            return work.get();
+        }
+    }
+
+    /**
+     * Applies one facility payload. Callers hold the lock of the payload's region.
+     */
+    private SyncResponse doSyncFacility(HfrFacilityPayload payload) {
         if (payload == null) {
             return new SyncResponse("error", "Empty payload");
         }
@@ -66,19 +375,19 @@ public class LocationSyncService {
         try {
             Location regionLoc = ensureLocationExists(
                     null,
-                    CapitalizeUtil.capitalizeWords(payload.getRegion()),
+                    CapitalizeUtil.capitalizeCached(payload.getRegion()),
                     payload.getRegionCode(),
                     "Region");
 
             Location districtLoc = ensureLocationExists(
                     regionLoc,
-                    CapitalizeUtil.capitalizeWords(payload.getDistrict()),
+                    CapitalizeUtil.capitalizeCached(payload.getDistrict()),
                     payload.getDistrictCode(),
                     "District");
 
             Location councilLoc = ensureLocationExists(
                     districtLoc,
-                    CapitalizeUtil.capitalizeWords(payload.getCouncil()),
+                    CapitalizeUtil.capitalizeCached(payload.getCouncil()),
                     payload.getCouncilCode(),
                     "Council");
 
@@ -95,65 +404,286 @@ public class LocationSyncService {
                     payload.getFacIdNumber(),
                     "Facility");
 
-            retireOrUnretireIfNeeded(payload, facilityLoc);
+            SyncTrace.beginStage("Retire", payload.getFacIdNumber());
+            SyncTrace.stageOutcome("unchanged");
+            try {
+                retireOrUnretireIfNeeded(payload, facilityLoc);
+            } finally {
+                SyncTrace.endStage();
+            }
 
-            ensureLocationExists(
+            Location villageLoc = ensureLocationExists(
                     wardLoc,
                     buildVillageName(payload),
                     payload.getVillageCode(),
                     "Village");
 
+            List<String> missing = new ArrayList<>();
+            checkResolved(missing, regionLoc, "Region", payload.getRegionCode());
+            checkResolved(missing, districtLoc, "District", payload.getDistrictCode());
+            checkResolved(missing, councilLoc, "Council", payload.getCouncilCode());
+            checkResolved(missing, wardLoc, "Ward", wardCode);
+            if (facilityLoc == null) {
+                missing.add("Facility " + payload.getFacIdNumber());
+            }
+            checkResolved(missing, villageLoc, "Village", payload.getVillageCode());
+            if (!missing.isEmpty()) {
+                // OpenMRS failures surface here as nulls rather than exceptions, so keep the payload for replay
+                String message = String.format("Could not create or find %s for facility %s (%s)",
+                        String.join(", ", missing), payload.getName(), payload.getFacIdNumber());
+                LOGGER.warn(message);
+                deadLetters.recordFailure(payload, CREATE_FAILED, message);
+                return new SyncResponse("error", message);
+            }
+
             String message = String.format("Processed facility %s (%s)", payload.getName(), payload.getFacIdNumber());
-            String status = (facilityLoc != null) ? "success" : "warning";
-            return new SyncResponse(status, message);
+            deadLetters.resolve(payload);
+            return new SyncResponse("success", message);
         } catch (Exception e) {
             LOGGER.error("Failed to sync facility", e);
+            deadLetters.recordFailure(payload, e.getClass().getSimpleName(), e.getMessage());
             return new SyncResponse("error", "Failed to sync facility: " + e.getMessage());
         }
     }
 
-    public synchronized SyncResponse refreshFromHfr() {
+    private static void checkResolved(List<String> missing, Location location, String tag, String code) {
+        if (location == null && code != null && !code.isEmpty()) {
+            missing.add(tag + " " + code);
+        }
+    }
+
+    public SyncResponse refreshFromHfr() {
+        return refreshFromHfr(false);
+    }
+
+    public SyncResponse refreshFromHfr(boolean resume) {
+        return refresh(resume, "manual").toSyncResponse();
+    }
+
+    /**
+     * Starts a refresh on {@code executor} and returns as soon as it is running, with status "accepted";
+     * returns "busy" without waiting when a refresh is already in progress.
+     */
+    public SyncResponse startRefresh(boolean resume, String trigger, Executor executor) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return new SyncResponse(REFRESH_BUSY, REFRESH_BUSY_MESSAGE);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    runRefresh(resume, trigger);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+            throw e;
+        }
+        return new SyncResponse("accepted", "HFR refresh started");
+    }
+
+    public boolean isRefreshInProgress() {
+        return refreshing.get();
+    }
+
+    public List<RefreshRun> getRecentRefreshRuns() {
+        return refreshHistory.recent();
+    }
+
+    /**
+     * Pulls the admin hierarchy and then the facility list from HFR. A checkpoint is saved after every
+     * fully applied page; with {@code resume} set, a fresh checkpoint from an interrupted run is used to
+     * continue from the page after it instead of starting again from page 1. When the spool is enabled
+     * all pages are downloaded to disk first and then applied from there; resuming reuses that spool.
+     * Every run, with its trigger, duration and row counts, is recorded in the refresh history.
+     */
+    public RefreshRun refresh(boolean resume, String trigger) {
+        if (!refreshing.compareAndSet(false, true)) {
+            LOGGER.warn("Not starting {} HFR refresh, another one is in progress", trigger);
+            return new RefreshRun(UUID.randomUUID().toString(), trigger, false, System.currentTimeMillis(), 0,
+                    REFRESH_BUSY, 0, 0, REFRESH_BUSY_MESSAGE);
+        }
+        try {
+            return runRefresh(resume, trigger);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private RefreshRun runRefresh(boolean resume, String trigger) {
+        awaitWarmUp();
+        metrics.refreshStarted();
+        long startedAt = System.currentTimeMillis();
+        String runId = UUID.randomUUID().toString();
+        long sweepStamp = -1;
+        boolean resumed = false;
+        int adminCount = 0;
+        int facilityCount = 0;
+        String status = "error";
+        String message;
         try {
-            int adminCount = hfrClient.fetchAdminHierarchyData(this::processAdminHierarchyData);
-            int facilityCount = hfrClient.fetchHealthFacilityData(this::processHfrResponse);
-            return new SyncResponse("success",
-                    String.format("Refreshed %d admin hierarchy entries and %d facilities from HFR", adminCount, facilityCount));
+            RefreshCheckpoint checkpoint = resume ? checkpointStore.loadFresh() : null;
+            if (checkpoint != null) {
+                runId = checkpoint.getRunId();
+                resumed = true;
+            }
+            String checkpointRunId = runId;
+            int adminStartPage = 1;
+            int facilityStartPage = 1;
+            boolean skipAdmin = false;
+            if (checkpoint != null) {
+                LOGGER.info("Resuming HFR refresh from {}", checkpoint);
+                if (HfrClient.ENDPOINT_FACILITIES.equals(checkpoint.getEndpoint())) {
+                    skipAdmin = true;
+                    facilityStartPage = checkpoint.getLastPage() + 1;
+                } else {
+                    adminStartPage = checkpoint.getLastPage() + 1;
+                }
+            } else if (resume) {
+                LOGGER.info("No usable refresh checkpoint found, starting a full refresh");
+            }
+            if (!resumed) {
+                sweepStamp = hfrHierarchy.beginSweep();
+            }
+
+            if (hfrSpool.isEnabled()) {
+                if (!skipAdmin) {
+                    hfrSpool.prepare(HfrClient.ENDPOINT_HIERARCHY, resume);
+                }
+                hfrSpool.prepare(HfrClient.ENDPOINT_FACILITIES, resume);
+            }
+
+            // Admin rows have no dead-letter store, so the checkpoint stops at the last page before the first
+            // one with failed rows and a resumed run retries from there. Failed facility rows are dead-lettered
+            // before their page is checkpointed.
+            AtomicInteger failedAdminRows = new AtomicInteger();
+            AtomicInteger firstFailedPage = new AtomicInteger();
+            if (!skipAdmin) {
+                adminCount = fetchPages(HfrClient.ENDPOINT_HIERARCHY, adminStartPage, (page, data) -> {
+                    int failed = processAdminHierarchyData(data);
+                    if (failed > 0 && failedAdminRows.getAndAdd(failed) == 0) {
+                        firstFailedPage.set(page);
+                        LOGGER.warn("Admin hierarchy page {} had {} failed rows, no longer advancing the refresh checkpoint",
+                                page, failed);
+                    }
+                    if (failedAdminRows.get() == 0) {
+                        checkpointStore.save(checkpointRunId, HfrClient.ENDPOINT_HIERARCHY, page);
+                    }
+                });
+                if (failedAdminRows.get() == 0) {
+                    checkpointStore.save(checkpointRunId, HfrClient.ENDPOINT_FACILITIES, 0);
+                }
+            }
+            facilityCount = fetchPages(HfrClient.ENDPOINT_FACILITIES, facilityStartPage, (page, data) -> {
+                processHfrResponse(data);
+                if (failedAdminRows.get() == 0) {
+                    checkpointStore.save(checkpointRunId, HfrClient.ENDPOINT_FACILITIES, page);
+                }
+            });
+            if (sweepStamp >= 0) {
+                hfrHierarchy.sweep(sweepStamp);
+                hfrHierarchyComplete = true;
+            }
+            if (failedAdminRows.get() == 0) {
+                checkpointStore.clear();
+                status = "success";
+                message = String.format("Refreshed %d admin hierarchy entries and %d facilities from HFR", adminCount, facilityCount);
+            } else {
+                status = "partial";
+                message = String.format("Refreshed %d admin hierarchy entries and %d facilities from HFR; %d admin hierarchy rows"
+                                + " failed from page %d, resume to retry them", adminCount, facilityCount,
+                        failedAdminRows.get(), firstFailedPage.get());
+            }
         } catch (Exception e) {
             LOGGER.error("Failed to refresh hierarchy from HFR", e);
-            return new SyncResponse("error", "Failed to refresh hierarchy: " + e.getMessage());
+            message = "Failed to refresh hierarchy: " + e.getMessage();
+        } finally {
+            metrics.refreshFinished(status);
         }
+        RefreshRun run = new RefreshRun(runId, trigger, resumed, startedAt, System.currentTimeMillis() - startedAt,
+                status, adminCount, facilityCount, message);
+        refreshHistory.record(run);
+        metrics.recordRefreshRun(run.getDurationMillis(), adminCount, facilityCount);
+        LOGGER.info("Refresh {} ({}) finished with {} in {} ms", runId, trigger, status, run.getDurationMillis());
+        return run;
     }
 
-    private synchronized Location ensureLocationExists(Location parentLocation, String name, String code, String tag) throws Exception {
+    private int fetchPages(String endpoint, int startPage, BiConsumer<Integer, JSONArray> consumer) throws Exception {
+        if (hfrSpool.isEnabled()) {
+            return hfrSpool.replay(endpoint, startPage, consumer);
+        }
+        if (HfrClient.ENDPOINT_HIERARCHY.equals(endpoint)) {
+            return hfrClient.fetchAdminHierarchyData(startPage, consumer);
+        }
+        return hfrClient.fetchHealthFacilityData(startPage, consumer);
+    }
+
+    private Location ensureLocationExists(Location parentLocation, String name, String code, String tag) throws Exception {
+        SyncTrace.beginStage(tag, code);
+        SyncEvents.LocationDecision decision = new SyncEvents.LocationDecision();
+        decision.begin();
+        try {
+            return resolveLocation(parentLocation, name, code, tag, decision);
+        } finally {
+            SyncTrace.endStage();
+            decision.end();
+            if (decision.shouldCommit()) {
+                decision.tag = tag;
+                decision.code = code;
+                decision.commit();
+            }
+        }
+    }
+
+    private static void outcome(SyncEvents.LocationDecision decision, String outcome) {
+        decision.outcome = outcome;
+        SyncTrace.stageOutcome(outcome);
+    }
+
+    private Location resolveLocation(Location parentLocation, String name, String code, String tag,
+                                     SyncEvents.LocationDecision decision) throws Exception {
         if (code == null || code.isEmpty()) {
             LOGGER.warn("Skipping {} creation because code is missing for {}", tag, name);
+            outcome(decision, "skipped");
             return null;
         }
 
         Location existing = findLocationByCode(code.toUpperCase());
+        outcome(decision, "cached");
+        if (existing == null) {
+            existing = lookupOnMiss(code, name, parentLocation);
+            outcome(decision, "lookedUp");
+        }
         if (existing != null) {
+            existing = hydrate(existing);
             String desiredName = name != null ? name.trim() : "";
             String existingName = existing.getName() != null ? existing.getName().trim() : "";
-            if (!existingName.equalsIgnoreCase(desiredName) && !desiredName.isEmpty()) {
+            if (existing.getName() != null && !existingName.equalsIgnoreCase(desiredName) && !desiredName.isEmpty()) {
+                decision.renamed = true;
                 updateLocationName(existing, desiredName);
-                existing.setName(desiredName);
+                existing = cache.update(existing, location -> {
+                    location.setName(desiredName);
+                    return true;
+                });
             }
 
             if (existing.getParentLocation() == null && parentLocation != null) {
                 LOGGER.warn("Location {} has no parent, setting to {}", existing.getName(), parentLocation.getName());
-                updateChildLocationParent(existing, parentLocation.getLocationId());
-                existing.setParentLocation(parentLocation);
+                decision.reparented = true;
+                existing = reparent(existing, parentLocation);
             } else if (existing.getParentLocation() != null && parentLocation != null &&
                     !existing.getParentLocation().getLocationId().equals(parentLocation.getLocationId())) {
                 LOGGER.warn("Location {} parent mismatch. Updating parent to {}", existing.getName(), parentLocation.getName());
-                updateChildLocationParent(existing, parentLocation.getLocationId());
-                existing.setParentLocation(parentLocation);
+                decision.reparented = true;
+                existing = reparent(existing, parentLocation);
             }
             return existing;
         }
 
         if (parentLocation == null && !"Region".equalsIgnoreCase(tag)) {
             LOGGER.warn("Parent location missing for {} with name {}", tag, name);
+            outcome(decision, "missingParent");
             return null;
         }
 
@@ -170,16 +700,21 @@ public class LocationSyncService {
 
         if (newLoc != null) {
             LOGGER.info("Created new {}: {}", tag, name);
-            allLocations.add(newLoc);
+            outcome(decision, "created");
+            negativeCache.remove(code.toUpperCase());
             addToCaches(newLoc);
             return newLoc;
         }
 
         LOGGER.warn("Failed creating new {}: {}. Checking if it already exists by name", tag, name);
         Location fallback = findLocationByName(name);
+        if (fallback == null) {
+            fallback = searchByName(name);
+        }
+        outcome(decision, fallback != null ? "foundByName" : "createFailed");
         if (fallback != null) {
             LOGGER.info("Found existing {} by name after failed creation: {}", tag, name);
-            ensureLocationCodeUpdated(fallback, code, tag);
+            fallback = ensureLocationCodeUpdated(fallback, code, tag);
             addToCaches(fallback);
         }
         return fallback;
@@ -187,75 +722,60 @@ public class LocationSyncService {
 
     private Location createNewLocation(String name, String parentUuid, Set<String> tags, Map<String, String> attributes) throws Exception {
         String url = OpenmrsClient.stripEndingSlash(openmrsBaseUrl) + "/ws/rest/v1/location";
+        List<LocationCreateRequest.TagRef> tagRefs = new ArrayList<>();
+        if (tags != null) {
+            for (String tag : tags) {
+                tagRefs.add(new LocationCreateRequest.TagRef(tag));
+            }
+        }
+        List<LocationAttributeValue> attributeValues = new ArrayList<>();
+        if (attributes != null) {
+            attributes.forEach((type, value) -> attributeValues.add(new LocationAttributeValue(type, value)));
+        }
+        LocationCreateRequest request = new LocationCreateRequest(name, "Created via HFR integration", parentUuid,
+                tagRefs, attributeValues);
         for (int attempt = 1; attempt <= DEFAULT_MAX_ATTEMPTS; attempt++) {
             HttpURLConnection conn = null;
+            long started = System.nanoTime();
+            SyncEvents.OpenmrsCall event = SyncEvents.OpenmrsCall.start();
+            int responseCode = -1;
+            String createdUuid = null;
             try {
                 conn = openmrsClient.createConnection(url, "POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-
-                JSONObject json = new JSONObject();
-                json.put("name", name);
-                json.put("description", "Created via HFR integration");
-                if (parentUuid != null) {
-                    json.put("parentLocation", parentUuid);
-                }
-                if (tags != null && !tags.isEmpty()) {
-                    JSONArray tagArray = new JSONArray();
-                    for (String tag : tags) {
-                        tagArray.put(new JSONObject().put("name", tag));
-                    }
-                    json.put("tags", tagArray);
-                }
-                if (attributes != null && !attributes.isEmpty()) {
-                    JSONArray attributesArray = new JSONArray();
-                    for (Map.Entry<String, String> entry : attributes.entrySet()) {
-                        JSONObject attrJson = new JSONObject();
-                        attrJson.put("attributeType", entry.getKey());
-                        attrJson.put("value", entry.getValue());
-                        attributesArray.put(attrJson);
-                    }
-                    json.put("attributes", attributesArray);
-                }
-
-                try (OutputStream os = conn.getOutputStream()) {
-                    os.write(json.toString().getBytes(StandardCharsets.UTF_8));
-                }
-                int responseCode = conn.getResponseCode();
+                OpenmrsCodec.write(conn, request);
+                responseCode = conn.getResponseCode();
                 LOGGER.info("Create location {} response code {}", name, responseCode);
                 if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_CREATED) {
-                    try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                        StringBuilder response = new StringBuilder();
-                        String inputLine;
-                        while ((inputLine = in.readLine()) != null) {
-                            response.append(inputLine);
-                        }
-                        JSONObject createdLocation = new JSONObject(response.toString());
-                        Location newLocation = new Location();
-                        newLocation.setLocationId(createdLocation.getString("uuid"));
-                        newLocation.setName(createdLocation.getString("name"));
-
-                        Map<String, String> locAttributes = new HashMap<>();
-                        if (attributes != null && !attributes.isEmpty()) {
-                            if (attributes.get(codeLocationAttributeUuid) != null) {
-                                locAttributes.put("Code", attributes.get(codeLocationAttributeUuid));
-                            } else if (attributes.get(hfrCodeLocationAttributeUuid) != null) {
-                                locAttributes.put("HFR Code", attributes.get(hfrCodeLocationAttributeUuid));
-                            } else {
-                                locAttributes.putAll(attributes);
-                            }
-                        }
+                    LocationResponse createdLocation = OpenmrsCodec.readLocation(conn.getInputStream());
+                    Location newLocation = new Location();
+                    createdUuid = createdLocation.getUuid();
+                    newLocation.setLocationId(createdUuid);
+                    newLocation.setName(createdLocation.getName());
+                    newLocation.setRetired(false);
 
-                        newLocation.setAttributes(locAttributes);
-                        newLocation.setTags(tags);
-                        if (parentUuid != null) {
-                            newLocation.setParentLocation(findLocationByUuid(parentUuid));
+                    Map<String, String> locAttributes = new HashMap<>();
+                    if (attributes != null && !attributes.isEmpty()) {
+                        if (attributes.get(codeLocationAttributeUuid) != null) {
+                            locAttributes.put("Code", attributes.get(codeLocationAttributeUuid));
+                        } else if (attributes.get(hfrCodeLocationAttributeUuid) != null) {
+                            locAttributes.put("HFR Code", attributes.get(hfrCodeLocationAttributeUuid));
+                        } else {
+                            locAttributes.putAll(attributes);
                         }
-                        return newLocation;
                     }
+
+                    newLocation.setAttributes(locAttributes);
+                    newLocation.setTags(tags);
+                    if (parentUuid != null) {
+                        newLocation.setParentLocation(findLocationByUuid(parentUuid));
+                    }
+                    return newLocation;
                 }
             } catch (Exception e) {
                 LOGGER.error("Error creating new location {}", name, e);
             } finally {
+                metrics.recordOutbound(SyncMetrics.TARGET_OPENMRS, SyncMetrics.OP_CREATE, responseCode, System.nanoTime() - started);
+                event.finish(SyncMetrics.OP_CREATE, createdUuid, responseCode, attempt);
                 if (conn != null) {
                     conn.disconnect();
                 }
@@ -264,30 +784,34 @@ public class LocationSyncService {
         return null;
     }
 
+    private Location reparent(Location child, Location parentLocation) {
+        updateChildLocationParent(child, parentLocation.getLocationId());
+        return cache.update(child, location -> {
+            location.setParentLocation(parentLocation);
+            return true;
+        });
+    }
+
     private void updateChildLocationParent(Location child, String newParentUuid) {
         String url = OpenmrsClient.stripEndingSlash(openmrsBaseUrl) + "/ws/rest/v1/location/" + child.getLocationId();
         for (int attempt = 1; attempt <= DEFAULT_MAX_ATTEMPTS; attempt++) {
             HttpURLConnection conn = null;
+            long started = System.nanoTime();
+            SyncEvents.OpenmrsCall event = SyncEvents.OpenmrsCall.start();
+            int responseCode = -1;
             try {
                 conn = openmrsClient.createConnection(url, "POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                JSONObject parentLocationJson = new JSONObject();
-                parentLocationJson.put("uuid", newParentUuid);
-                JSONObject requestJson = new JSONObject();
-                requestJson.put("parentLocation", parentLocationJson);
-                try (OutputStream os = conn.getOutputStream()) {
-                    os.write(requestJson.toString().getBytes(StandardCharsets.UTF_8));
-                }
-                int responseCode = conn.getResponseCode();
+                OpenmrsCodec.write(conn, LocationUpdateRequest.reparent(newParentUuid));
+                responseCode = conn.getResponseCode();
                 LOGGER.info("Update child parent response code {}", responseCode);
                 if (responseCode == HttpURLConnection.HTTP_OK) {
-                    Location newParent = findLocationByUuid(newParentUuid);
-                    child.setParentLocation(newParent);
                     return;
                 }
             } catch (Exception e) {
                 LOGGER.error("Error updating child parent for {}", child.getName(), e);
             } finally {
+                metrics.recordOutbound(SyncMetrics.TARGET_OPENMRS, SyncMetrics.OP_REPARENT, responseCode, System.nanoTime() - started);
+                event.finish(SyncMetrics.OP_REPARENT, child.getLocationId(), responseCode, attempt);
                 if (conn != null) {
                     conn.disconnect();
                 }
@@ -299,23 +823,22 @@ public class LocationSyncService {
         String url = OpenmrsClient.stripEndingSlash(openmrsBaseUrl) + "/ws/rest/v1/location/" + location.getLocationId();
         for (int attempt = 1; attempt <= DEFAULT_MAX_ATTEMPTS; attempt++) {
             HttpURLConnection conn = null;
+            long started = System.nanoTime();
+            SyncEvents.OpenmrsCall event = SyncEvents.OpenmrsCall.start();
+            int responseCode = -1;
             try {
                 conn = openmrsClient.createConnection(url, "POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                JSONObject requestJson = new JSONObject();
-                requestJson.put("name", newName);
-                try (OutputStream os = conn.getOutputStream()) {
-                    os.write(requestJson.toString().getBytes(StandardCharsets.UTF_8));
-                }
-                int responseCode = conn.getResponseCode();
+                OpenmrsCodec.write(conn, LocationUpdateRequest.rename(newName));
+                responseCode = conn.getResponseCode();
                 LOGGER.info("Update location name response code {}", responseCode);
                 if (responseCode == HttpURLConnection.HTTP_OK) {
-                    location.setName(newName);
                     return responseCode;
                 }
             } catch (Exception e) {
                 LOGGER.error("Error updating location name for {}", location.getName(), e);
             } finally {
+                metrics.recordOutbound(SyncMetrics.TARGET_OPENMRS, SyncMetrics.OP_RENAME, responseCode, System.nanoTime() - started);
+                event.finish(SyncMetrics.OP_RENAME, location.getLocationId(), responseCode, attempt);
                 if (conn != null) {
                     conn.disconnect();
                 }
@@ -337,122 +860,414 @@ public class LocationSyncService {
             return;
         }
         String trimmed = status.trim();
-        if (!trimmed.equalsIgnoreCase("Operating")) {
-            String reason = "Operating status: " + trimmed;
-            openmrsClient.retireLocation(facilityLoc.getLocationId(), reason);
+        boolean retire = !trimmed.equalsIgnoreCase("Operating");
+        if (facilityLoc.getRetired() != null && facilityLoc.getRetired() == retire) {
+            (retire ? skippedRetires : skippedUnretires).increment();
+            return;
+        }
+        boolean done;
+        if (retire) {
+            SyncTrace.stageOutcome("retire");
+            done = openmrsClient.retireLocation(facilityLoc.getLocationId(), "Operating status: " + trimmed);
         } else {
-            openmrsClient.unretireLocation(facilityLoc.getLocationId());
+            SyncTrace.stageOutcome("unretire");
+            done = openmrsClient.unretireLocation(facilityLoc.getLocationId());
+        }
+        if (done) {
+            cache.update(facilityLoc, location -> {
+                location.setRetired(retire);
+                return true;
+            });
         }
     }
 
     private void addToCaches(Location location) {
-        if (location == null || location.getLocationId() == null) {
+        cache.put(location);
+    }
+
+    /**
+     * Reloads the caches from OpenMRS. With the two-tier warm start only uuids, parents and code
+     * attributes are loaded here, which is enough to look locations up by code and uuid; names and tags
+     * are filled in by a background pass, or on first use by {@link #hydrate}. A location whose name is
+     * still null has not been hydrated. A bounded cache loads the pinned tags in full and then leaf tags
+     * only until the leaf tier is full.
+     */
+    public void refreshLocationCache() {
+        long generation;
+        List<String> scopes = loadScopes();
+        reloadLock.lock();
+        try {
+            long started = System.currentTimeMillis();
+            SyncEvents.CacheLoad event = new SyncEvents.CacheLoad();
+            event.begin();
+            LocationCache.Load load = cache.beginLoad();
+            loading = load;
+            long[] published = new long[1];
+            try {
+                for (String tag : scopes) {
+                    loadingScope = tag != null ? tag : "all";
+                    loadScope(load, tag);
+                }
+                loadingScope = null;
+                if (twoTierWarmStart) {
+                    for (Location loc : load.locations()) {
+                        linkParent(loc, load::getByUuid);
+                    }
+                }
+                cache.publish(load, snapshot -> {
+                    int unhydrated = 0;
+                    for (Location loc : snapshot.locations()) {
+                        if (loc.getName() == null) {
+                            unhydrated++;
+                        }
+                    }
+                    pendingHydration.set(unhydrated);
+                    published[0] = cacheGeneration.incrementAndGet();
+                });
+            } finally {
+                loadingScope = null;
+                loading = null;
+                // A failed load keeps the live cache; stop recording writes for it
+                cache.abortLoad(load);
+            }
+            generation = published[0];
+            negativeCache.clear();
+            cacheLoadedAt = System.currentTimeMillis();
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = twoTierWarmStart ? "index" : "full";
+                event.locations = cache.uuidCount();
+                event.generation = generation;
+                event.commit();
+            }
+            LOGGER.info("Loaded {} locations from OpenMRS in {} ms", cache.uuidCount(), cacheLoadedAt - started);
+        } finally {
+            reloadLock.unlock();
+        }
+        if (twoTierWarmStart && backgroundHydration) {
+            Thread hydration = new Thread(() -> hydrateAll(generation, scopes), "location-hydration");
+            hydration.setDaemon(true);
+            hydration.start();
+        }
+    }
+
+    /**
+     * The location tags loaded by a cache reload, or a single null for every location.
+     */
+    private List<String> loadScopes() {
+        if (!cache.isBounded()) {
+            return Collections.singletonList(null);
+        }
+        List<String> scopes = new ArrayList<>(pinnedTags);
+        scopes.addAll(leafTags);
+        return scopes;
+    }
+
+    private void loadScope(LocationCache.Load load, String tag) {
+        boolean leafScope = tag != null && leafTags.contains(tag);
+        if (leafScope && load.isLeafTierFull()) {
             return;
         }
-        locationCache.put(location.getLocationId().toUpperCase(), location);
-        if (location.getAttributes() != null) {
-            if (location.getAttributes().get("Code") != null) {
-                codeCache.put(location.getAttributes().get("Code").toUpperCase(), location);
-            } else if (location.getAttributes().get("HFR Code") != null) {
-                codeCache.put(location.getAttributes().get("HFR Code").toUpperCase(), location);
+        fetchLocationsHelper.forEachLocationPage(
+                twoTierWarmStart ? FetchLocationsHelper.VIEW_INDEX : FetchLocationsHelper.VIEW_FULL, tag, results -> {
+                    for (int i = 0; i < results.length(); i++) {
+                        Location loc = twoTierWarmStart
+                                ? fetchLocationsHelper.makeIndexLocation(results.getJSONObject(i), codeAttributeNames)
+                                : fetchLocationsHelper.makeLocation(results.getJSONObject(i));
+                        if (tag != null) {
+                            loc.addTag(tag);
+                        }
+                        load.put(loc);
+                    }
+                    return !leafScope || !load.isLeafTierFull();
+                });
+    }
+
+    /**
+     * Points the parent of a location not cached yet at the loaded instance instead of the uuid-only stub
+     * the index load produces.
+     */
+    private void linkParent(Location loc, Function<String, Location> loaded) {
+        Location parent = loc.getParentLocation();
+        if (parent != null) {
+            Location cached = loaded.apply(parent.getLocationId());
+            if (cached != null) {
+                loc.setParentLocation(cached);
             }
         }
     }
 
-    public synchronized void refreshLocationCache() {
-        allLocations = fetchLocationsHelper.getAllOpenMRSlocations();
-        locationCache.clear();
-        codeCache.clear();
-        for (Location loc : allLocations) {
-            addToCaches(loc);
+    private void hydrateAll(long generation, List<String> scopes) {
+        long started = System.currentTimeMillis();
+        SyncEvents.CacheLoad event = new SyncEvents.CacheLoad();
+        event.begin();
+        for (String tag : scopes) {
+            fetchLocationsHelper.forEachLocationPage(FetchLocationsHelper.VIEW_DETAILS, tag, results -> {
+                if (cacheGeneration.get() != generation) {
+                    return false;
+                }
+                Map<String, JSONObject> detailsByUuid = new HashMap<>();
+                List<Location> page = new ArrayList<>(results.length());
+                for (int i = 0; i < results.length(); i++) {
+                    JSONObject details = results.getJSONObject(i);
+                    Location loc = cache.getByUuid(details.getString("uuid"));
+                    if (loc != null && loc.getName() == null) {
+                        detailsByUuid.put(loc.getLocationId().toUpperCase(), details);
+                        page.add(loc);
+                    }
+                }
+                cache.updateAll(page, loc -> fillIfUnnamed(loc, detailsByUuid.get(loc.getLocationId().toUpperCase())));
+                return true;
+            });
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = "hydration";
+            event.locations = cache.uuidCount() - pendingHydration.get();
+            event.generation = generation;
+            event.commit();
+        }
+        if (cacheGeneration.get() == generation) {
+            LOGGER.info("Hydrated location names and tags in {} ms, {} left unhydrated",
+                    System.currentTimeMillis() - started, pendingHydration.get());
         }
-        LOGGER.info("Loaded {} locations from OpenMRS", allLocations.size());
     }
 
-    private Location findLocationByCode(String code) {
-        if (code == null) return null;
-        return codeCache.get(code.toUpperCase());
+    /**
+     * Loads the name and tags of a location the background pass has not reached yet. Returns the location
+     * as now cached, or as given if it was not.
+     */
+    private Location hydrate(Location location) {
+        if (location.getName() != null) {
+            return location;
+        }
+        String uuid = location.getLocationId().toUpperCase();
+        synchronized (hydrationLocks[Math.floorMod(uuid.hashCode(), hydrationLocks.length)]) {
+            Location current = cache.getByUuid(uuid);
+            if (current == null) {
+                current = location;
+            } else if (current.getName() != null) {
+                return current;
+            }
+            try {
+                JSONObject details = fetchLocationsHelper.fetchLocationDetails(uuid);
+                if (details != null) {
+                    return cache.update(current, loc -> fillIfUnnamed(loc, details));
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Could not load details of location {}: {}", location.getLocationId(), e.getMessage());
+            }
+            return current;
+        }
     }
 
-    private Location findLocationByName(String name) {
-        if (name == null) return null;
-        for (Location loc : allLocations) {
-            if (loc != null && name.equalsIgnoreCase(loc.getName())) {
-                return loc;
+    /**
+     * Fills in a copy being published by the cache; runs under the cache's write lock, so the count it
+     * keeps stays in step with the snapshot a reload resets it from.
+     */
+    private boolean fillIfUnnamed(Location location, JSONObject details) {
+        if (details == null || location.getName() != null) {
+            return false;
+        }
+        fillDetails(location, details);
+        pendingHydration.decrementAndGet();
+        return true;
+    }
+
+    private static void fillDetails(Location location, JSONObject details) {
+        JSONArray tags = details.optJSONArray("tags");
+        if (tags != null) {
+            for (int i = 0; i < tags.length(); i++) {
+                location.addTag(tags.getJSONObject(i).optString("display"));
             }
         }
+        location.setName(details.optString("name"));
+    }
+
+    /**
+     * Looks a location missing from the cache up in OpenMRS before the caller decides to create it: among
+     * the children of its expected parent when that is known, otherwise with the configured query.
+     * Candidates only count if their code attribute matches. Codes found missing are remembered for
+     * {@code negative-ttl} so repeated misses do not query OpenMRS again.
+     */
+    private Location lookupOnMiss(String code, String name, Location parentLocation) {
+        boolean byParent = parentLocation != null && parentLocation.getLocationId() != null;
+        if (lookupQuery == null || (!byParent && (name == null || name.isEmpty()))) {
+            return null;
+        }
+        String key = code.toUpperCase();
+        long now = System.currentTimeMillis();
+        Long expiresAt = negativeCache.get(key);
+        metrics.recordCacheLookup(SyncMetrics.CACHE_NEGATIVE, expiresAt != null && expiresAt > now);
+        if (expiresAt != null && expiresAt > now) {
+            return null;
+        }
+        try {
+            JSONArray results = byParent
+                    ? fetchLocationsHelper.fetchChildLocations(parentLocation.getLocationId())
+                    : fetchLocationsHelper.searchLocations(lookupQuery
+                            .replace("{name}", URLEncoder.encode(name, StandardCharsets.UTF_8))
+                            .replace("{code}", URLEncoder.encode(code, StandardCharsets.UTF_8)));
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject json = results.getJSONObject(i);
+                Location candidate = fetchLocationsHelper.makeIndexLocation(json, codeAttributeNames);
+                Map<String, String> attributes = candidate.getAttributes();
+                if (attributes != null && (code.equalsIgnoreCase(attributes.get(LocationCache.CODE_ATTRIBUTE))
+                        || code.equalsIgnoreCase(attributes.get(LocationCache.HFR_CODE_ATTRIBUTE)))) {
+                    fillDetails(candidate, json);
+                    linkParent(candidate, cache::getByUuid);
+                    addToCaches(candidate);
+                    negativeCache.remove(key);
+                    metrics.recordCacheLookup(SyncMetrics.CACHE_OPENMRS_LOOKUP, true);
+                    LOGGER.info("Found uncached location {} ({}) in OpenMRS", candidate.getName(), code);
+                    return candidate;
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("OpenMRS lookup for location {} failed: {}", code, e.getMessage());
+            return null;
+        }
+        metrics.recordCacheLookup(SyncMetrics.CACHE_OPENMRS_LOOKUP, false);
+        if (negativeCache.size() > NEGATIVE_CACHE_PURGE_SIZE) {
+            negativeCache.values().removeIf(expiry -> expiry <= now);
+        }
+        negativeCache.put(key, now + negativeTtlMillis);
         return null;
     }
 
+    /**
+     * Searches OpenMRS for a location named {@code name}, for when the name index misses: leaves that have
+     * not been hydrated yet, or were never cached in a bounded cache, have no name in it. Returns the
+     * hydrated location, or null if none matches or the search failed.
+     */
+    private Location searchByName(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            JSONArray results = fetchLocationsHelper.searchLocations(nameSearchQuery
+                    .replace("{name}", URLEncoder.encode(name, StandardCharsets.UTF_8))
+                    .replace("{code}", ""));
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject json = results.getJSONObject(i);
+                if (!name.trim().equalsIgnoreCase(json.optString("name").trim())) {
+                    continue;
+                }
+                Location cached = cache.getByUuid(json.getString("uuid"));
+                if (cached != null) {
+                    return hydrate(cached);
+                }
+                Location candidate = fetchLocationsHelper.makeIndexLocation(json, codeAttributeNames);
+                fillDetails(candidate, json);
+                linkParent(candidate, cache::getByUuid);
+                return candidate;
+            }
+        } catch (Exception e) {
+            LOGGER.warn("OpenMRS search for location named {} failed: {}", name, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Reloads the cache unless it was loaded within {@code maxAge}. Used when this node takes over a
+     * region from another cluster node, whose writes this node's cache has not seen.
+     */
+    public void refreshLocationCacheIfOlderThan(Duration maxAge) {
+        awaitWarmUp();
+        if (System.currentTimeMillis() - cacheLoadedAt > maxAge.toMillis()) {
+            refreshLocationCache();
+        }
+    }
+
+    private Location resolveForeignParent(String uuid) {
+        Location location = findLocationByUuid(uuid);
+        if (location == null) {
+            location = new Location(uuid, null, null);
+            cache.putUuidOnly(location);
+        }
+        return location;
+    }
+
+    private Location findLocationByCode(String code) {
+        if (code == null) return null;
+        Location location = cache.getByCode(code);
+        metrics.recordCacheLookup(SyncMetrics.CACHE_CODE, location != null);
+        return location;
+    }
+
+    private Location findLocationByName(String name) {
+        return cache.findByName(name);
+    }
+
     private Location findLocationByUuid(String uuid) {
         if (uuid == null) return null;
-        return locationCache.get(uuid.toUpperCase());
+        Location location = cache.getByUuid(uuid);
+        metrics.recordCacheLookup(SyncMetrics.CACHE_LOCATION, location != null);
+        return location;
     }
 
-    private void ensureLocationCodeUpdated(Location location, String code, String tag) {
-        if (location == null || code == null) return;
+    private Location ensureLocationCodeUpdated(Location location, String code, String tag) {
+        if (location == null || code == null) return location;
         String attributeKey = "facility".equalsIgnoreCase(tag) ? "HFR Code" : "Code";
         String attributeTypeUuid = "facility".equalsIgnoreCase(tag) ? hfrCodeLocationAttributeUuid : codeLocationAttributeUuid;
         String current = location.getAttributes() != null ? location.getAttributes().get(attributeKey) : null;
         if (current != null && current.equalsIgnoreCase(code)) {
-            return;
+            return location;
         }
 
         String url = OpenmrsClient.stripEndingSlash(openmrsBaseUrl) + "/ws/rest/v1/location/" + location.getLocationId();
         for (int attempt = 1; attempt <= DEFAULT_MAX_ATTEMPTS; attempt++) {
             HttpURLConnection conn = null;
+            long started = System.nanoTime();
+            SyncEvents.OpenmrsCall event = SyncEvents.OpenmrsCall.start();
+            int responseCode = -1;
             try {
                 conn = openmrsClient.createConnection(url, "POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                JSONObject attribute = new JSONObject();
-                attribute.put("attributeType", attributeTypeUuid);
-                attribute.put("value", code);
-                JSONArray attributesArray = new JSONArray();
-                attributesArray.put(attribute);
-                JSONObject requestJson = new JSONObject();
-                requestJson.put("attributes", attributesArray);
-                try (OutputStream os = conn.getOutputStream()) {
-                    os.write(requestJson.toString().getBytes(StandardCharsets.UTF_8));
-                }
-                int responseCode = conn.getResponseCode();
+                OpenmrsCodec.write(conn, LocationUpdateRequest.setAttribute(attributeTypeUuid, code));
+                responseCode = conn.getResponseCode();
                 LOGGER.info("Add/update location attribute response code {}", responseCode);
                 if (responseCode == HttpURLConnection.HTTP_OK) {
-                    if (location.getAttributes() == null) {
-                        location.setAttributes(new HashMap<>());
-                    }
-                    location.getAttributes().put(attributeKey, code);
-                    codeCache.put(code.toUpperCase(), location);
-                    return;
+                    Location updated = cache.update(location, loc -> {
+                        if (loc.getAttributes() == null) {
+                            loc.setAttributes(new HashMap<>());
+                        }
+                        loc.getAttributes().put(attributeKey, code);
+                        return true;
+                    });
+                    cache.putCode(code, updated);
+                    return updated;
                 }
             } catch (Exception e) {
                 LOGGER.error("Error updating code attribute for {}", location.getName(), e);
             } finally {
+                metrics.recordOutbound(SyncMetrics.TARGET_OPENMRS, SyncMetrics.OP_SET_CODE, responseCode, System.nanoTime() - started);
+                event.finish(SyncMetrics.OP_SET_CODE, location.getLocationId(), responseCode, attempt);
                 if (conn != null) {
                     conn.disconnect();
                 }
             }
         }
+        return location;
     }
 
     private String buildWardName(HfrFacilityPayload payload) {
         if (payload.getWard() == null) {
             return null;
         }
-        return CapitalizeUtil.capitalizeWords(String.format("%s - %s", payload.getWard(), valueOrEmpty(payload.getCouncil())));
+        return CapitalizeUtil.capitalizeCached(payload.getWard() + " - " + valueOrEmpty(payload.getCouncil()));
     }
 
     private String buildVillageName(HfrFacilityPayload payload) {
         if (payload.getVillage() == null) {
             return null;
         }
-        return CapitalizeUtil.capitalizeWords(String.format("%s - %s - %s",
-                payload.getVillage(),
-                valueOrEmpty(payload.getWard()),
-                valueOrEmpty(payload.getCouncil())));
+        return CapitalizeUtil.capitalizeWords(payload.getVillage()
+                + " - " + valueOrEmpty(payload.getWard())
+                + " - " + valueOrEmpty(payload.getCouncil()));
     }
 
     private String buildFacilityName(HfrFacilityPayload payload) {
-        return CapitalizeUtil.capitalizeWords(String.format("%s - %s", payload.getName(), payload.getFacIdNumber()));
+        return CapitalizeUtil.capitalizeWords(payload.getName() + " - " + payload.getFacIdNumber());
     }
 
     private String resolveWardCode(HfrFacilityPayload payload) {
@@ -472,54 +1287,491 @@ public class LocationSyncService {
         return value != null ? value : "";
     }
 
-    public void processAdminHierarchyData(JSONArray response) {
+    /**
+     * Applies one page of the admin hierarchy. The country and zones are resolved once up front, then
+     * rows are grouped by region and each region is processed in order on the refresh pool.
+     *
+     * @return the number of rows, country or zones that could not be applied
+     */
+    public int processAdminHierarchyData(JSONArray response) {
+        AtomicInteger failed = new AtomicInteger();
+        Map<String, Location> zones = new HashMap<>();
+        Map<String, List<JSONObject>> partitions = new LinkedHashMap<>();
+        Location countryLoc = null;
+        boolean countryResolved = false;
         for (int i = 0; i < response.length(); i++) {
             JSONObject facilityJson = response.getJSONObject(i);
+            recordHfrAdminRow(facilityJson);
             try {
-                Location countryLoc = ensureLocationExists(null,
-                        CapitalizeUtil.capitalizeWords(facilityJson.optString("country")),
-                        "TZ", "Country");
-                Location zoneLoc = ensureLocationExists(countryLoc,
-                        CapitalizeUtil.capitalizeWords(facilityJson.optString("zone")),
-                        facilityJson.optString("zone_code"),
-                        "Zone");
+                if (!countryResolved) {
+                    countryLoc = ensureLocationExists(null,
+                            CapitalizeUtil.capitalizeCached(facilityJson.optString("country")),
+                            "TZ", "Country");
+                    countryResolved = true;
+                    if (countryLoc == null) {
+                        failed.incrementAndGet();
+                    }
+                }
+                String zoneCode = facilityJson.optString("zone_code");
+                if (!zones.containsKey(zoneCode)) {
+                    Location zoneLoc = ensureLocationExists(countryLoc,
+                            CapitalizeUtil.capitalizeCached(facilityJson.optString("zone")),
+                            zoneCode,
+                            "Zone");
+                    zones.put(zoneCode, zoneLoc);
+                    if (zoneLoc == null && !zoneCode.isEmpty()) {
+                        failed.incrementAndGet();
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.error("Error processing admin hierarchy {}", e.getMessage());
+                failed.incrementAndGet();
+            }
+            partitions.computeIfAbsent(partitionKey(facilityJson.optString("region_code")), k -> new ArrayList<>())
+                    .add(facilityJson);
+        }
+
+        Map<String, String> zoneUuids = new HashMap<>();
+        zones.forEach((zoneCode, zone) -> {
+            if (zone != null) {
+                zoneUuids.put(zoneCode, zone.getLocationId());
+            }
+        });
+        runPartitioned(partitions, (regionKey, rows) -> {
+            RegionRouter router = regionRouter;
+            if (router == null) {
+                failed.addAndGet(withRegion(regionKey, () -> applyAdminRows(rows, zones)));
+                return;
+            }
+            List<String> json = rows.stream().map(JSONObject::toString).collect(Collectors.toList());
+            try {
+                SyncResponse result = router.applyAdminRows(regionKey, zoneUuids, json).toCompletableFuture().join();
+                if ("error".equalsIgnoreCase(result.getStatus())) {
+                    LOGGER.error("Admin hierarchy rows for region {} failed: {}", regionKey, result.getMessage());
+                    failed.addAndGet(rows.size());
+                }
+            } catch (Exception e) {
+                LOGGER.error("Error routing admin hierarchy rows for region {}", regionKey, e);
+                failed.addAndGet(rows.size());
+            }
+        });
+        metrics.recordRowsProcessed(HfrClient.ENDPOINT_HIERARCHY, response.length());
+        return failed.get();
+    }
+
+    /**
+     * @return the number of rows where a location whose code the row carries could not be created or found
+     */
+    private int applyAdminRows(List<JSONObject> rows, Map<String, Location> zones) {
+        int failed = 0;
+        for (JSONObject facilityJson : rows) {
+            try {
+                Location zoneLoc = zones.get(facilityJson.optString("zone_code"));
                 Location regionLoc = ensureLocationExists(zoneLoc,
-                        CapitalizeUtil.capitalizeWords(facilityJson.optString("region")),
+                        CapitalizeUtil.capitalizeCached(facilityJson.optString("region")),
                         facilityJson.optString("region_code"),
                         "Region");
                 Location districtLoc = ensureLocationExists(regionLoc,
-                        CapitalizeUtil.capitalizeWords(facilityJson.optString("district")),
+                        CapitalizeUtil.capitalizeCached(facilityJson.optString("district")),
                         facilityJson.optString("district_code"),
                         "District");
                 Location councilLoc = ensureLocationExists(districtLoc,
-                        CapitalizeUtil.capitalizeWords(facilityJson.optString("council")),
+                        CapitalizeUtil.capitalizeCached(facilityJson.optString("council")),
                         facilityJson.optString("council_code"),
                         "Council");
                 Location wardLoc = ensureLocationExists(councilLoc,
-                        CapitalizeUtil.capitalizeWords(facilityJson.optString("ward") + " - " + facilityJson.optString("council")),
+                        adminWardName(facilityJson),
                         facilityJson.optString("ward_code"),
                         "Ward");
-                ensureLocationExists(wardLoc,
-                        CapitalizeUtil.capitalizeWords(facilityJson.optString("village_mtaa") + " - " + facilityJson.optString("ward") + " - " + facilityJson.optString("council")),
+                Location villageLoc = ensureLocationExists(wardLoc,
+                        adminVillageName(facilityJson),
                         facilityJson.optString("village_mtaa_code"),
                         "Village");
+                List<String> missing = new ArrayList<>();
+                checkResolved(missing, regionLoc, "Region", facilityJson.optString("region_code"));
+                checkResolved(missing, districtLoc, "District", facilityJson.optString("district_code"));
+                checkResolved(missing, councilLoc, "Council", facilityJson.optString("council_code"));
+                checkResolved(missing, wardLoc, "Ward", facilityJson.optString("ward_code"));
+                checkResolved(missing, villageLoc, "Village", facilityJson.optString("village_mtaa_code"));
+                if (!missing.isEmpty()) {
+                    LOGGER.warn("Could not create or find {} for admin hierarchy row", String.join(", ", missing));
+                    failed++;
+                }
             } catch (Exception e) {
                 LOGGER.error("Error processing admin hierarchy {}", e.getMessage());
+                failed++;
             }
         }
+        return failed;
     }
 
+    /**
+     * Applies one page of HFR facilities, grouped by region and processed in parallel across regions.
+     */
     public void processHfrResponse(JSONArray response) {
+        Map<String, List<HfrFacilityPayload>> partitions = new LinkedHashMap<>();
         for (int i = 0; i < response.length(); i++) {
             JSONObject facilityJson = response.getJSONObject(i);
             try {
                 HfrFacilityPayload payload = CustomJacksonObjectMapper.mapper.readValue(
                         facilityJson.toString(),
                         HfrFacilityPayload.class);
-                syncFacility(payload);
+                recordHfrFacility(payload);
+                partitions.computeIfAbsent(partitionKey(payload.getRegionCode()), k -> new ArrayList<>())
+                        .add(payload);
             } catch (Exception e) {
                 LOGGER.error("Error processing HFR facility {}", e.getMessage());
             }
         }
+        runPartitioned(partitions, (regionKey, payloads) -> {
+            RegionRouter router = regionRouter;
+            for (HfrFacilityPayload payload : payloads) {
+                if (router == null) {
+                    withRegion(regionKey, () -> doSyncFacility(payload));
+                    continue;
+                }
+                try {
+                    router.syncFacility(payload).toCompletableFuture().join();
+                } catch (Exception e) {
+                    LOGGER.error("Error routing HFR facility {} to region {}", payload.getFacIdNumber(), regionKey, e);
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    deadLetters.recordFailure(payload, cause.getClass().getSimpleName(), cause.getMessage());
+                }
+            }
+        });
+        metrics.recordRowsProcessed(HfrClient.ENDPOINT_FACILITIES, response.length());
+    }
+
+    private static String adminWardName(JSONObject row) {
+        return CapitalizeUtil.capitalizeCached(row.optString("ward") + " - " + row.optString("council"));
+    }
+
+    private static String adminVillageName(JSONObject row) {
+        return CapitalizeUtil.capitalizeWords(row.optString("village_mtaa") + " - " + row.optString("ward")
+                + " - " + row.optString("council"));
+    }
+
+    /**
+     * Adds an admin hierarchy row to the HFR side of drift detection, named as the sync names it.
+     */
+    private void recordHfrAdminRow(JSONObject row) {
+        hfrHierarchy.put("Region", row.optString("region_code"),
+                CapitalizeUtil.capitalizeCached(row.optString("region")), null);
+        hfrHierarchy.put("District", row.optString("district_code"),
+                CapitalizeUtil.capitalizeCached(row.optString("district")), row.optString("region_code"));
+        hfrHierarchy.put("Council", row.optString("council_code"),
+                CapitalizeUtil.capitalizeCached(row.optString("council")), row.optString("district_code"));
+        hfrHierarchy.put("Ward", row.optString("ward_code"), adminWardName(row), row.optString("council_code"));
+        hfrHierarchy.put("Village", row.optString("village_mtaa_code"), adminVillageName(row), row.optString("ward_code"));
+    }
+
+    private void recordHfrFacility(HfrFacilityPayload payload) {
+        String wardCode = resolveWardCode(payload);
+        hfrHierarchy.put("Region", payload.getRegionCode(), CapitalizeUtil.capitalizeCached(payload.getRegion()), null);
+        hfrHierarchy.put("District", payload.getDistrictCode(),
+                CapitalizeUtil.capitalizeCached(payload.getDistrict()), payload.getRegionCode());
+        hfrHierarchy.put("Council", payload.getCouncilCode(),
+                CapitalizeUtil.capitalizeCached(payload.getCouncil()), payload.getDistrictCode());
+        if (payload.getWard() != null) {
+            hfrHierarchy.put("Ward", wardCode, buildWardName(payload), payload.getCouncilCode());
+        }
+        hfrHierarchy.put("Facility", payload.getFacIdNumber(), buildFacilityName(payload), wardCode);
+        facilityIndex.put(payload);
+        if (payload.getVillage() != null) {
+            hfrHierarchy.put("Village", payload.getVillageCode(), buildVillageName(payload), wardCode);
+        }
+    }
+
+    /**
+     * Facilities seen by refreshes and webhooks nearest to the point; see {@link FacilityIndex#nearest}.
+     */
+    public List<NearbyFacility> findNearestFacilities(double latitude, double longitude, int k, double radiusMeters,
+                                                      String type) {
+        return facilityIndex.nearest(latitude, longitude, k, radiusMeters, type);
+    }
+
+    /**
+     * Compares the HFR hierarchy seen by refreshes and webhooks with the cached OpenMRS hierarchy by subtree
+     * hash and lists the regions, districts, councils and wards that differ. Villages and facilities count
+     * towards their ward only when the cache holds all of them, i.e. is not bounded. Without background
+     * hydration, locations whose names are not loaded yet are loaded here first. The OpenMRS side is kept
+     * between calls and put again only when the cache has changed, so unchanged subtrees keep their hashes.
+     * With {@code codePrefix}, only the cached locations under that code are put again and only their
+     * subtrees compared.
+     */
+    public DriftReport detectDrift(Integer limit, String codePrefix) {
+        String prefix = codePrefix != null && !codePrefix.isBlank() ? codePrefix.trim().toUpperCase() : null;
+        long started = System.currentTimeMillis();
+        if (hfrHierarchy.size() == 0) {
+            return new DriftReport("noHfrSnapshot", "No HFR hierarchy seen since startup; run a refresh first",
+                    0, cache.uuidCount(), false, 0, false, Collections.emptyList(), Collections.emptyList());
+        }
+        if (pendingHydration.get() > 0 && !backgroundHydration) {
+            cache.snapshot().locations().forEach(this::hydrate);
+        }
+        if (pendingHydration.get() > 0) {
+            return new DriftReport("hydrating", String.format("%d cached locations have no name yet, try again shortly",
+                    pendingHydration.get()), hfrHierarchy.size(), cache.uuidCount(), false, 0, false,
+                    Collections.emptyList(), Collections.emptyList());
+        }
+        boolean leaves = !cache.isBounded();
+        int max = limit != null && limit > 0 ? Math.min(limit, driftMaxEntries) : driftMaxEntries;
+        List<DriftEntry> entries;
+        int openmrsLocations;
+        synchronized (openmrsHierarchy) {
+            LocationCache.Snapshot snapshot = cache.snapshot();
+            if (snapshot.version() != openmrsHierarchyVersion) {
+                // Unchanged locations are put again as they were and keep their subtree hashes
+                long sweepStamp = openmrsHierarchy.beginSweep();
+                for (Location location : prefix != null ? snapshot.subtree(prefix) : snapshot.locations()) {
+                    putOpenmrsLocation(snapshot, location);
+                }
+                if (prefix != null) {
+                    openmrsHierarchy.sweep(sweepStamp, prefix);
+                } else {
+                    openmrsHierarchy.sweep(sweepStamp);
+                    openmrsHierarchyVersion = snapshot.version();
+                }
+            }
+            entries = hfrHierarchy.diff(openmrsHierarchy, leaves, max, prefix);
+            openmrsLocations = openmrsHierarchy.size();
+        }
+        List<String> regions = entries.stream().map(DriftEntry::getRegionCode).distinct().sorted()
+                .collect(Collectors.toList());
+        String status = hfrHierarchyComplete ? "ok" : "partial";
+        String message = hfrHierarchyComplete
+                ? String.format("%d differing locations in %d regions", entries.size(), regions.size())
+                : "HFR hierarchy only covers webhooks and resumed refreshes since startup; run a full refresh for a complete comparison";
+        return new DriftReport(status, message, hfrHierarchy.size(), openmrsLocations, leaves,
+                System.currentTimeMillis() - started, entries.size() >= max, regions, entries);
+    }
+
+    private void putOpenmrsLocation(LocationCache.Snapshot snapshot, Location location) {
+        String level = LocationCache.levelOf(location);
+        if (level == null) {
+            return;
+        }
+        Location parent = location.getParentLocation();
+        Location cachedParent = parent != null ? snapshot.getByUuid(parent.getLocationId()) : null;
+        String parentCode = cachedParent != null ? LocationCache.codeOf(cachedParent)
+                : parent != null ? LocationCache.codeOf(parent) : null;
+        openmrsHierarchy.put(level, LocationCache.codeOf(location), location.getName(), parentCode);
+    }
+
+    /**
+     * Entity tag of everything the read API serves: changes whenever the cache does, and differs between
+     * processes so a tag from another node or an earlier run never matches.
+     */
+    public String getCacheTag() {
+        return cacheInstance + "-" + cache.version();
+    }
+
+    /**
+     * The cached location with this code, or null. Leaves evicted from a bounded cache are not looked up.
+     */
+    public LocationView findLocationView(String code) {
+        Location location = cache.getByCode(code);
+        return location != null ? view(location) : null;
+    }
+
+    /**
+     * The ancestors of a cached location, root first, or null if the uuid is not cached.
+     */
+    public List<LocationView> findAncestors(String uuid) {
+        LocationCache.Snapshot snapshot = cache.snapshot();
+        Location location = snapshot.getByUuid(uuid);
+        if (location == null) {
+            return null;
+        }
+        LinkedList<LocationView> ancestors = new LinkedList<>();
+        Set<String> seen = new HashSet<>();
+        seen.add(location.getLocationId());
+        Location parent = location.getParentLocation();
+        while (parent != null && seen.add(parent.getLocationId())) {
+            Location cached = snapshot.getByUuid(parent.getLocationId());
+            Location ancestor = cached != null ? cached : parent;
+            ancestors.addFirst(view(ancestor));
+            parent = ancestor.getParentLocation();
+        }
+        return ancestors;
+    }
+
+    public LocationLookup lookupLocations(Collection<String> codes) {
+        Map<String, LocationView> found = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        LocationCache.Snapshot snapshot = cache.snapshot();
+        for (String code : codes) {
+            Location location = code != null ? snapshot.getByCode(code) : null;
+            if (location != null) {
+                found.put(code, view(location));
+            } else {
+                missing.add(code);
+            }
+        }
+        return new LocationLookup(found, missing);
+    }
+
+    /**
+     * Cached locations with a name word starting with {@code query}, for type-ahead, optionally only those
+     * tagged {@code tag} (a hierarchy level) and those below {@code ancestor} (a uuid or code). Locations
+     * whose names the background pass has not loaded yet are not found. Returns null if the ancestor is
+     * not cached.
+     */
+    public List<LocationView> searchLocations(String query, String tag, String ancestor, int limit) {
+        LocationCache.Snapshot snapshot = cache.snapshot();
+        Predicate<Location> filter = location -> true;
+        if (ancestor != null && !ancestor.isBlank()) {
+            Location root = snapshot.getByUuid(ancestor.trim());
+            if (root == null) {
+                root = snapshot.getByCode(ancestor.trim());
+            }
+            if (root == null) {
+                return null;
+            }
+            String rootUuid = root.getLocationId();
+            filter = location -> isBelow(snapshot, location, rootUuid);
+        }
+        List<LocationView> views = new ArrayList<>();
+        for (Location location : snapshot.searchByName(query, tag, filter, limit)) {
+            views.add(view(location));
+        }
+        return views;
+    }
+
+    private static boolean isBelow(LocationCache.Snapshot snapshot, Location location, String ancestorUuid) {
+        Location parent = location.getParentLocation();
+        for (int depth = 0; parent != null && depth < MAX_HIERARCHY_DEPTH; depth++) {
+            if (ancestorUuid.equalsIgnoreCase(parent.getLocationId())) {
+                return true;
+            }
+            Location cached = snapshot.getByUuid(parent.getLocationId());
+            parent = (cached != null ? cached : parent).getParentLocation();
+        }
+        return false;
+    }
+
+    /**
+     * Cached districts, councils, wards and villages whose OpenMRS parent is not the location their code
+     * implies, i.e. the nearest cached location whose code is a prefix of theirs, under {@code codePrefix}
+     * when that is given. Levels come from tags, so locations whose tags are not loaded yet are skipped.
+     */
+    public List<CodeParentMismatch> findCodeParentMismatches(String codePrefix, Integer limit) {
+        int max = limit != null && limit > 0 ? Math.min(limit, driftMaxEntries) : driftMaxEntries;
+        List<CodeParentMismatch> mismatches = new ArrayList<>();
+        LocationCache.Snapshot snapshot = cache.snapshot();
+        boolean scoped = codePrefix != null && !codePrefix.isBlank();
+        for (Location location : scoped ? snapshot.subtree(codePrefix) : snapshot.locations()) {
+            if (mismatches.size() >= max) {
+                break;
+            }
+            String level = LocationCache.levelOf(location);
+            String code = LocationCache.codeOf(location);
+            if (code == null || level == null || "Region".equals(level) || "Facility".equals(level)) {
+                continue;
+            }
+            List<Location> expectedAncestors = snapshot.expectedAncestors(code);
+            if (expectedAncestors.isEmpty()) {
+                continue;
+            }
+            Location expected = expectedAncestors.get(expectedAncestors.size() - 1);
+            Location parent = location.getParentLocation();
+            if (parent != null && expected.getLocationId().equalsIgnoreCase(parent.getLocationId())) {
+                continue;
+            }
+            Location cachedParent = parent != null ? snapshot.getByUuid(parent.getLocationId()) : null;
+            mismatches.add(new CodeParentMismatch(view(location), parent != null ? parent.getLocationId() : null,
+                    cachedParent != null ? LocationCache.codeOf(cachedParent) : null,
+                    expected.getLocationId(), LocationCache.codeOf(expected)));
+        }
+        return mismatches;
+    }
+
+    /**
+     * Lazily iterates the cached locations that have a code, each with its ancestor path. With
+     * {@code codePrefix}, only the locations whose code starts with it and the facilities under them are
+     * visited. Locations are not hydrated, so names loaded by the background pass may still be null.
+     * Iterates the snapshot current when called, so writes and reloads while streaming do not show.
+     */
+    public Iterator<LocationExportRow> exportLocations(String codePrefix) {
+        LocationCache.Snapshot snapshot = cache.snapshot();
+        Iterator<Location> locations = codePrefix != null && !codePrefix.isBlank()
+                ? snapshot.subtree(codePrefix).iterator() : snapshot.iterator();
+        return new Iterator<>() {
+            private LocationExportRow next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && locations.hasNext()) {
+                    next = exportRow(snapshot, locations.next());
+                }
+                return next != null;
+            }
+
+            @Override
+            public LocationExportRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                LocationExportRow row = next;
+                next = null;
+                return row;
+            }
+        };
+    }
+
+    private static LocationExportRow exportRow(LocationCache.Snapshot snapshot, Location location) {
+        String code = LocationCache.codeOf(location);
+        if (code == null) {
+            return null;
+        }
+        LinkedList<LocationExportRow.PathEntry> path = new LinkedList<>();
+        Set<String> seen = new HashSet<>();
+        seen.add(location.getLocationId());
+        Location parent = location.getParentLocation();
+        while (parent != null && seen.add(parent.getLocationId())) {
+            Location cached = snapshot.getByUuid(parent.getLocationId());
+            Location ancestor = cached != null ? cached : parent;
+            path.addFirst(new LocationExportRow.PathEntry(ancestor.getLocationId(), LocationCache.codeOf(ancestor),
+                    ancestor.getName(), LocationCache.levelOf(ancestor)));
+            parent = ancestor.getParentLocation();
+        }
+        return new LocationExportRow(location.getLocationId(), code, location.getName(),
+                LocationCache.levelOf(location), location.getRetired(), path);
+    }
+
+    /**
+     * The read API's view of a cached location, as the snapshot holds it: a location the background pass
+     * has not reached yet has no name or level. Reads never call OpenMRS.
+     */
+    private LocationView view(Location location) {
+        Location parent = location.getParentLocation();
+        return new LocationView(location.getLocationId(), LocationCache.codeOf(location), location.getName(),
+                LocationCache.levelOf(location), parent != null ? parent.getLocationId() : null, location.getRetired());
+    }
+
+    LocationCache cache() {
+        return cache;
+    }
+
+    static String partitionKey(String regionCode) {
+        return regionCode != null ? regionCode.trim().toUpperCase() : "";
+    }
+
+    /**
+     * Runs the worker once per partition. Partitions run concurrently on the refresh pool when one is
+     * configured; rows within a partition keep their page order.
+     */
+    private <T> void runPartitioned(Map<String, List<T>> partitions, BiConsumer<String, List<T>> worker) {
+        if (refreshPool == null || partitions.size() <= 1) {
+            partitions.forEach(worker);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(partitions.size());
+        for (Map.Entry<String, List<T>> partition : partitions.entrySet()) {
+            tasks.add(refreshPool.submit(() -> worker.accept(partition.getKey(), partition.getValue())));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
     }
 }
@@ -0,0 +1,101 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.RefreshCheckpoint;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Persists refresh checkpoints to a local file so an interrupted refresh can resume where it stopped.
+ * Each save is written to a temporary file, forced to disk and atomically moved over the previous one.
+ */
+public class RefreshCheckpointStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshCheckpointStore.class);
+
+    private final Path file;
+    private final Duration maxAge;
+
+    public RefreshCheckpointStore(Config config) {
+        this(Paths.get(config.getString("hfr.checkpoint.file")), config.getDuration("hfr.checkpoint.max-age"));
+    }
+
+    public RefreshCheckpointStore(Path file, Duration maxAge) {
+        this.file = file;
+        this.maxAge = maxAge;
+    }
+
+    public synchronized void save(String runId, String endpoint, int lastPage) {
+        Properties properties = new Properties();
+        properties.setProperty("runId", runId);
+        properties.setProperty("endpoint", endpoint);
+        properties.setProperty("lastPage", Integer.toString(lastPage));
+        properties.setProperty("updatedAt", Long.toString(System.currentTimeMillis()));
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            StringWriter writer = new StringWriter();
+            properties.store(writer, "HFR refresh checkpoint");
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap(writer.toString().getBytes(StandardCharsets.ISO_8859_1)));
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Failed to write refresh checkpoint {} page {} to {}", endpoint, lastPage, file, e);
+        }
+    }
+
+    /**
+     * Returns the stored checkpoint, or null if there is none or it is older than the configured max age.
+     */
+    public synchronized RefreshCheckpoint loadFresh() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            RefreshCheckpoint checkpoint = new RefreshCheckpoint(
+                    properties.getProperty("runId"),
+                    properties.getProperty("endpoint"),
+                    Integer.parseInt(properties.getProperty("lastPage")),
+                    Long.parseLong(properties.getProperty("updatedAt")));
+            long age = System.currentTimeMillis() - checkpoint.getUpdatedAt();
+            if (age > maxAge.toMillis()) {
+                LOGGER.warn("Ignoring stale refresh checkpoint {} ({} minutes old)", checkpoint, age / 60000);
+                clear();
+                return null;
+            }
+            return checkpoint;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unreadable refresh checkpoint {}, ignoring it", file, e);
+            return null;
+        }
+    }
+
+    public synchronized void clear() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.error("Failed to delete refresh checkpoint {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.RefreshRun;
+import com.moh.go.tz.util.CustomJacksonObjectMapper;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Appends every refresh run as a JSON line to a local file and keeps the most recent runs in memory.
+ */
+public class RefreshRunHistory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshRunHistory.class);
+
+    private final Path file;
+    private final int keep;
+    private final Deque<RefreshRun> recent = new ArrayDeque<>();
+
+    public RefreshRunHistory(Config config) {
+        this.file = Paths.get(config.getString("hfr.refresh.history.file"));
+        this.keep = config.getInt("hfr.refresh.history.keep");
+        load();
+    }
+
+    public synchronized void record(RefreshRun run) {
+        recent.addLast(run);
+        while (recent.size() > keep) {
+            recent.removeFirst();
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            String line = CustomJacksonObjectMapper.mapper.writeValueAsString(run) + "\n";
+            Files.write(file, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOGGER.error("Failed to append refresh run {} to {}", run.getRunId(), file, e);
+        }
+    }
+
+    /**
+     * Most recent runs, newest first.
+     */
+    public synchronized List<RefreshRun> recent() {
+        List<RefreshRun> runs = new ArrayList<>(recent);
+        Collections.reverse(runs);
+        return runs;
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                recent.addLast(CustomJacksonObjectMapper.mapper.readValue(line, RefreshRun.class));
+                if (recent.size() > keep) {
+                    recent.removeFirst();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read refresh history {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.moh.go.tz.service;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.moh.go.tz.domain.RefreshRun;
+import com.moh.go.tz.domain.SyncResponse;
+import com.moh.go.tz.util.CborSerializable;
+import com.moh.go.tz.util.CronSchedule;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Triggers HFR refreshes on a cron schedule. Runs as a cluster singleton in cluster mode, where it also
+ * accepts manual refresh requests so at most one refresh runs across the cluster. A tick that arrives
+ * while a refresh is still running is skipped.
+ */
+public class RefreshScheduler extends AbstractBehavior<RefreshScheduler.Command> {
+
+    public interface Command extends CborSerializable {
+    }
+
+    public static final class TriggerRefresh implements Command {
+        public final boolean resume;
+        public final ActorRef<SyncResponse> replyTo;
+
+        @JsonCreator
+        public TriggerRefresh(@JsonProperty("resume") boolean resume,
+                              @JsonProperty("replyTo") ActorRef<SyncResponse> replyTo) {
+            this.resume = resume;
+            this.replyTo = replyTo;
+        }
+    }
+
+    private enum Tick implements Command {
+        INSTANCE
+    }
+
+    private static final class RunFinished implements Command {
+        private final RefreshRun run;
+        private final Throwable error;
+
+        private RunFinished(RefreshRun run, Throwable error) {
+            this.run = run;
+            this.error = error;
+        }
+    }
+
+    private final LocationSyncService locationSyncService;
+    private final TimerScheduler<Command> timers;
+    private final Executor executor;
+    private final CronSchedule schedule;
+    private final ZoneId zone;
+    private final boolean resumeScheduledRuns;
+    private boolean running;
+
+    public static Behavior<Command> create(LocationSyncService locationSyncService, Config config) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new RefreshScheduler(context, timers, locationSyncService, config.getConfig("integration-service.scheduler"))));
+    }
+
+    private RefreshScheduler(ActorContext<Command> context, TimerScheduler<Command> timers,
+                             LocationSyncService locationSyncService, Config schedulerConfig) {
+        super(context);
+        this.locationSyncService = locationSyncService;
+        this.timers = timers;
+        this.executor = context.getSystem().dispatchers().lookup(DispatcherSelector.blocking());
+        this.schedule = schedulerConfig.getBoolean("enabled") ? CronSchedule.parse(schedulerConfig.getString("cron")) : null;
+        this.zone = ZoneId.of(schedulerConfig.getString("zone"));
+        this.resumeScheduledRuns = schedulerConfig.getBoolean("resume");
+        scheduleNextTick();
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessageEquals(Tick.INSTANCE, this::onTick)
+                .onMessage(TriggerRefresh.class, this::onTrigger)
+                .onMessage(RunFinished.class, this::onRunFinished)
+                .build();
+    }
+
+    private Behavior<Command> onTick() {
+        if (isBusy()) {
+            getContext().getLog().warn("Skipping scheduled HFR refresh, the previous run is still in progress");
+            locationSyncService.getMetrics().refreshSkipped();
+        } else {
+            startRun(resumeScheduledRuns, "scheduled");
+        }
+        scheduleNextTick();
+        return this;
+    }
+
+    private Behavior<Command> onTrigger(TriggerRefresh command) {
+        if (isBusy()) {
+            command.replyTo.tell(new SyncResponse(LocationSyncService.REFRESH_BUSY, LocationSyncService.REFRESH_BUSY_MESSAGE));
+        } else {
+            startRun(command.resume, "manual");
+            command.replyTo.tell(new SyncResponse("accepted", "HFR refresh started"));
+        }
+        return this;
+    }
+
+    private Behavior<Command> onRunFinished(RunFinished finished) {
+        running = false;
+        if (finished.error != null) {
+            getContext().getLog().error("HFR refresh failed", finished.error);
+        } else if (LocationSyncService.REFRESH_BUSY.equals(finished.run.getStatus())) {
+            getContext().getLog().warn("Skipped HFR refresh, another run is still in progress");
+            locationSyncService.getMetrics().refreshSkipped();
+        } else {
+            getContext().getLog().info("HFR refresh {} finished with {} after {} ms",
+                    finished.run.getRunId(), finished.run.getStatus(), finished.run.getDurationMillis());
+        }
+        return this;
+    }
+
+    private boolean isBusy() {
+        return running || locationSyncService.isRefreshInProgress();
+    }
+
+    private void startRun(boolean resume, String trigger) {
+        running = true;
+        getContext().pipeToSelf(
+                CompletableFuture.supplyAsync(() -> locationSyncService.refresh(resume, trigger), executor),
+                RunFinished::new);
+    }
+
+    private void scheduleNextTick() {
+        if (schedule == null) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        ZonedDateTime next = schedule.next(now);
+        getContext().getLog().info("Next scheduled HFR refresh at {}", next);
+        timers.startSingleTimer(Tick.INSTANCE, Duration.between(now, next));
+    }
+}
@@ -0,0 +1,18 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.domain.SyncResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Sends region-scoped sync work to whichever node owns the region.
+ */
+public interface RegionRouter {
+
+    CompletionStage<SyncResponse> syncFacility(HfrFacilityPayload payload);
+
+    CompletionStage<SyncResponse> applyAdminRows(String regionCode, Map<String, String> zoneUuids, List<String> rows);
+}
@@ -0,0 +1,61 @@
+package com.moh.go.tz.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.moh.go.tz.domain.SyncTimings;
+import com.moh.go.tz.util.CustomJacksonObjectMapper;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Facility syncs slower than {@code hfr.slow-sync.threshold}, written as JSON lines to the {@code slow-sync}
+ * logger (routed to its own file in logback.xml) and kept in a bounded in-memory ring buffer.
+ */
+public class SlowSyncLog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowSyncLog.class);
+    private static final Logger SLOW_SYNC = LoggerFactory.getLogger("slow-sync");
+
+    private final double thresholdMillis;
+    private final int keep;
+    private final Deque<SyncTimings> recent = new ArrayDeque<>();
+
+    public SlowSyncLog(Config config) {
+        this.thresholdMillis = config.getDuration("hfr.slow-sync.threshold").toMillis();
+        this.keep = config.getInt("hfr.slow-sync.keep");
+    }
+
+    public void record(SyncTimings timings) {
+        if (timings == null || timings.getTotalMillis() < thresholdMillis) {
+            return;
+        }
+        synchronized (recent) {
+            recent.addLast(timings);
+            while (recent.size() > keep) {
+                recent.removeFirst();
+            }
+        }
+        try {
+            SLOW_SYNC.warn(CustomJacksonObjectMapper.mapper.writeValueAsString(timings));
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Could not write slow sync of {}: {}", timings.getFacilityCode(), e.getMessage());
+        }
+    }
+
+    /**
+     * Most recent slow syncs, newest first.
+     */
+    public List<SyncTimings> recent() {
+        List<SyncTimings> syncs;
+        synchronized (recent) {
+            syncs = new ArrayList<>(recent);
+        }
+        Collections.reverse(syncs);
+        return syncs;
+    }
+}
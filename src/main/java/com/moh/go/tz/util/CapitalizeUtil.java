@@ -1,30 +1,119 @@
 package com.moh.go.tz.util;
 
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Utility to normalize casing while keeping short tokens uppercase.
  */
 public class CapitalizeUtil {
+    private static final int NAME_CACHE_LIMIT = 16384;
+    private static final Map<String, String> NAME_CACHE = new ConcurrentHashMap<>();
 
+    /**
+     * Splits on whitespace, drops double quotes, uppercases tokens of up to two characters and
+     * capitalizes the rest. Runs in a single pass without regex; ASCII words are cased in place.
+     */
     public static String capitalizeWords(String input) {
         if (input == null || input.isEmpty()) {
             return input;
         }
 
-        String sanitizedInput = input.replace("\"", "");
-        String[] words = sanitizedInput.split("\\s+");
-        StringBuilder formatted = new StringBuilder();
-
-        for (String word : words) {
-            if (!word.isEmpty()) {
-                if (word.length() <= 2) {
-                    formatted.append(word.toUpperCase()).append(" ");
-                } else {
-                    String capWord = word.substring(0, 1).toUpperCase() + word.substring(1).toLowerCase();
-                    formatted.append(capWord).append(" ");
+        boolean asciiCasingSafe = isAsciiCasingSafe(Locale.getDefault());
+        int length = input.length();
+        StringBuilder formatted = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            if (isWhitespace(input.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int wordLength = 0;
+            boolean ascii = true;
+            for (; i < length; i++) {
+                char c = input.charAt(i);
+                if (isWhitespace(c)) {
+                    break;
                 }
+                if (c != '"') {
+                    wordLength++;
+                    ascii &= c < 0x80;
+                }
+            }
+            if (wordLength == 0) {
+                continue;
+            }
+            if (formatted.length() > 0) {
+                formatted.append(' ');
+            }
+            if (ascii && asciiCasingSafe) {
+                appendAsciiWord(formatted, input, start, i, wordLength <= 2);
+            } else {
+                appendWord(formatted, input.substring(start, i).replace("\"", ""));
             }
         }
 
         return formatted.toString().trim();
     }
+
+    /**
+     * Memoized {@link #capitalizeWords(String)} for names that repeat across payloads, such as regions,
+     * districts, councils and wards. The cache stops growing once it reaches its bound.
+     */
+    public static String capitalizeCached(String input) {
+        if (input == null || input.isEmpty()) {
+            return input;
+        }
+        String cached = NAME_CACHE.get(input);
+        if (cached != null) {
+            return cached;
+        }
+        String formatted = capitalizeWords(input);
+        if (NAME_CACHE.size() < NAME_CACHE_LIMIT) {
+            NAME_CACHE.put(input, formatted);
+        }
+        return formatted;
+    }
+
+    private static void appendAsciiWord(StringBuilder out, String input, int start, int end, boolean allUpper) {
+        boolean first = true;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '"') {
+                continue;
+            }
+            if (allUpper || first) {
+                out.append(c >= 'a' && c <= 'z' ? (char) (c - 32) : c);
+            } else {
+                out.append(c >= 'A' && c <= 'Z' ? (char) (c + 32) : c);
+            }
+            first = false;
+        }
+    }
+
+    private static void appendWord(StringBuilder out, String word) {
+        if (word.length() <= 2) {
+            out.append(word.toUpperCase());
+        } else {
+            out.append(word.substring(0, 1).toUpperCase()).append(word.substring(1).toLowerCase());
+        }
+    }
+
+    /**
+     * Matches the regex {@code \s} class: space, tab, newline, vertical tab, form feed and carriage return.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /**
+     * Turkish, Azerbaijani and Lithuanian case mappings differ from ASCII, so those locales take the
+     * String-based path to keep the output identical to {@link String#toUpperCase()}.
+     */
+    private static boolean isAsciiCasingSafe(Locale locale) {
+        String language = locale.getLanguage();
+        return !"tr".equals(language) && !"az".equals(language) && !"lt".equals(language);
+    }
 }
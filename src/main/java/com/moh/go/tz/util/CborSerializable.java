@@ -0,0 +1,7 @@
+package com.moh.go.tz.util;
+
+/**
+ * Marker for messages sent between cluster nodes; bound to Akka's Jackson CBOR serializer in application.conf.
+ */
+public interface CborSerializable {
+}
@@ -0,0 +1,176 @@
+package com.moh.go.tz.util;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Response body of an {@link HttpURLConnection} that asked for gzip or deflate, decoded while it is read
+ * so large responses are never held compressed and decompressed at the same time. On close the wire
+ * and decoded byte counts and the time spent inflating are reported to {@link SyncMetrics}.
+ */
+public class CompressedBody extends FilterInputStream {
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final int BUFFER_SIZE = 16384;
+
+    private final CountingStream wire;
+    private final Inflater inflater;
+    private final String encoding;
+    private final String target;
+    private final SyncMetrics metrics;
+    private long decodedBytes;
+    private long readNanos;
+    private boolean closed;
+
+    private CompressedBody(InputStream decoded, CountingStream wire, Inflater inflater, String encoding,
+                           String target, SyncMetrics metrics) {
+        super(decoded);
+        this.wire = wire;
+        this.inflater = inflater;
+        this.encoding = encoding;
+        this.target = target;
+        this.metrics = metrics;
+    }
+
+    public static void requestCompression(HttpURLConnection connection) {
+        connection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    /**
+     * Opens the response body, decoding it according to its {@code Content-Encoding}.
+     */
+    public static CompressedBody open(HttpURLConnection connection, String target, SyncMetrics metrics) throws IOException {
+        CountingStream wire = new CountingStream(connection.getInputStream());
+        String encoding = connection.getContentEncoding() != null
+                ? connection.getContentEncoding().trim().toLowerCase() : "identity";
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new CompressedBody(new GZIPInputStream(wire, BUFFER_SIZE), wire, null, "gzip", target, metrics);
+            case "deflate": {
+                // Some servers send raw deflate data instead of the zlib stream the spec asks for
+                PushbackInputStream pushback = new PushbackInputStream(wire, 2);
+                byte[] head = pushback.readNBytes(2);
+                pushback.unread(head);
+                boolean zlib = head.length == 2 && (head[0] & 0x0f) == 8
+                        && (((head[0] & 0xff) << 8) | (head[1] & 0xff)) % 31 == 0;
+                Inflater inflater = new Inflater(!zlib);
+                return new CompressedBody(new InflaterInputStream(pushback, inflater, BUFFER_SIZE),
+                        wire, inflater, "deflate", target, metrics);
+            }
+            default:
+                return new CompressedBody(wire, wire, null, "identity", target, metrics);
+        }
+    }
+
+    /**
+     * Parses the body as a JSON object straight from the stream and closes it.
+     */
+    public JSONObject readJsonObject() throws IOException {
+        try (InputStreamReader reader = new InputStreamReader(this, StandardCharsets.UTF_8)) {
+            return new JSONObject(new JSONTokener(reader));
+        }
+    }
+
+    /**
+     * Reads the whole decoded body as UTF-8 text and closes it.
+     */
+    public String readString() throws IOException {
+        try {
+            return new String(readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            close();
+        }
+    }
+
+    public long getWireBytes() {
+        return wire.bytes;
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long started = System.nanoTime();
+        int b = super.read();
+        readNanos += System.nanoTime() - started;
+        if (b >= 0) {
+            decodedBytes++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long started = System.nanoTime();
+        int n = super.read(buffer, offset, length);
+        readNanos += System.nanoTime() - started;
+        if (n > 0) {
+            decodedBytes += n;
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+            long decompressNanos = "identity".equals(encoding) ? 0 : Math.max(0, readNanos - wire.nanos);
+            metrics.recordTransfer(target, encoding, wire.bytes, decodedBytes, decompressNanos);
+        }
+    }
+
+    /**
+     * Counts bytes read off the wire and the time spent waiting for them.
+     */
+    private static final class CountingStream extends FilterInputStream {
+        private long bytes;
+        private long nanos;
+
+        private CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long started = System.nanoTime();
+            int b = super.read();
+            nanos += System.nanoTime() - started;
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long started = System.nanoTime();
+            int n = super.read(buffer, offset, length);
+            nanos += System.nanoTime() - started;
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+    }
+}
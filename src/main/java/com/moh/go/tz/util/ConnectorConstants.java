@@ -5,6 +5,7 @@ public class ConnectorConstants {
     public static final String DISPLAY = "display";
     public static final String NAME = "name";
     public static final String VOIDED = "voided";
+    public static final String RETIRED = "retired";
     public static final String RESULTS = "results";
     public static final String PARENT_LOCATION = "parentLocation";
     public static final String TAGS = "tags";
@@ -0,0 +1,126 @@
+package com.moh.go.tz.util;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * Minimal five-field cron expression ({@code minute hour day-of-month month day-of-week}) supporting
+ * {@code *}, lists, ranges and steps, plus the {@code @hourly}, {@code @daily} and {@code @weekly} shortcuts.
+ * As in cron, when both day fields are restricted a day matches if either of them does.
+ */
+public class CronSchedule {
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean dayOfMonthRestricted;
+    private final boolean dayOfWeekRestricted;
+
+    private CronSchedule(String expression, String[] fields) {
+        this.expression = expression;
+        this.minutes = parseField(fields[0], 0, 59);
+        this.hours = parseField(fields[1], 0, 23);
+        this.daysOfMonth = parseField(fields[2], 1, 31);
+        this.months = parseField(fields[3], 1, 12);
+        BitSet dow = parseField(fields[4], 0, 7);
+        if (dow.get(7)) {
+            dow.set(0);
+        }
+        this.daysOfWeek = dow;
+        this.dayOfMonthRestricted = !fields[2].equals("*");
+        this.dayOfWeekRestricted = !fields[4].equals("*");
+    }
+
+    public static CronSchedule parse(String expression) {
+        String trimmed = expression.trim();
+        switch (trimmed) {
+            case "@hourly":
+                trimmed = "0 * * * *";
+                break;
+            case "@daily":
+                trimmed = "0 0 * * *";
+                break;
+            case "@weekly":
+                trimmed = "0 0 * * 0";
+                break;
+            default:
+                break;
+        }
+        String[] fields = trimmed.split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression needs 5 fields: " + expression);
+        }
+        return new CronSchedule(expression, fields);
+    }
+
+    /**
+     * Returns the first matching minute strictly after {@code after}.
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = time.plusYears(5);
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!dayMatches(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+        throw new IllegalStateException("Cron expression never fires: " + expression);
+    }
+
+    private boolean dayMatches(ZonedDateTime time) {
+        boolean domMatch = daysOfMonth.get(time.getDayOfMonth());
+        boolean dowMatch = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return domMatch || dowMatch;
+        }
+        return domMatch && dowMatch;
+    }
+
+    private static BitSet parseField(String field, int min, int max) {
+        BitSet bits = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else if (part.contains("-")) {
+                int dash = part.indexOf('-');
+                from = Integer.parseInt(part.substring(0, dash));
+                to = Integer.parseInt(part.substring(dash + 1));
+            } else {
+                from = Integer.parseInt(part);
+                to = slash >= 0 ? max : from;
+            }
+            if (from < min || to > max || from > to || step < 1) {
+                throw new IllegalArgumentException("Invalid cron field '" + field + "'");
+            }
+            for (int value = from; value <= to; value += step) {
+                bits.set(value);
+            }
+        }
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
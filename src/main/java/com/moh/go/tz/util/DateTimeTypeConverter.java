@@ -1,20 +0,0 @@
-package com.moh.go.tz.util;
-
-import com.google.gson.*;
-import org.joda.time.DateTime;
-
-import java.lang.reflect.Type;
-
-public class DateTimeTypeConverter implements JsonSerializer<DateTime>,
-    JsonDeserializer<DateTime> {
-
-    public DateTime deserialize(JsonElement json, Type typeOfT,
-                                JsonDeserializationContext context) throws JsonParseException {
-        return new DateTime(json.getAsString());
-    }
-
-    public JsonElement serialize(DateTime src, Type typeOfSrc,
-                                 JsonSerializationContext context) {
-        return new JsonPrimitive(src.toString());
-    }
-}
@@ -1,6 +1,5 @@
 package com.moh.go.tz.util;
 
-import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -8,13 +7,35 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.moh.go.tz.domain.Location;
 
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 import static com.moh.go.tz.util.ConnectorConstants.*;
 
 public class FetchLocationsHelper {
     private static final Logger LOGGER = LoggerFactory.getLogger(FetchLocationsHelper.class);
+    private static final int PAGE_SIZE = 10000;
+
+    /**
+     * Everything the sync needs about a location; attribute codes are read from their display text.
+     */
+    public static final String VIEW_FULL =
+            "custom:(uuid,display,name,retired,attributes,tags:(uuid,display),parentLocation:(uuid,display))";
+    /**
+     * Just enough to build the code and uuid indexes: attribute values keyed by attribute type uuid.
+     */
+    public static final String VIEW_INDEX =
+            "custom:(uuid,retired,parentLocation:(uuid),attributes:(value,voided,attributeType:(uuid)))";
+    /**
+     * The fields {@link #VIEW_INDEX} leaves out.
+     */
+    public static final String VIEW_DETAILS = "custom:(uuid,name,tags:(display))";
+
     private final OpenmrsClient client;
 
     public FetchLocationsHelper(OpenmrsClient client) {
@@ -23,29 +44,113 @@ public class FetchLocationsHelper {
 
     public List<Location> getAllOpenMRSlocations() {
         List<Location> allLocationsList = new ArrayList<>();
-        return getAllLocations(allLocationsList, 0);
+        forEachLocationPage(VIEW_FULL, results -> {
+            for (int i = 0; i < results.length(); i++) {
+                allLocationsList.add(makeLocation(results.getJSONObject(i)));
+            }
+            return true;
+        });
+        return allLocationsList;
     }
 
-    protected String fetchLocationResponse(int startIndex) throws Exception {
-        String url = "ws/rest/v1/location"
-                + "?v=custom:(uuid,display,name,attributes,tags:(uuid,display),parentLocation:(uuid,display))"
-                + "&limit=10000&startIndex=" + startIndex;
-        return client.get(url);
+    /**
+     * Fetches one page of locations, parsed while it downloads (compressed when OpenMRS supports it).
+     * Retired locations are included so the cache knows their state.
+     */
+    protected JSONObject fetchLocationResponse(String view, String tag, int startIndex) throws Exception {
+        String url = "ws/rest/v1/location?v=" + view + "&includeAll=true&limit=" + PAGE_SIZE
+                + "&startIndex=" + startIndex;
+        if (tag != null) {
+            url += "&tag=" + URLEncoder.encode(tag, StandardCharsets.UTF_8);
+        }
+        return client.getJson(url);
     }
 
-    protected List<Location> parseLocationsFromResponse(String response, List<Location> locationList) throws JSONException {
-        JSONObject jsonObject = new JSONObject(response);
-        if (StringUtils.isNotBlank(response) && jsonObject.has(RESULTS)) {
-            JSONArray results = jsonObject.getJSONArray(RESULTS);
-            for (int i = 0; i < results.length(); i++) {
-                locationList.add(makeLocation(results.getJSONObject(i)));
+    public void forEachLocationPage(String view, Predicate<JSONArray> pageConsumer) {
+        forEachLocationPage(view, null, pageConsumer);
+    }
+
+    /**
+     * Pages through all locations in the given representation, only those with {@code tag} when it is
+     * not null, retrying a failed page until it loads. Stops early when the consumer returns false.
+     */
+    public void forEachLocationPage(String view, String tag, Predicate<JSONArray> pageConsumer) {
+        int startIndex = 0;
+        while (true) {
+            try {
+                LOGGER.info("Fetching locations from OpenMRS starting at index {}", startIndex);
+                JSONObject response = fetchLocationResponse(view, tag, startIndex);
+                if (response == null) {
+                    // An error status, not the end of the data; stopping here would publish a partial load
+                    throw new IOException("OpenMRS did not return the location page at index " + startIndex);
+                }
+                JSONArray results = response.has(RESULTS) ? response.getJSONArray(RESULTS) : new JSONArray();
+                if (!pageConsumer.test(results) || !hasNextPage(response)) {
+                    return;
+                }
+                startIndex += PAGE_SIZE;
+            } catch (Exception e) {
+                LOGGER.error("Exception occurred while fetching OpenMRS locations, retrying. {}", e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(ex);
+                }
             }
         }
-        return locationList;
     }
 
-    protected boolean hasNextPage(String response) throws JSONException {
-        JSONObject jsonObject = new JSONObject(response);
+    /**
+     * Builds a location from a {@link #VIEW_INDEX} (or richer) row, keeping only the code attributes named
+     * in {@code codeAttributeNames} (attribute type uuid to the attribute name used in the cache). Names
+     * and tags are left for {@link #fetchLocationDetails} or a {@link #VIEW_DETAILS} pass to fill in.
+     */
+    public Location makeIndexLocation(JSONObject json, Map<String, String> codeAttributeNames) throws JSONException {
+        JSONObject parentJson = json.optJSONObject(PARENT_LOCATION);
+        Location parent = parentJson != null ? new Location(parentJson.getString(UUID), null, null) : null;
+        Location location = new Location(json.getString(UUID), null, parent);
+        readRetired(location, json);
+        JSONArray attributes = json.optJSONArray(ATTRIBUTES);
+        if (attributes != null) {
+            for (int i = 0; i < attributes.length(); i++) {
+                JSONObject attribute = attributes.getJSONObject(i);
+                JSONObject type = attribute.optJSONObject("attributeType");
+                String name = type != null ? codeAttributeNames.get(type.optString(UUID)) : null;
+                if (name != null && !attribute.optBoolean(VOIDED)) {
+                    location.addAttribute(name, attribute.optString("value"));
+                }
+            }
+        }
+        return location;
+    }
+
+    /**
+     * Fetches the {@link #VIEW_DETAILS} fields of one location, or null if it could not be loaded.
+     */
+    public JSONObject fetchLocationDetails(String uuid) throws Exception {
+        return client.getJson("ws/rest/v1/location/" + uuid + "?v=" + VIEW_DETAILS);
+    }
+
+    /**
+     * Children of a location in {@link #VIEW_INDEX} form plus name and tags.
+     */
+    public JSONArray fetchChildLocations(String parentUuid) throws Exception {
+        JSONObject response = client.getJson("ws/rest/v1/location/" + parentUuid
+                + "?v=custom:(uuid,childLocations:(uuid,name,retired,tags:(display),parentLocation:(uuid),"
+                + "attributes:(value,voided,attributeType:(uuid))))");
+        return response != null && response.has("childLocations") ? response.getJSONArray("childLocations") : new JSONArray();
+    }
+
+    /**
+     * Runs a location search (a relative REST url) and returns its result rows.
+     */
+    public JSONArray searchLocations(String relativeUrl) throws Exception {
+        JSONObject response = client.getJson(relativeUrl);
+        return response != null && response.has(RESULTS) ? response.getJSONArray(RESULTS) : new JSONArray();
+    }
+
+    protected boolean hasNextPage(JSONObject jsonObject) throws JSONException {
         if (jsonObject.has("links")) {
             JSONArray links = jsonObject.getJSONArray("links");
             for (int i = 0; i < links.length(); i++) {
@@ -57,35 +162,12 @@ public class FetchLocationsHelper {
         return false;
     }
 
-    public List<Location> getAllLocations(List<Location> locationList, int startIndex) throws JSONException {
-        try {
-            LOGGER.info("Fetching locations from OpenMRS starting at index {}", startIndex);
-            String response = fetchLocationResponse(startIndex);
-            if (StringUtils.isNotBlank(response)) {
-                List<Location> updatedLocationList = parseLocationsFromResponse(response, locationList);
-                if (hasNextPage(response)) {
-                    return getAllLocations(updatedLocationList, startIndex + 10000);
-                }
-                return updatedLocationList;
-            }
-        } catch (Exception e) {
-            LOGGER.error("Exception occurred while fetching OpenMRS locations, retrying. {}", e.getMessage());
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(ex);
-            }
-            return getAllLocations(locationList, startIndex);
-        }
-        return locationList;
-    }
-
     public Location makeLocation(String locationJson) throws JSONException {
         JSONObject locationsJsonObject = new JSONObject(locationJson);
         Location parentLocation = getParent(locationsJsonObject);
         Location location = new Location(locationsJsonObject.getString(UUID),
                 locationsJsonObject.getString(NAME), parentLocation);
+        readRetired(location, locationsJsonObject);
         JSONArray tags = locationsJsonObject.getJSONArray(TAGS);
 
         for (int i = 0; i < tags.length(); i++) {
@@ -110,6 +192,12 @@ public class FetchLocationsHelper {
         return location;
     }
 
+    private static void readRetired(Location location, JSONObject json) {
+        if (json.has(RETIRED) && !json.isNull(RETIRED)) {
+            location.setRetired(json.getBoolean(RETIRED));
+        }
+    }
+
     public Location makeLocation(JSONObject location) throws JSONException {
         return makeLocation(location.toString());
     }
@@ -0,0 +1,75 @@
+package com.moh.go.tz.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.moh.go.tz.domain.LocationExportRow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes {@link LocationExportRow}s for {@code GET /locations/export}: one JSON object per line, or CSV with
+ * a code and name column per administrative level.
+ */
+public final class LocationExportFormat {
+    public static final String NDJSON = "ndjson";
+    public static final String CSV = "csv";
+
+    private static final List<String> CSV_LEVELS = List.of("Region", "District", "Council", "Ward");
+    private static final ObjectWriter ROW_WRITER = CustomJacksonObjectMapper.mapper.writerFor(LocationExportRow.class);
+
+    private LocationExportFormat() {
+    }
+
+    public static byte[] csvHeader() {
+        StringBuilder header = new StringBuilder("uuid,level,code,name,retired");
+        for (String level : CSV_LEVELS) {
+            String column = level.toLowerCase();
+            header.append(',').append(column).append("_code,").append(column).append("_name");
+        }
+        return header.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] ndjson(LocationExportRow row) {
+        try {
+            byte[] json = ROW_WRITER.writeValueAsBytes(row);
+            byte[] line = new byte[json.length + 1];
+            System.arraycopy(json, 0, line, 0, json.length);
+            line[json.length] = '\n';
+            return line;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode location " + row.getUuid(), e);
+        }
+    }
+
+    public static byte[] csv(LocationExportRow row) {
+        StringBuilder line = new StringBuilder(160);
+        field(line, row.getUuid()).append(',');
+        field(line, row.getLevel()).append(',');
+        field(line, row.getCode()).append(',');
+        field(line, row.getName()).append(',');
+        field(line, row.getRetired() != null ? row.getRetired().toString() : null);
+        for (String level : CSV_LEVELS) {
+            LocationExportRow.PathEntry ancestor = null;
+            for (LocationExportRow.PathEntry entry : row.getPath()) {
+                if (level.equals(entry.getLevel())) {
+                    ancestor = entry;
+                }
+            }
+            line.append(',');
+            field(line, ancestor != null ? ancestor.getCode() : null).append(',');
+            field(line, ancestor != null ? ancestor.getName() : null);
+        }
+        return line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder field(StringBuilder line, String value) {
+        if (value == null) {
+            return line;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return line.append(value);
+        }
+        return line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
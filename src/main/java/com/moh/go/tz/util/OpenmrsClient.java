@@ -1,29 +1,35 @@
 package com.moh.go.tz.util;
 
+import com.moh.go.tz.domain.LocationUpdateRequest;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
-import java.util.stream.Collectors;
 
 public class OpenmrsClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenmrsClient.class);
+    private static final String LOCATION_PATH = "/ws/rest/v1/location/";
 
     private final String baseUrl;
     private final String username;
     private final String password;
+    private final SyncMetrics metrics;
 
     public OpenmrsClient(String baseUrl, String username, String password) {
+        this(baseUrl, username, password, new SyncMetrics());
+    }
+
+    public OpenmrsClient(String baseUrl, String username, String password, SyncMetrics metrics) {
         this.baseUrl = stripEndingSlash(baseUrl);
         this.username = username;
         this.password = password;
+        this.metrics = metrics;
     }
 
     public HttpURLConnection createConnection(String url, String method) throws IOException {
@@ -42,22 +48,54 @@ public class OpenmrsClient {
     }
 
     public String getAbsolute(String url) throws IOException {
-        HttpURLConnection conn = null;
+        CompressedBody body = openGet(url);
+        return body != null ? body.readString() : null;
+    }
+
+    /**
+     * GETs a path relative to the base url and parses the JSON response while it downloads, or returns
+     * null if OpenMRS answered with an error status.
+     */
+    public JSONObject getJson(String relativePath) throws IOException {
+        String url = stripEndingSlash(baseUrl) + "/" + stripLeadingSlash(relativePath);
+        CompressedBody body = openGet(url);
+        return body != null ? body.readJsonObject() : null;
+    }
+
+    private CompressedBody openGet(String url) throws IOException {
+        long started = System.nanoTime();
+        SyncEvents.OpenmrsCall event = SyncEvents.OpenmrsCall.start();
+        int responseCode = -1;
+        HttpURLConnection conn = createConnection(url, "GET");
+        CompressedBody.requestCompression(conn);
         try {
-            conn = createConnection(url, "GET");
-            int responseCode = conn.getResponseCode();
+            responseCode = conn.getResponseCode();
             if (responseCode >= 200 && responseCode < 300) {
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                    return in.lines().collect(Collectors.joining());
-                }
+                return CompressedBody.open(conn, SyncMetrics.TARGET_OPENMRS, metrics);
             }
             LOGGER.error("GET {} failed with status {}", url, responseCode);
+            conn.disconnect();
             return null;
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
         } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
+            metrics.recordOutbound(SyncMetrics.TARGET_OPENMRS, SyncMetrics.OP_FETCH, responseCode, System.nanoTime() - started);
+            event.finish(SyncMetrics.OP_FETCH, locationUuidOf(url), responseCode, 1);
+        }
+    }
+
+    /**
+     * The location uuid of a single-location url, or null for searches and listings.
+     */
+    private static String locationUuidOf(String url) {
+        int start = url.indexOf(LOCATION_PATH);
+        if (start < 0) {
+            return null;
         }
+        start += LOCATION_PATH.length();
+        int end = url.indexOf('?', start);
+        return end != start ? url.substring(start, end < 0 ? url.length() : end) : null;
     }
 
     public static String stripEndingSlash(String value) {
@@ -77,9 +115,12 @@ public class OpenmrsClient {
         String reasonParam = reason != null ? URLEncoder.encode(reason, StandardCharsets.UTF_8) : "";
         String url = stripEndingSlash(baseUrl) + "/ws/rest/v1/location/" + uuid + "?reason=" + reasonParam;
         HttpURLConnection conn = null;
+        long started = System.nanoTime();
+        SyncEvents.OpenmrsCall event = SyncEvents.OpenmrsCall.start();
+        int code = -1;
         try {
             conn = createConnection(url, "DELETE");
-            int code = conn.getResponseCode();
+            code = conn.getResponseCode();
             if (code >= 200 && code < 300) {
                 LOGGER.info("Retired location {} with reason {}", uuid, reason);
                 return true;
@@ -88,6 +129,8 @@ public class OpenmrsClient {
         } catch (Exception e) {
             LOGGER.error("Error retiring location {}", uuid, e);
         } finally {
+            metrics.recordOutbound(SyncMetrics.TARGET_OPENMRS, SyncMetrics.OP_RETIRE, code, System.nanoTime() - started);
+            event.finish(SyncMetrics.OP_RETIRE, uuid, code, 1);
             if (conn != null) conn.disconnect();
         }
         return false;
@@ -99,12 +142,13 @@ public class OpenmrsClient {
     public boolean unretireLocation(String uuid) {
         String url = stripEndingSlash(baseUrl) + "/ws/rest/v1/location/" + uuid;
         HttpURLConnection conn = null;
+        long started = System.nanoTime();
+        SyncEvents.OpenmrsCall event = SyncEvents.OpenmrsCall.start();
+        int code = -1;
         try {
             conn = createConnection(url, "POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            String payload = "{\"retired\":false}";
-            conn.getOutputStream().write(payload.getBytes(StandardCharsets.UTF_8));
-            int code = conn.getResponseCode();
+            OpenmrsCodec.write(conn, LocationUpdateRequest.unretire());
+            code = conn.getResponseCode();
             if (code >= 200 && code < 300) {
                 LOGGER.info("Unretired location {}", uuid);
                 return true;
@@ -113,6 +157,8 @@ public class OpenmrsClient {
         } catch (Exception e) {
             LOGGER.error("Error unretiring location {}", uuid, e);
         } finally {
+            metrics.recordOutbound(SyncMetrics.TARGET_OPENMRS, SyncMetrics.OP_UNRETIRE, code, System.nanoTime() - started);
+            event.finish(SyncMetrics.OP_UNRETIRE, uuid, code, 1);
             if (conn != null) conn.disconnect();
         }
         return false;
@@ -0,0 +1,50 @@
+package com.moh.go.tz.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.moh.go.tz.domain.LocationCreateRequest;
+import com.moh.go.tz.domain.LocationResponse;
+import com.moh.go.tz.domain.LocationUpdateRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * JSON encoding of OpenMRS location requests and responses. Readers and writers are built once from
+ * {@link CustomJacksonObjectMapper#mapper} and stream straight to and from the connection, without an
+ * intermediate tree or string.
+ */
+public final class OpenmrsCodec {
+    private static final ObjectWriter CREATE_WRITER = CustomJacksonObjectMapper.mapper
+            .writerFor(LocationCreateRequest.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final ObjectWriter UPDATE_WRITER = CustomJacksonObjectMapper.mapper
+            .writerFor(LocationUpdateRequest.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final ObjectReader LOCATION_READER = CustomJacksonObjectMapper.mapper
+            .readerFor(LocationResponse.class);
+
+    private OpenmrsCodec() {
+    }
+
+    public static void write(HttpURLConnection connection, LocationCreateRequest request) throws IOException {
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            CREATE_WRITER.writeValue(out, request);
+        }
+    }
+
+    public static void write(HttpURLConnection connection, LocationUpdateRequest request) throws IOException {
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            UPDATE_WRITER.writeValue(out, request);
+        }
+    }
+
+    public static LocationResponse readLocation(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            return LOCATION_READER.readValue(body);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.moh.go.tz.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable map with String keys, split into a fixed number of hash shards so that a changed copy only
+ * copies the shards it touches and shares the rest with the original. A write to a map of n entries costs
+ * about n/256 entry copies, which keeps publishing a new version after every write cheap while readers of
+ * older versions are never disturbed. Changes are made through a {@link Builder}; keys are used as given.
+ */
+public final class SnapshotMap<V> implements Iterable<V> {
+    private static final int SHARDS = 256;
+    private static final SnapshotMap<?> EMPTY = new SnapshotMap<>(emptyShards(), 0);
+
+    private final Map<String, V>[] shards;
+    private final int size;
+
+    private SnapshotMap(Map<String, V>[] shards, int size) {
+        this.shards = shards;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> SnapshotMap<V> empty() {
+        return (SnapshotMap<V>) EMPTY;
+    }
+
+    public V get(String key) {
+        return shards[shard(key)].get(key);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Builder<V> toBuilder() {
+        return new Builder<>(this);
+    }
+
+    /**
+     * Values in no particular order.
+     */
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<>() {
+            private int shard;
+            private Iterator<V> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && shard < SHARDS) {
+                    current = shards[shard++].values().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    private static int shard(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (SHARDS - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V>[] emptyShards() {
+        Map<String, V>[] shards = (Map<String, V>[]) new Map<?, ?>[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = Collections.emptyMap();
+        }
+        return shards;
+    }
+
+    /**
+     * Changes to a map, copying each shard the first time it is written. {@link #build} may be called
+     * more than once; later writes never affect a map already built.
+     */
+    public static final class Builder<V> {
+        private Map<String, V>[] shards;
+        private boolean[] owned = new boolean[SHARDS];
+        private int size;
+
+        private Builder(SnapshotMap<V> base) {
+            this.shards = base.shards.clone();
+            this.size = base.size;
+        }
+
+        public V get(String key) {
+            return shards[shard(key)].get(key);
+        }
+
+        public V put(String key, V value) {
+            V previous = writable(shard(key)).put(key, value);
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        }
+
+        public V remove(String key) {
+            int shard = shard(key);
+            if (!shards[shard].containsKey(key)) {
+                return null;
+            }
+            V previous = writable(shard).remove(key);
+            size--;
+            return previous;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void forEach(BiConsumer<String, V> action) {
+            for (Map<String, V> shard : shards) {
+                shard.forEach(action);
+            }
+        }
+
+        public SnapshotMap<V> build() {
+            SnapshotMap<V> map = new SnapshotMap<>(shards.clone(), size);
+            owned = new boolean[SHARDS];
+            return map;
+        }
+
+        private Map<String, V> writable(int shard) {
+            if (!owned[shard]) {
+                shards[shard] = new HashMap<>(shards[shard]);
+                owned[shard] = true;
+            }
+            return shards[shard];
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.moh.go.tz.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for sync stages and outbound calls, so recordings show what the service was
+ * doing next to GC and thread activity. They are enabled by default and cost next to nothing unless a
+ * recording is running, e.g. {@code -XX:StartFlightRecording:filename=hfr.jfr}.
+ */
+public final class SyncEvents {
+    private static final String CATEGORY = "HFR Integration";
+
+    private SyncEvents() {
+    }
+
+    /**
+     * One attempt of an OpenMRS REST call.
+     */
+    @Name("com.moh.go.tz.OpenmrsCall")
+    @Label("OpenMRS Call")
+    @Category({CATEGORY, "OpenMRS"})
+    @StackTrace(false)
+    public static class OpenmrsCall extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Location UUID")
+        public String locationUuid;
+
+        @Label("Status")
+        @Description("HTTP status, or -1 if the call failed before a response was read")
+        public int status;
+
+        @Label("Attempt")
+        public int attempt;
+
+        public static OpenmrsCall start() {
+            OpenmrsCall event = new OpenmrsCall();
+            event.begin();
+            return event;
+        }
+
+        public void finish(String operation, String locationUuid, int status, int attempt) {
+            end();
+            if (shouldCommit()) {
+                this.operation = operation;
+                this.locationUuid = locationUuid;
+                this.status = status;
+                this.attempt = attempt;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * One HFR page, from the request until it was parsed.
+     */
+    @Name("com.moh.go.tz.HfrPageFetch")
+    @Label("HFR Page Fetch")
+    @Category({CATEGORY, "HFR"})
+    @StackTrace(false)
+    public static class HfrPageFetch extends Event {
+        @Label("Endpoint")
+        public String endpoint;
+
+        @Label("Page")
+        public int page;
+
+        @Label("Wire Bytes")
+        @DataAmount
+        public long wireBytes;
+
+        @Label("Decoded Bytes")
+        @DataAmount
+        public long decodedBytes;
+
+        @Label("Parse Time")
+        @Description("Time spent reading and parsing the body after the response headers arrived")
+        @Timespan
+        public long parseTime;
+    }
+
+    /**
+     * How {@code ensureLocationExists} resolved one hierarchy level.
+     */
+    @Name("com.moh.go.tz.LocationDecision")
+    @Label("Location Decision")
+    @Category({CATEGORY, "Sync"})
+    @StackTrace(false)
+    public static class LocationDecision extends Event {
+        @Label("Tag")
+        public String tag;
+
+        @Label("Code")
+        public String code;
+
+        @Label("Outcome")
+        @Description("cached, lookedUp, created, foundByName, createFailed, missingParent or skipped")
+        public String outcome;
+
+        @Label("Renamed")
+        public boolean renamed;
+
+        @Label("Reparented")
+        public boolean reparented;
+    }
+
+    /**
+     * A reload of the location cache from OpenMRS, or its background hydration pass.
+     */
+    @Name("com.moh.go.tz.CacheLoad")
+    @Label("Location Cache Load")
+    @Category({CATEGORY, "Cache"})
+    @StackTrace(false)
+    public static class CacheLoad extends Event {
+        @Label("Phase")
+        @Description("index or full for the reload, hydration for the background pass")
+        public String phase;
+
+        @Label("Locations")
+        public int locations;
+
+        @Label("Generation")
+        public long generation;
+    }
+}
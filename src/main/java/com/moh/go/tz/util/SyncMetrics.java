@@ -0,0 +1,293 @@
+package com.moh.go.tz.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Lightweight in-process metrics registry rendered in the Prometheus text exposition format.
+ */
+public class SyncMetrics {
+    public static final String OP_FETCH = "fetch";
+    public static final String OP_CREATE = "create";
+    public static final String OP_RENAME = "rename";
+    public static final String OP_REPARENT = "reparent";
+    public static final String OP_SET_CODE = "set-code";
+    public static final String OP_RETIRE = "retire";
+    public static final String OP_UNRETIRE = "unretire";
+
+    public static final String TARGET_OPENMRS = "openmrs";
+    public static final String TARGET_HFR = "hfr";
+
+    public static final String CACHE_CODE = "codeCache";
+    public static final String CACHE_LOCATION = "locationCache";
+    public static final String CACHE_NEGATIVE = "negativeCache";
+    public static final String CACHE_NAME = "nameIndex";
+    public static final String CACHE_OPENMRS_LOOKUP = "openmrsLookup";
+
+    private static final double[] ENDPOINT_BUCKETS = {0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300, 1800, 7200};
+    private static final double[] OUTBOUND_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private final Map<String, Histogram> endpointLatency = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> outboundLatency = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> outboundStatus = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> cacheHits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> cacheMisses = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> hfrPagesFetched = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> rowsProcessed = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> refreshRuns = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> transferBytes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> decompressNanos = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, String> gaugeHelp = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> sampledCounters = new ConcurrentHashMap<>();
+    private final Map<String, String> sampledCounterHelp = new ConcurrentHashMap<>();
+    private final AtomicLong refreshesInProgress = new AtomicLong();
+    private final AtomicLong refreshStartedAt = new AtomicLong();
+    private final AtomicLong refreshCurrentPage = new AtomicLong();
+    private volatile String refreshCurrentEndpoint = "";
+    private volatile long lastRefreshDurationMillis;
+    private volatile long lastRefreshAdminRows;
+    private volatile long lastRefreshFacilityRows;
+
+    public void recordEndpoint(String endpoint, String outcome, long elapsedNanos) {
+        endpointLatency.computeIfAbsent(labels("endpoint", endpoint, "outcome", outcome),
+                k -> new Histogram(ENDPOINT_BUCKETS)).observe(elapsedNanos);
+    }
+
+    /**
+     * Records one outbound HTTP attempt, also in the {@link SyncTrace} of the sync running on this thread.
+     * A negative status means the call failed before a response was read.
+     */
+    public void recordOutbound(String target, String operation, int status, long elapsedNanos) {
+        SyncTrace.recordCall(target, operation, status, elapsedNanos);
+        outboundLatency.computeIfAbsent(labels("target", target, "operation", operation),
+                k -> new Histogram(OUTBOUND_BUCKETS)).observe(elapsedNanos);
+        String statusLabel = status < 0 ? "error" : Integer.toString(status);
+        outboundStatus.computeIfAbsent(labels("target", target, "operation", operation, "status", statusLabel),
+                k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Records the size of one response body on the wire and after decoding, and the time spent inflating it.
+     */
+    public void recordTransfer(String target, String encoding, long wireBytes, long decodedBytes, long inflateNanos) {
+        transferBytes.computeIfAbsent(labels("target", target, "encoding", encoding, "stage", "wire"),
+                k -> new LongAdder()).add(wireBytes);
+        transferBytes.computeIfAbsent(labels("target", target, "encoding", encoding, "stage", "decoded"),
+                k -> new LongAdder()).add(decodedBytes);
+        decompressNanos.computeIfAbsent(target, k -> new LongAdder()).add(inflateNanos);
+    }
+
+    public void recordCacheLookup(String cache, boolean hit) {
+        (hit ? cacheHits : cacheMisses).computeIfAbsent(cache, k -> new LongAdder()).increment();
+    }
+
+    public void recordHfrPage(String endpoint) {
+        hfrPagesFetched.computeIfAbsent(endpoint, k -> new LongAdder()).increment();
+        refreshCurrentEndpoint = endpoint;
+        refreshCurrentPage.incrementAndGet();
+    }
+
+    public void recordRowsProcessed(String endpoint, int rows) {
+        rowsProcessed.computeIfAbsent(endpoint, k -> new LongAdder()).add(rows);
+    }
+
+    public void refreshStarted() {
+        refreshesInProgress.incrementAndGet();
+        refreshStartedAt.set(System.currentTimeMillis());
+        refreshCurrentPage.set(0);
+        refreshCurrentEndpoint = "";
+    }
+
+    public void refreshFinished(String outcome) {
+        refreshesInProgress.decrementAndGet();
+        refreshRuns.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+    }
+
+    public void refreshSkipped() {
+        refreshRuns.computeIfAbsent("skipped", k -> new LongAdder()).increment();
+    }
+
+    public void recordRefreshRun(long durationMillis, int adminRows, int facilityRows) {
+        lastRefreshDurationMillis = durationMillis;
+        lastRefreshAdminRows = adminRows;
+        lastRefreshFacilityRows = facilityRows;
+    }
+
+    /**
+     * Registers a gauge sampled at scrape time, e.g. a cache size.
+     */
+    public void registerGauge(String name, String help, String labelName, String labelValue, DoubleSupplier supplier) {
+        gaugeHelp.put(name, help);
+        gauges.put(name + "|" + labels(labelName, labelValue), supplier);
+    }
+
+    /**
+     * Registers a counter kept elsewhere and sampled at scrape time.
+     */
+    public void registerCounter(String name, String help, String labelName, String labelValue, DoubleSupplier supplier) {
+        sampledCounterHelp.put(name, help);
+        sampledCounters.put(name + "|" + labels(labelName, labelValue), supplier);
+    }
+
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        renderHistograms(out, "hfr_sync_endpoint_duration_seconds",
+                "Latency of the HFR sync HTTP endpoints", endpointLatency);
+        renderHistograms(out, "hfr_outbound_request_duration_seconds",
+                "Latency of individual outbound HTTP attempts by operation", outboundLatency);
+        renderCounters(out, "hfr_outbound_requests_total",
+                "Outbound HTTP attempts by operation and response status", outboundStatus, null);
+        renderCounters(out, "hfr_cache_hits_total", "Location cache lookups that found an entry", cacheHits, "cache");
+        renderCounters(out, "hfr_cache_misses_total", "Location cache lookups that found nothing", cacheMisses, "cache");
+        renderHitRatio(out);
+        renderCounters(out, "hfr_pages_fetched_total", "HFR pages downloaded", hfrPagesFetched, "endpoint");
+        renderCounters(out, "hfr_rows_processed_total", "HFR rows applied to OpenMRS", rowsProcessed, "endpoint");
+        renderCounters(out, "hfr_refresh_runs_total", "Completed HFR refresh runs by outcome", refreshRuns, "outcome");
+        renderCounters(out, "hfr_response_bytes_total",
+                "Response body bytes read from OpenMRS/HFR, on the wire and after decoding", transferBytes, null);
+        header(out, "hfr_decompression_seconds_total", "counter", "Time spent decompressing response bodies");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(decompressNanos).entrySet()) {
+            sample(out, "hfr_decompression_seconds_total", labels("target", entry.getKey()),
+                    entry.getValue().sum() / 1_000_000_000.0);
+        }
+
+        header(out, "hfr_refresh_in_progress", "gauge", "Number of HFR refreshes currently running");
+        sample(out, "hfr_refresh_in_progress", "", refreshesInProgress.get());
+        header(out, "hfr_refresh_current_page", "gauge", "Pages handled so far by the running refresh");
+        sample(out, "hfr_refresh_current_page", labels("endpoint", refreshCurrentEndpoint),
+                refreshesInProgress.get() > 0 ? refreshCurrentPage.get() : 0);
+        header(out, "hfr_refresh_started_timestamp_seconds", "gauge", "Start time of the most recent refresh");
+        sample(out, "hfr_refresh_started_timestamp_seconds", "", refreshStartedAt.get() / 1000.0);
+        header(out, "hfr_refresh_last_duration_seconds", "gauge", "Duration of the most recently finished refresh");
+        sample(out, "hfr_refresh_last_duration_seconds", "", lastRefreshDurationMillis / 1000.0);
+        header(out, "hfr_refresh_last_rows", "gauge", "Rows applied by the most recently finished refresh");
+        sample(out, "hfr_refresh_last_rows", labels("endpoint", "hierarchy"), lastRefreshAdminRows);
+        sample(out, "hfr_refresh_last_rows", labels("endpoint", "facilities"), lastRefreshFacilityRows);
+
+        renderSampled(out, "gauge", gauges, gaugeHelp);
+        renderSampled(out, "counter", sampledCounters, sampledCounterHelp);
+        return out.toString();
+    }
+
+    private static void renderSampled(StringBuilder out, String type, Map<String, DoubleSupplier> series,
+                                      Map<String, String> help) {
+        String lastName = null;
+        for (Map.Entry<String, DoubleSupplier> entry : new TreeMap<>(series).entrySet()) {
+            int sep = entry.getKey().indexOf('|');
+            String name = entry.getKey().substring(0, sep);
+            if (!name.equals(lastName)) {
+                header(out, name, type, help.getOrDefault(name, name));
+                lastName = name;
+            }
+            sample(out, name, entry.getKey().substring(sep + 1), entry.getValue().getAsDouble());
+        }
+    }
+
+    private void renderHitRatio(StringBuilder out) {
+        header(out, "hfr_cache_hit_ratio", "gauge", "Share of cache lookups that were hits");
+        for (String cache : new String[]{CACHE_CODE, CACHE_LOCATION}) {
+            long hits = sum(cacheHits.get(cache));
+            long total = hits + sum(cacheMisses.get(cache));
+            sample(out, "hfr_cache_hit_ratio", labels("cache", cache), total == 0 ? 0 : (double) hits / total);
+        }
+    }
+
+    private static long sum(LongAdder adder) {
+        return adder != null ? adder.sum() : 0;
+    }
+
+    private static void renderHistograms(StringBuilder out, String name, String help, Map<String, Histogram> series) {
+        header(out, name, "histogram", help);
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(series).entrySet()) {
+            entry.getValue().render(out, name, entry.getKey());
+        }
+    }
+
+    private static void renderCounters(StringBuilder out, String name, String help,
+                                       Map<String, LongAdder> series, String labelName) {
+        header(out, name, "counter", help);
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(series).entrySet()) {
+            String labels = labelName != null ? labels(labelName, entry.getKey()) : entry.getKey();
+            sample(out, name, labels, entry.getValue().sum());
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static String formatValue(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String labels(String... pairs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            String value = pairs[i + 1] != null ? pairs[i + 1] : "";
+            sb.append(pairs[i]).append("=\"")
+                    .append(value.replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append('"');
+        }
+        return sb.toString();
+    }
+
+    private static final class Histogram {
+        private final double[] bounds;
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length];
+            for (int i = 0; i < bounds.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void observe(long elapsedNanos) {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            for (int i = 0; i < bounds.length; i++) {
+                if (seconds <= bounds[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(seconds);
+        }
+
+        private void render(StringBuilder out, String name, String labels) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets[i].sum();
+                sample(out, name + "_bucket", prefix + "le=\"" + formatValue(bounds[i]) + "\"", cumulative);
+            }
+            sample(out, name + "_bucket", prefix + "le=\"+Inf\"", count.sum());
+            sample(out, name + "_sum", labels, sum.sum());
+            sample(out, name + "_count", labels, count.sum());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.moh.go.tz.util;
+
+import com.moh.go.tz.domain.SyncTimings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the timing breakdown of the facility sync running on the current thread. The static methods
+ * do nothing when no trace is active, so code shared with refreshes can call them unconditionally.
+ */
+public final class SyncTrace {
+    private static final ThreadLocal<SyncTrace> CURRENT = new ThreadLocal<>();
+    private static final String OTHER_STAGE = "Other";
+
+    private final String facilityCode;
+    private final String regionCode;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startedNanos;
+    private final long lockWaitNanos;
+    private final List<StageBuilder> stages = new ArrayList<>();
+    private StageBuilder current;
+
+    private SyncTrace(String facilityCode, String regionCode, long queuedNanos) {
+        this.facilityCode = facilityCode;
+        this.regionCode = regionCode;
+        this.startedNanos = System.nanoTime();
+        this.lockWaitNanos = Math.max(0, startedNanos - queuedNanos);
+    }
+
+    /**
+     * Starts tracing on this thread. {@code queuedNanos} is when the sync was requested, so the time
+     * until now is reported as lock wait.
+     */
+    public static void begin(String facilityCode, String regionCode, long queuedNanos) {
+        CURRENT.set(new SyncTrace(facilityCode, regionCode, queuedNanos));
+    }
+
+    /**
+     * Stops tracing on this thread and returns the breakdown, or null if no trace was active.
+     */
+    public static SyncTimings end() {
+        SyncTrace trace = CURRENT.get();
+        if (trace == null) {
+            return null;
+        }
+        CURRENT.remove();
+        return trace.build();
+    }
+
+    public static void beginStage(String name, String code) {
+        SyncTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.current = new StageBuilder(name, code);
+            trace.stages.add(trace.current);
+        }
+    }
+
+    public static void stageOutcome(String outcome) {
+        SyncTrace trace = CURRENT.get();
+        if (trace != null && trace.current != null) {
+            trace.current.outcome = outcome;
+        }
+    }
+
+    public static void endStage() {
+        SyncTrace trace = CURRENT.get();
+        if (trace != null && trace.current != null) {
+            trace.current.nanos = System.nanoTime() - trace.current.startedNanos;
+            trace.current = null;
+        }
+    }
+
+    /**
+     * Adds one outbound attempt to the current stage. A negative or non-2xx status counts as a failure.
+     */
+    public static void recordCall(String target, String operation, int status, long elapsedNanos) {
+        SyncTrace trace = CURRENT.get();
+        if (trace == null) {
+            return;
+        }
+        if (trace.current == null) {
+            beginStage(OTHER_STAGE, null);
+        }
+        long[] call = trace.current.calls.computeIfAbsent(target + "|" + operation, k -> new long[3]);
+        call[0]++;
+        if (status < 200 || status >= 300) {
+            call[1]++;
+        }
+        call[2] += elapsedNanos;
+    }
+
+    private SyncTimings build() {
+        List<SyncTimings.Stage> built = new ArrayList<>(stages.size());
+        for (StageBuilder stage : stages) {
+            if (stage.nanos == 0) {
+                stage.nanos = System.nanoTime() - stage.startedNanos;
+            }
+            List<SyncTimings.Call> calls = new ArrayList<>(stage.calls.size());
+            for (Map.Entry<String, long[]> entry : stage.calls.entrySet()) {
+                String[] key = entry.getKey().split("\\|", 2);
+                long[] call = entry.getValue();
+                calls.add(new SyncTimings.Call(key[0], key[1], (int) call[0], (int) call[1], millis(call[2])));
+            }
+            built.add(new SyncTimings.Stage(stage.name, stage.code, stage.outcome, millis(stage.nanos), calls));
+        }
+        return new SyncTimings(facilityCode, regionCode, startedAt,
+                millis(System.nanoTime() - startedNanos + lockWaitNanos), millis(lockWaitNanos), built);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    private static final class StageBuilder {
+        private final String name;
+        private final String code;
+        private final long startedNanos = System.nanoTime();
+        private final Map<String, long[]> calls = new LinkedHashMap<>();
+        private String outcome;
+        private long nanos;
+
+        private StageBuilder(String name, String code) {
+            this.name = name;
+            this.code = code;
+        }
+    }
+}
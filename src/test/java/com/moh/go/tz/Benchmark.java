@@ -0,0 +1,57 @@
+package com.moh.go.tz;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntConsumer;
+
+/**
+ * Minimal timing loop for the micro-benchmarks under src/test; run them with
+ * {@code gradle benchmark -Pbench=<class>}. Each case is warmed up, then timed over several rounds, and
+ * reports the best round's time and the bytes allocated per operation.
+ */
+public final class Benchmark {
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static volatile Object sink;
+
+    private Benchmark() {
+    }
+
+    /**
+     * Runs {@code op} with indexes 0 to {@code ops - 1} per round and prints ns and bytes per operation.
+     */
+    public static void measure(String name, int ops, IntConsumer op) {
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            for (int i = 0; i < ops; i++) {
+                op.accept(i);
+            }
+        }
+        long best = Long.MAX_VALUE;
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = allocatedBytes();
+            long started = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                op.accept(i);
+            }
+            best = Math.min(best, System.nanoTime() - started);
+            allocated = Math.min(allocated, allocatedBytes() - bytes);
+        }
+        System.out.printf("%-48s %10.1f ns/op %10.0f B/op%n", name, (double) best / ops,
+                allocatedBytes() < 0 ? Double.NaN : (double) allocated / ops);
+    }
+
+    /**
+     * Keeps a result reachable so the JIT cannot drop the work that produced it.
+     */
+    public static void consume(Object value) {
+        sink = value;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
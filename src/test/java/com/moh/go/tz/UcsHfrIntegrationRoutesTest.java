@@ -0,0 +1,36 @@
+package com.moh.go.tz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UcsHfrIntegrationRoutesTest {
+
+    @Test
+    public void matchesIfNoneMatchPerEntityTag() {
+        assertTrue(UcsHfrIntegrationRoutes.ifNoneMatchMatches("\"abc\"", "abc"));
+        assertTrue(UcsHfrIntegrationRoutes.ifNoneMatchMatches("W/\"abc\"", "abc"));
+        assertTrue(UcsHfrIntegrationRoutes.ifNoneMatchMatches("\"x\", W/\"abc\" ,\"y\"", "abc"));
+        assertTrue(UcsHfrIntegrationRoutes.ifNoneMatchMatches(" * ", "abc"));
+        assertTrue(UcsHfrIntegrationRoutes.ifNoneMatchMatches("\"a,b\", \"abc\"", "abc"));
+
+        assertFalse(UcsHfrIntegrationRoutes.ifNoneMatchMatches("\"xabcx\"", "abc"));
+        assertFalse(UcsHfrIntegrationRoutes.ifNoneMatchMatches("\"ab\"", "abc"));
+        assertFalse(UcsHfrIntegrationRoutes.ifNoneMatchMatches("\"abc", "abc"));
+        assertFalse(UcsHfrIntegrationRoutes.ifNoneMatchMatches("abc", "abc"));
+        assertFalse(UcsHfrIntegrationRoutes.ifNoneMatchMatches("", "abc"));
+    }
+
+    @Test
+    public void digestsTheSetOfCodes() {
+        String digest = UcsHfrIntegrationRoutes.codesDigest(new String[]{"TZ.R1", "TZ.R2"});
+        assertEquals(64, digest.length());
+        assertEquals(digest, UcsHfrIntegrationRoutes.codesDigest(new String[]{"TZ.R2", "TZ.R1", "TZ.R2"}));
+        assertNotEquals(digest, UcsHfrIntegrationRoutes.codesDigest(new String[]{"TZ.R1", "TZ.R3"}));
+        assertNotEquals(UcsHfrIntegrationRoutes.codesDigest(new String[]{"A", "BC"}),
+                UcsHfrIntegrationRoutes.codesDigest(new String[]{"AB", "C"}));
+    }
+}
@@ -0,0 +1,163 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.util.SyncMetrics;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdmissionControlTest {
+    private final List<CompletableFuture<String>> started = new ArrayList<>();
+
+    @Test
+    public void handsAFreedSlotToTheOldestQueuedRequest() throws Exception {
+        AdmissionControl admission = admission(2, 2, "10s");
+        CompletableFuture<String> first = submit(admission);
+        CompletableFuture<String> second = submit(admission);
+        CompletableFuture<String> third = submit(admission);
+        CompletableFuture<String> fourth = submit(admission);
+        assertEquals(2, started.size());
+        assertEquals(2, admission.running());
+        assertEquals(2, admission.queued());
+
+        started.get(0).complete("one");
+        assertEquals("one", first.get());
+        assertEquals(3, started.size());
+        assertEquals(2, admission.running());
+        assertEquals(1, admission.queued());
+
+        started.get(1).completeExceptionally(new IllegalStateException("failed"));
+        try {
+            second.get();
+            fail("the task's failure is passed on");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(4, started.size());
+        assertEquals(0, admission.queued());
+
+        started.get(2).complete("three");
+        started.get(3).complete("four");
+        assertEquals("three", third.get());
+        assertEquals("four", fourth.get());
+        assertEquals(0, admission.running());
+        assertEquals(0, admission.shed());
+    }
+
+    @Test
+    public void refusesWith429WhenTheQueueIsFull() {
+        AdmissionControl admission = admission(1, 1, "10s");
+        submit(admission);
+        submit(admission);
+
+        // Nothing has completed yet, so there is no drain rate and Retry-After falls back to max-queue-wait
+        AdmissionControl.Rejected rejected = rejection(admission);
+        assertEquals(AdmissionControl.TOO_MANY_REQUESTS, rejected.getStatus());
+        assertEquals(10, rejected.getRetryAfterSeconds());
+        assertEquals(1, admission.shed());
+        assertEquals(1, admission.queued());
+    }
+
+    @Test
+    public void refusesWith503WhenTheQueueWouldDrainTooSlowly() throws Exception {
+        AdmissionControl admission = admission(1, 5, "500ms");
+        completeAfter(admission, 300);
+        assertTrue(admission.drainRate() > 0 && admission.drainRate() < 3.4);
+
+        // At about 300 ms a request, one queued request drains in time and a second would not
+        submit(admission);
+        submit(admission);
+        assertEquals(1, admission.queued());
+        AdmissionControl.Rejected rejected = rejection(admission);
+        assertEquals(AdmissionControl.SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertEquals("about 0.6 s to drain, rounded up", 1, rejected.getRetryAfterSeconds());
+        assertEquals(1, admission.shed());
+    }
+
+    @Test
+    public void basesA429RetryAfterOnTheDrainRate() throws Exception {
+        AdmissionControl admission = admission(1, 1, "10s");
+        completeAfter(admission, 300);
+        submit(admission);
+        submit(admission);
+
+        AdmissionControl.Rejected rejected = rejection(admission);
+        assertEquals(AdmissionControl.TOO_MANY_REQUESTS, rejected.getStatus());
+        assertEquals(1, rejected.getRetryAfterSeconds());
+    }
+
+    @Test
+    public void refusesWithTheLongestRetryAfterOnceTheQueueHasStalled() throws Exception {
+        AdmissionControl admission = admission(1, 5, "100ms");
+        submit(admission);
+        submit(admission);
+        Thread.sleep(150);
+
+        AdmissionControl.Rejected rejected = rejection(admission);
+        assertEquals(AdmissionControl.SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertEquals(60, rejected.getRetryAfterSeconds());
+        assertEquals(1, admission.queued());
+    }
+
+    @Test
+    public void admitsEverythingWithoutAConcurrencyLimit() {
+        AdmissionControl admission = admission(0, 0, "0s");
+        for (int i = 0; i < 10; i++) {
+            submit(admission);
+        }
+        assertEquals(10, started.size());
+        assertEquals(0, admission.running());
+        assertEquals(0, admission.shed());
+    }
+
+    private static AdmissionControl admission(int maxConcurrent, int maxQueued, String maxQueueWait) {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("integration-service.admission.test.max-concurrent", maxConcurrent);
+        settings.put("integration-service.admission.test.max-queued", maxQueued);
+        settings.put("integration-service.admission.test.max-queue-wait", maxQueueWait);
+        settings.put("integration-service.admission.max-retry-after", "60s");
+        return new AdmissionControl(ConfigFactory.parseMap(settings), "test", new SyncMetrics());
+    }
+
+    /**
+     * Submits a task that runs until the test completes the future it adds to {@link #started}.
+     */
+    private CompletableFuture<String> submit(AdmissionControl admission) {
+        CompletionStage<String> result = admission.submit(() -> {
+            CompletableFuture<String> task = new CompletableFuture<>();
+            started.add(task);
+            return task;
+        });
+        return result.toCompletableFuture();
+    }
+
+    /**
+     * Runs one request that takes about {@code millis}, so the drain rate is known.
+     */
+    private void completeAfter(AdmissionControl admission, long millis) throws Exception {
+        CompletableFuture<String> result = submit(admission);
+        Thread.sleep(millis);
+        started.get(started.size() - 1).complete("done");
+        result.get();
+        assertEquals(0, admission.running());
+    }
+
+    private AdmissionControl.Rejected rejection(AdmissionControl admission) {
+        try {
+            submit(admission);
+        } catch (AdmissionControl.Rejected rejected) {
+            return rejected;
+        }
+        throw new AssertionError("the request was admitted");
+    }
+}
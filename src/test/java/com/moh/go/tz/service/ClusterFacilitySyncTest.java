@@ -0,0 +1,129 @@
+package com.moh.go.tz.service;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.cluster.MemberStatus;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import com.moh.go.tz.domain.SyncResponse;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two cluster nodes in one JVM, each with its own cache, receiving facility syncs for the same regions at
+ * the same time: every region's hierarchy must still be created once, by the node owning its shard.
+ */
+public class ClusterFacilitySyncTest {
+    private static final int REGIONS = 12;
+    private static final int FACILITIES_PER_REGION = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubOpenmrs openmrs;
+    private final List<ActorTestKit> nodes = new ArrayList<>();
+    private final List<LocationSyncService> services = new ArrayList<>();
+    private final List<ClusterFacilitySync> routers = new ArrayList<>();
+
+    @Before
+    public void startCluster() throws Exception {
+        openmrs = new StubOpenmrs();
+        for (int node = 0; node < 2; node++) {
+            Config config = ConfigFactory.parseString("akka.actor.provider = cluster\n"
+                            + "akka.remote.artery.canonical.port = 0\n"
+                            + "akka.cluster.seed-nodes = []\n"
+                            + "akka.cluster.jmx.multi-mbeans-in-same-jvm = on\n")
+                    .withFallback(openmrs.config(folder.newFolder().toPath()));
+            ActorTestKit testKit = ActorTestKit.create("ClusterFacilitySyncTest", config);
+            LocationSyncService service = new LocationSyncService(config);
+            service.startWarmUp();
+            nodes.add(testKit);
+            services.add(service);
+        }
+        Cluster first = Cluster.get(nodes.get(0).system());
+        for (ActorTestKit node : nodes) {
+            Cluster.get(node.system()).manager().tell(Join.create(first.selfMember().address()));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!allUp() || !services.stream().allMatch(LocationSyncService::isReady)) {
+            assertTrue("cluster did not form", System.nanoTime() < deadline);
+            Thread.sleep(100);
+        }
+        for (int node = 0; node < nodes.size(); node++) {
+            ClusterFacilitySync router = new ClusterFacilitySync(nodes.get(node).system(), services.get(node));
+            services.get(node).setRegionRouter(router);
+            routers.add(router);
+        }
+    }
+
+    @After
+    public void stopCluster() {
+        nodes.forEach(ActorTestKit::shutdownTestKit);
+        if (openmrs != null) {
+            openmrs.close();
+        }
+    }
+
+    @Test
+    public void createsEveryRegionHierarchyOnceWhicheverNodeReceivesIt() throws Exception {
+        List<CompletableFuture<SyncResponse>> replies = new ArrayList<>();
+        for (int facility = 0; facility < FACILITIES_PER_REGION; facility++) {
+            for (int region = 0; region < REGIONS; region++) {
+                for (ClusterFacilitySync router : routers) {
+                    replies.add(router.syncFacility(StubOpenmrs.facilityPayload(regionCode(region), facility)).toCompletableFuture());
+                }
+            }
+        }
+        for (CompletableFuture<SyncResponse> reply : replies) {
+            assertEquals("success", reply.get(60, TimeUnit.SECONDS).getStatus());
+        }
+
+        Map<String, Integer> creates = new HashMap<>();
+        openmrs.createdCodes().forEach(code -> creates.merge(code, 1, Integer::sum));
+        creates.forEach((code, count) -> assertEquals("creates of " + code, 1, (int) count));
+        assertEquals(REGIONS * (4 + 2 * FACILITIES_PER_REGION), creates.size());
+
+        Set<Integer> owners = new HashSet<>();
+        for (int region = 0; region < REGIONS; region++) {
+            String code = regionCode(region);
+            List<Integer> holders = new ArrayList<>();
+            for (int node = 0; node < services.size(); node++) {
+                if (services.get(node).findLocationView(code) != null) {
+                    holders.add(node);
+                }
+            }
+            assertEquals("nodes caching " + code, 1, holders.size());
+            owners.add(holders.get(0));
+        }
+        assertEquals("regions are spread over both nodes", 2, owners.size());
+    }
+
+    private boolean allUp() {
+        return nodes.stream().allMatch(node -> {
+            Iterable<akka.cluster.Member> members = Cluster.get(node.system()).state().getMembers();
+            return StreamSupport.stream(members.spliterator(), false)
+                    .filter(member -> member.status() == MemberStatus.up()).count() == nodes.size();
+        });
+    }
+
+    private static String regionCode(int region) {
+        return "TZ.R" + region;
+    }
+}
@@ -0,0 +1,49 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.DeadLetter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DeadLetterStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsTheEntriesAroundADamagedLine() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("dead-letters.jsonl");
+        DeadLetterStore store = new DeadLetterStore(file);
+        store.recordFailure(StubOpenmrs.facilityPayload("TZ.R1", 1), "CreateFailed", "first");
+        store.recordFailure(StubOpenmrs.facilityPayload("TZ.R1", 2), "CreateFailed", "second");
+        String intact = Files.readString(file);
+
+        // A torn append in the middle, then more records written after a restart
+        String[] lines = intact.split("\n");
+        Files.writeString(file, lines[0] + "\n" + lines[1].substring(0, lines[1].length() / 2) + "\n"
+                + "{\"removed\":\"TZ.R1-1\"}\n" + lines[1] + "\n");
+        store = new DeadLetterStore(file);
+        assertEquals(List.of("TZ.R1-2"), codes(store));
+
+        // A torn last line is dropped on reopening, so the next append starts a line of its own
+        Files.write(file, "{\"facilityCode\":\"TZ.R1-3\",\"attem".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        store = new DeadLetterStore(file);
+        store.recordFailure(StubOpenmrs.facilityPayload("TZ.R1", 4), "CreateFailed", "fourth");
+        assertFalse(Files.readString(file).contains("attem\""));
+        assertEquals(List.of("TZ.R1-2", "TZ.R1-4"), codes(new DeadLetterStore(file)));
+    }
+
+    private static List<String> codes(DeadLetterStore store) {
+        return store.list(null, null, null).stream().map(DeadLetter::getFacilityCode).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,54 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.Benchmark;
+import com.moh.go.tz.domain.HfrFacilityPayload;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Nearest-facility queries on the grid index against a linear scan, at district (10k) and national
+ * (100k) scale.
+ */
+public class FacilityIndexBenchmark {
+    private static final int QUERIES = 2_000;
+
+    public static void main(String[] args) {
+        for (int size : new int[]{10_000, 100_000}) {
+            List<HfrFacilityPayload> facilities = FacilityIndexTest.clusteredFacilities(size, 7);
+            FacilityIndex index = new FacilityIndex(0.1);
+            facilities.forEach(index::put);
+            double[][] points = new double[QUERIES][];
+            Random random = new Random(11);
+            for (int i = 0; i < QUERIES; i++) {
+                points[i] = new double[]{-11.7 + random.nextDouble() * 10.7, 29.3 + random.nextDouble() * 11.1};
+            }
+            Benchmark.measure(size + " grid k=10", QUERIES, i ->
+                    Benchmark.consume(index.nearest(points[i][0], points[i][1], 10, 0, null)));
+            Benchmark.measure(size + " grid 10 km radius", QUERIES, i ->
+                    Benchmark.consume(index.nearest(points[i][0], points[i][1], 10, 10_000, null)));
+            double[] latitudes = facilities.stream().mapToDouble(f -> Double.parseDouble(f.getLatitude())).toArray();
+            double[] longitudes = facilities.stream().mapToDouble(f -> Double.parseDouble(f.getLongitude())).toArray();
+            Benchmark.measure(size + " linear scan k=1", QUERIES / 10, i ->
+                    Benchmark.consume(closest(latitudes, longitudes, points[i][0], points[i][1])));
+        }
+    }
+
+    private static int closest(double[] latitudes, double[] longitudes, double latitude, double longitude) {
+        double latRad = Math.toRadians(latitude);
+        double cosLat = Math.cos(latRad);
+        int best = -1;
+        double bestA = Double.MAX_VALUE;
+        for (int j = 0; j < latitudes.length; j++) {
+            double otherLat = Math.toRadians(latitudes[j]);
+            double sinDLat = Math.sin((otherLat - latRad) / 2);
+            double sinDLon = Math.sin(Math.toRadians(longitudes[j] - longitude) / 2);
+            double a = sinDLat * sinDLat + cosLat * Math.cos(otherLat) * sinDLon * sinDLon;
+            if (a < bestA) {
+                bestA = a;
+                best = j;
+            }
+        }
+        return best;
+    }
+}
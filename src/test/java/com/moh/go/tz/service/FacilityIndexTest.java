@@ -0,0 +1,112 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.domain.NearbyFacility;
+import com.moh.go.tz.util.CustomJacksonObjectMapper;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Nearest-facility queries against a brute-force scan over the same facilities.
+ */
+public class FacilityIndexTest {
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final String[] TYPES = {"Dispensary", "Health Center", "Hospital"};
+
+    @Test
+    public void findsTheSameFacilitiesAsABruteForceScan() {
+        List<HfrFacilityPayload> facilities = clusteredFacilities(5_000, 7);
+        FacilityIndex index = new FacilityIndex(0.1);
+        facilities.forEach(index::put);
+        Random random = new Random(11);
+        for (int query = 0; query < 1_500; query++) {
+            double latitude = -11.7 + random.nextDouble() * 10.7;
+            double longitude = 29.3 + random.nextDouble() * 11.1;
+            int k = 1 + random.nextInt(20);
+            double radius = query % 3 == 0 ? 5_000 + random.nextDouble() * 50_000 : 0;
+            String type = query % 4 == 0 ? TYPES[random.nextInt(TYPES.length)] : null;
+            List<String> expected = facilities.stream()
+                    .filter(f -> type == null || type.equals(f.getFacilityType()))
+                    .filter(f -> radius <= 0 || distance(latitude, longitude, f) <= radius)
+                    .sorted(Comparator.comparingDouble(f -> distance(latitude, longitude, f)))
+                    .limit(k)
+                    .map(HfrFacilityPayload::getFacIdNumber)
+                    .collect(Collectors.toList());
+            List<String> actual = index.nearest(latitude, longitude, k, radius, type).stream()
+                    .map(NearbyFacility::getCode)
+                    .collect(Collectors.toList());
+            assertEquals("query " + query, expected, actual);
+        }
+    }
+
+    @Test
+    public void movesAndDropsFacilitiesOnUpdate() {
+        FacilityIndex index = new FacilityIndex(0.1);
+        index.put(facility("100001-1", -6.8, 39.28, "Dispensary"));
+        index.put(facility("100001-1", -3.37, 36.68, "Dispensary"));
+        assertEquals(1, index.size());
+        assertEquals("100001-1", index.nearest(-3.4, 36.7, 1, 10_000, null).get(0).getCode());
+        assertEquals(0, index.nearest(-6.8, 39.28, 1, 10_000, null).size());
+
+        index.put(facility("100001-1", 0, 0, "Dispensary"));
+        assertEquals(0, index.size());
+    }
+
+    /**
+     * Facilities over mainland Tanzania, most of them clustered around a few dozen towns the way HFR's are.
+     */
+    static List<HfrFacilityPayload> clusteredFacilities(int count, long seed) {
+        Random random = new Random(seed);
+        double[][] towns = new double[40][];
+        for (int i = 0; i < towns.length; i++) {
+            towns[i] = new double[]{-11.5 + random.nextDouble() * 10.4, 29.6 + random.nextDouble() * 10.6};
+        }
+        List<HfrFacilityPayload> facilities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double latitude;
+            double longitude;
+            if (random.nextInt(10) < 7) {
+                double[] town = towns[random.nextInt(towns.length)];
+                latitude = town[0] + random.nextGaussian() * 0.15;
+                longitude = town[1] + random.nextGaussian() * 0.15;
+            } else {
+                latitude = -11.7 + random.nextDouble() * 10.7;
+                longitude = 29.3 + random.nextDouble() * 11.1;
+            }
+            facilities.add(facility(String.format("%06d-%d", 100000 + i, i % 10), latitude, longitude,
+                    TYPES[random.nextInt(TYPES.length)]));
+        }
+        return facilities;
+    }
+
+    private static HfrFacilityPayload facility(String code, double latitude, double longitude, String type) {
+        JSONObject json = new JSONObject()
+                .put("Fac_IDNumber", code).put("Name", "Facility " + code).put("Region_Code", "TZ.R1")
+                .put("FacilityType", type).put("OperatingStatus", "Operating")
+                .put("Latitude", Double.toString(latitude)).put("Longitude", Double.toString(longitude));
+        try {
+            return CustomJacksonObjectMapper.mapper.readValue(json.toString(), HfrFacilityPayload.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static double distance(double latitude, double longitude, HfrFacilityPayload facility) {
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.toRadians(Double.parseDouble(facility.getLatitude()));
+        double sinDLat = Math.sin((lat2 - lat1) / 2);
+        double sinDLon = Math.sin(Math.toRadians(Double.parseDouble(facility.getLongitude()) - longitude) / 2);
+        double a = sinDLat * sinDLat + Math.cos(lat1) * Math.cos(lat2) * sinDLon * sinDLon;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.moh.go.tz.service;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class HfrSpoolTest {
+    private static final int PAGES = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Integer> fetched = new ArrayList<>();
+    private HfrSpool spool;
+
+    @Before
+    public void setUp() {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hfr.base-url-health-facilities", "http://localhost/facilities?page=");
+        settings.put("hfr.base-url-hierarchy", "http://localhost/hierarchy?page=");
+        settings.put("hfr.username", "user");
+        settings.put("hfr.password", "password");
+        settings.put("hfr.spool.enabled", true);
+        settings.put("hfr.spool.directory", folder.getRoot().getAbsolutePath());
+        settings.put("hfr.spool.compress", true);
+        settings.put("hfr.spool.page-retries", 1);
+        settings.put("hfr.spool.retry-backoff", "0s");
+        settings.put("hfr.spool.max-age", "1h");
+        Config config = ConfigFactory.parseMap(settings);
+        spool = new HfrSpool(config, new HfrClient(config) {
+            @Override
+            public String fetchPage(String endpoint, int page) {
+                fetched.add(page);
+                return "{\"metaData\":{\"pageCount\":" + PAGES + ",\"currentPage\":" + page + "},"
+                        + "\"data\":[{\"page\":" + page + "}]}";
+            }
+        });
+    }
+
+    @Test
+    public void replaysEveryPage() throws Exception {
+        spool.prepare(HfrClient.ENDPOINT_FACILITIES, false);
+        assertEquals(List.of(1, 2, 3), replayedPages());
+    }
+
+    @Test
+    public void continuesAPartialSpoolFromItsLastIntactPage() throws Exception {
+        spool.prepare(HfrClient.ENDPOINT_FACILITIES, false);
+        Path file = spool.spoolFile(HfrClient.ENDPOINT_FACILITIES);
+        // Cut into the end-of-spool marker and page 3, leaving pages 1 and 2 intact
+        truncate(file, file.toFile().length() - 20);
+        fetched.clear();
+
+        spool.prepare(HfrClient.ENDPOINT_FACILITIES, true);
+
+        assertEquals(List.of(3), fetched);
+        assertEquals(List.of(1, 2, 3), replayedPages());
+    }
+
+    @Test
+    public void rewritesASpoolCutOffInsideItsHeader() throws Exception {
+        spool.prepare(HfrClient.ENDPOINT_FACILITIES, false);
+        Path file = spool.spoolFile(HfrClient.ENDPOINT_FACILITIES);
+        for (int length = 0; length < 6; length++) {
+            truncate(file, length);
+            fetched.clear();
+
+            spool.prepare(HfrClient.ENDPOINT_FACILITIES, true);
+
+            assertEquals("header cut at " + length, List.of(1, 2, 3), fetched);
+            assertEquals("header cut at " + length, List.of(1, 2, 3), replayedPages());
+        }
+    }
+
+    private List<Integer> replayedPages() throws Exception {
+        List<Integer> pages = new ArrayList<>();
+        spool.replay(HfrClient.ENDPOINT_FACILITIES, 1, (page, data) -> {
+            assertEquals(page.intValue(), data.getJSONObject(0).getInt("page"));
+            pages.add(page);
+        });
+        return pages;
+    }
+
+    private static void truncate(Path file, long length) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(length);
+        }
+    }
+}
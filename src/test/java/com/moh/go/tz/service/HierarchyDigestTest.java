@@ -0,0 +1,122 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.DriftEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchyDigestTest {
+    private HierarchyDigest hfr;
+    private HierarchyDigest openmrs;
+
+    @Before
+    public void setUp() {
+        hfr = new HierarchyDigest();
+        openmrs = new HierarchyDigest();
+        for (HierarchyDigest digest : List.of(hfr, openmrs)) {
+            for (String region : List.of("TZ.R1", "TZ.R2")) {
+                digest.put("Region", region, "Region " + region, null);
+                digest.put("District", region + ".D1", "District", region);
+                digest.put("Council", region + ".D1.C1", "Council", region + ".D1");
+                digest.put("Ward", region + ".D1.C1.W1", "Ward", region + ".D1.C1");
+                digest.put("Village", region + ".D1.C1.W1.V1", "Village", region + ".D1.C1.W1");
+                digest.put("Facility", region + "-1", "Facility", region + ".D1.C1.W1");
+            }
+        }
+    }
+
+    @Test
+    public void findsNothingBetweenEqualHierarchies() {
+        assertTrue(hfr.diff(openmrs, true, 100, null).isEmpty());
+        // Names compare case-insensitively
+        openmrs.put("Ward", "TZ.R1.D1.C1.W1", "WARD", "TZ.R1.D1.C1");
+        assertTrue(hfr.diff(openmrs, true, 100, null).isEmpty());
+    }
+
+    @Test
+    public void reportsARenamedOrMovedLocationAsChanged() {
+        openmrs.put("Council", "TZ.R1.D1.C1", "Old council", "TZ.R1.D1");
+        openmrs.put("District", "TZ.R2.D2", "Other district", "TZ.R2");
+        openmrs.put("Ward", "TZ.R2.D1.C1.W1", "Ward", "TZ.R2.D2");
+
+        List<DriftEntry> entries = hfr.diff(openmrs, true, 100, null);
+        assertEquals(List.of("TZ.R1.D1.C1 changed Council/Old council", "TZ.R2.D1.C1.W1 changed Ward/Ward",
+                "TZ.R2.D2 missingInHfr null/Other district"), describe(entries));
+        assertEquals(List.of("TZ.R1", "TZ.R2", "TZ.R2"),
+                entries.stream().map(DriftEntry::getRegionCode).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void reportsLocationsMissingOnEitherSide() {
+        hfr.put("Ward", "TZ.R1.D1.C1.W2", "New ward", "TZ.R1.D1.C1");
+        openmrs.put("Region", "TZ.R3", "Region TZ.R3", null);
+
+        assertEquals(List.of("TZ.R1.D1.C1.W2 missingInOpenmrs New ward/null", "TZ.R3 missingInHfr null/Region TZ.R3"),
+                describe(hfr.diff(openmrs, true, 100, null)));
+        assertEquals(List.of("TZ.R1.D1.C1.W2 missingInOpenmrs New ward/null"),
+                describe(hfr.diff(openmrs, true, 100, "TZ.R1")));
+        assertEquals(1, hfr.diff(openmrs, true, 1, null).size());
+    }
+
+    @Test
+    public void reportsAWardWhoseVillagesOrFacilitiesDiffer() {
+        openmrs.put("Facility", "TZ.R2-1", "Renamed facility", "TZ.R2.D1.C1.W1");
+        hfr.put("Village", "TZ.R1.D1.C1.W1.V2", "Village", "TZ.R1.D1.C1.W1");
+
+        assertEquals(List.of("TZ.R1.D1.C1.W1 childrenDiffer Ward/Ward", "TZ.R2.D1.C1.W1 childrenDiffer Ward/Ward"),
+                describe(hfr.diff(openmrs, true, 100, null)));
+        assertTrue("leaves only count when asked for", hfr.diff(openmrs, false, 100, null).isEmpty());
+    }
+
+    @Test
+    public void keepsSubtreeHashesUntilTheSubtreeChanges() {
+        hfr.diff(openmrs, true, 100, null);
+        long computed = hfr.hashesComputed();
+        assertEquals("every admin node hashed once", 8, computed);
+        hfr.diff(openmrs, true, 100, null);
+        hfr.put("Ward", "TZ.R1.D1.C1.W1", "Ward", "TZ.R1.D1.C1");
+        assertEquals("an unchanged put keeps the hashes", computed, hfr.hashesComputed());
+
+        hfr.put("Village", "TZ.R1.D1.C1.W1.V1", "Renamed village", "TZ.R1.D1.C1.W1");
+        assertEquals(1, hfr.diff(openmrs, true, 100, null).size());
+        assertEquals("only the ward and its ancestors are hashed again", computed + 4, hfr.hashesComputed());
+
+        hfr.put("Village", "TZ.R1.D1.C1.W1.V1", "Village", "TZ.R1.D1.C1.W1");
+        assertTrue(hfr.diff(openmrs, true, 100, null).isEmpty());
+    }
+
+    @Test
+    public void sweepsWhatARefreshNoLongerListed() {
+        long stamp = hfr.beginSweep();
+        for (String region : List.of("TZ.R1", "TZ.R2")) {
+            hfr.put("Region", region, "Region " + region, null);
+            hfr.put("District", region + ".D1", "District", region);
+            hfr.put("Council", region + ".D1.C1", "Council", region + ".D1");
+            hfr.put("Village", region + ".D1.C1.W1.V1", "Village", region + ".D1.C1.W1");
+            hfr.put("Facility", region + "-1", "Facility", region + ".D1.C1.W1");
+        }
+        hfr.diff(openmrs, true, 100, null);
+        hfr.sweep(stamp);
+
+        assertEquals(10, hfr.size());
+        assertEquals(List.of("TZ.R1.D1.C1.W1 missingInHfr null/Ward", "TZ.R2.D1.C1.W1 missingInHfr null/Ward"),
+                describe(hfr.diff(openmrs, true, 100, null)));
+
+        // A sweep under a prefix leaves the rest alone
+        long next = hfr.beginSweep();
+        hfr.put("Region", "TZ.R1", "Region TZ.R1", null);
+        hfr.sweep(next, "TZ.R1");
+        assertEquals(6, hfr.size());
+    }
+
+    private static List<String> describe(List<DriftEntry> entries) {
+        return entries.stream()
+                .map(entry -> entry.getCode() + " " + entry.getReason() + " " + entry.getHfrName() + "/" + entry.getOpenmrsName())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,146 @@
+package com.moh.go.tz.service;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class IngestJournalTest {
+    // Room for two 20-byte entries per segment
+    private static final int SEGMENT_SIZE = 64;
+    private static final int ENTRY = 8 + 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("journal");
+    }
+
+    @Test
+    public void readsEntriesBackAtTheOffsetsAppendReturned() throws Exception {
+        IngestJournal journal = open();
+        assertEquals(0, journal.append(body(0)));
+        assertEquals(ENTRY, journal.append(body(1)));
+        assertEquals(2L * ENTRY, journal.getEndOffset());
+        assertEquals(0, journal.getCommittedOffset());
+
+        assertEquals(text(0), new String(journal.read(0), StandardCharsets.UTF_8));
+        assertEquals(ENTRY, IngestJournal.nextOffset(0, journal.read(0)));
+        assertEquals(text(1), new String(journal.read(ENTRY), StandardCharsets.UTF_8));
+        assertNull(journal.read(journal.getEndOffset()));
+    }
+
+    @Test
+    public void rollsOverToANewSegmentAndDeletesAppliedOnes() throws Exception {
+        IngestJournal journal = open();
+        for (int i = 0; i < 5; i++) {
+            journal.append(body(i));
+        }
+        assertEquals(3, segmentFiles().size());
+        assertEquals(List.of(text(0), text(1), text(2), text(3), text(4)), readFrom(journal, 0));
+
+        // Committing past the first two entries frees the first segment only
+        journal.commit(2L * ENTRY);
+        assertEquals(2, segmentFiles().size());
+        assertEquals(List.of(text(2), text(3), text(4)), readFrom(journal, journal.getCommittedOffset()));
+        try {
+            journal.read(0);
+            fail("the offset's segment was deleted");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void resumesFromTheCommittedOffsetAfterReopening() throws Exception {
+        IngestJournal journal = open();
+        for (int i = 0; i < 3; i++) {
+            journal.append(body(i));
+        }
+        journal.commit(ENTRY);
+        journal.close();
+
+        IngestJournal reopened = open();
+        assertEquals(ENTRY, reopened.getCommittedOffset());
+        assertEquals(3L * ENTRY, reopened.getEndOffset());
+        assertEquals(List.of(text(1), text(2)), readFrom(reopened, reopened.getCommittedOffset()));
+        assertEquals(3L * ENTRY, reopened.append(body(3)));
+        assertEquals(List.of(text(1), text(2), text(3)), readFrom(reopened, reopened.getCommittedOffset()));
+    }
+
+    @Test
+    public void dropsATornLastEntryAndAppendsInItsPlace() throws Exception {
+        IngestJournal journal = open();
+        journal.append(body(0));
+        long torn = journal.append(body(1));
+        journal.close();
+        // The crash left the second entry's body half written
+        try (RandomAccessFile segment = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            segment.seek(torn + 8 + 10);
+            segment.write(new byte[10]);
+        }
+
+        IngestJournal reopened = open();
+        assertEquals(torn, reopened.getEndOffset());
+        assertEquals(List.of(text(0)), readFrom(reopened, 0));
+        assertEquals(torn, reopened.append(body(2)));
+        reopened.close();
+        assertEquals(List.of(text(0), text(2)), readFrom(open(), 0));
+    }
+
+    @Test
+    public void clampsACommittedOffsetPastTheEnd() throws Exception {
+        IngestJournal journal = open();
+        journal.append(body(0));
+        journal.commit(10L * ENTRY);
+        journal.close();
+        assertEquals(ENTRY, open().getCommittedOffset());
+    }
+
+    private IngestJournal open() throws IOException {
+        return new IngestJournal(directory, SEGMENT_SIZE, IngestJournal.FSYNC_ALWAYS, Duration.ZERO);
+    }
+
+    private static List<String> readFrom(IngestJournal journal, long offset) {
+        List<String> bodies = new ArrayList<>();
+        byte[] body;
+        while ((body = journal.read(offset)) != null) {
+            bodies.add(new String(body, StandardCharsets.UTF_8));
+            offset = IngestJournal.nextOffset(offset, body);
+        }
+        return bodies;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] body(int i) {
+        return text(i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(int i) {
+        return String.format("facility-%011d", i);
+    }
+}
@@ -0,0 +1,76 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.Benchmark;
+import com.moh.go.tz.domain.Location;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Code lookups against the snapshot cache: alone, next to a writer publishing as fast as it can, and split
+ * over more reader threads. Reads take no lock, so a writer should not slow them and the threads should
+ * scale with the cores available.
+ */
+public class LocationCacheBenchmark {
+    private static final int LOCATIONS = 50_000;
+    private static final int READS = 1 << 22;
+
+    public static void main(String[] args) throws Exception {
+        LocationCache cache = new LocationCache(0, Collections.singleton("Facility"));
+        Location[] locations = new Location[LOCATIONS];
+        LocationCache.Load load = cache.beginLoad();
+        for (int i = 0; i < LOCATIONS; i++) {
+            locations[i] = new Location(UUID.randomUUID().toString(), "Facility " + i, null).withTag("Facility")
+                    .withAttribute(LocationCache.HFR_CODE_ATTRIBUTE, code(i));
+            load.put(locations[i]);
+        }
+        cache.publish(load, snapshot -> { });
+
+        Benchmark.measure("getByCode", 1 << 20, i -> Benchmark.consume(cache.getByCode(code(i % LOCATIONS))));
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; writing.get(); i++) {
+                int n = i % LOCATIONS;
+                cache.update(locations[n], loc -> {
+                    loc.setName("Facility " + n + " (" + (n & 1) + ")");
+                    return true;
+                });
+            }
+        });
+        writer.start();
+        Benchmark.measure("getByCode while a writer publishes", 1 << 20,
+                i -> Benchmark.consume(cache.getByCode(code(i % LOCATIONS))));
+        writing.set(false);
+        writer.join();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= Math.min(8, cores); threads *= 2) {
+            readConcurrently(cache, threads);
+            long started = System.nanoTime();
+            readConcurrently(cache, threads);
+            long elapsed = System.nanoTime() - started;
+            System.out.printf("%-48s %10.1f Mreads/s%n", threads + " reader thread(s)", READS * 1000.0 / elapsed);
+        }
+    }
+
+    private static void readConcurrently(LocationCache cache, int threads) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            new Thread(() -> {
+                for (int i = first; i < READS; i += threads) {
+                    Benchmark.consume(cache.getByCode(code(i % LOCATIONS)));
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+    }
+
+    private static String code(int i) {
+        return "F" + i;
+    }
+}
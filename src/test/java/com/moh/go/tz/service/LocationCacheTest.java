@@ -0,0 +1,113 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.Location;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LocationCacheTest {
+    private LocationCache cache;
+    private Location region;
+
+    @Before
+    public void setUp() {
+        cache = new LocationCache(0, Collections.singleton("Facility"));
+        region = location("Mwanza", "Region", "TZ.R1");
+        cache.put(region);
+    }
+
+    @Test
+    public void keepsAnOldSnapshotUnchangedByLaterWrites() {
+        LocationCache.Snapshot before = cache.snapshot();
+        cache.put(location("Magu DC", "Council", "TZ.R1.D1.C1"));
+        cache.update(region, loc -> {
+            loc.setName("Mwanza Region");
+            return true;
+        });
+
+        assertNull(before.getByCode("TZ.R1.D1.C1"));
+        assertEquals("Mwanza", before.getByCode("TZ.R1").getName());
+        assertEquals(1, before.size());
+        assertEquals("Mwanza Region", cache.getByCode("TZ.R1").getName());
+        assertNotNull(cache.getByCode("TZ.R1.D1.C1"));
+        assertEquals(before.version() + 2, cache.version());
+        assertEquals("the published location is replaced, not changed", "Mwanza", region.getName());
+    }
+
+    @Test
+    public void servesTheOldContentWhileALoadIsBuilt() {
+        LocationCache.Load load = cache.beginLoad();
+        load.put(location("Geita", "Region", "TZ.R2"));
+
+        assertSame(region, cache.getByCode("TZ.R1"));
+        assertNull(cache.getByCode("TZ.R2"));
+
+        cache.publish(load, snapshot -> { });
+        assertNull(cache.getByCode("TZ.R1"));
+        assertNotNull(cache.getByCode("TZ.R2"));
+        assertFalse(cache.isLoading());
+    }
+
+    @Test
+    public void replaysWritesMadeDuringALoadWhenItIsPublished() {
+        LocationCache.Load load = cache.beginLoad();
+        load.put(location("Geita", "Region", "TZ.R2"));
+        cache.put(location("Kagera", "Region", "TZ.R3"));
+
+        cache.publish(load, snapshot -> assertNotNull(snapshot.getByCode("TZ.R3")));
+        assertNotNull(cache.getByCode("TZ.R2"));
+        assertNotNull(cache.getByCode("TZ.R3"));
+        assertNull(cache.getByCode("TZ.R1"));
+    }
+
+    @Test
+    public void stopsRecordingWritesForAnAbortedLoad() {
+        LocationCache.Load failed = cache.beginLoad();
+        failed.put(location("Geita", "Region", "TZ.R2"));
+        cache.put(location("Kagera", "Region", "TZ.R3"));
+        assertTrue(cache.isLoading());
+
+        cache.abortLoad(failed);
+        assertFalse(cache.isLoading());
+        cache.put(location("Mara", "Region", "TZ.R4"));
+        assertFalse("writes after the abort are not buffered", cache.isLoading());
+        assertNull(cache.getByCode("TZ.R2"));
+        assertNotNull(cache.getByCode("TZ.R3"));
+        assertNotNull(cache.getByCode("TZ.R4"));
+
+        // The next load replays only what was written while it ran
+        LocationCache.Load next = cache.beginLoad();
+        next.put(region);
+        cache.put(location("Simiyu", "Region", "TZ.R5"));
+        cache.publish(next, snapshot -> { });
+        assertNotNull(cache.getByCode("TZ.R1"));
+        assertNotNull(cache.getByCode("TZ.R5"));
+        assertNull(cache.getByCode("TZ.R3"));
+        assertNull(cache.getByCode("TZ.R4"));
+    }
+
+    @Test
+    public void ignoresAnAbortOfALoadThatWasReplaced() {
+        LocationCache.Load first = cache.beginLoad();
+        LocationCache.Load second = cache.beginLoad();
+        cache.abortLoad(first);
+        assertTrue(cache.isLoading());
+        cache.put(location("Kagera", "Region", "TZ.R3"));
+        cache.publish(second, snapshot -> { });
+        assertNotNull(cache.getByCode("TZ.R3"));
+    }
+
+    private static Location location(String name, String tag, String code) {
+        return new Location(UUID.randomUUID().toString(), name, null).withTag(tag)
+                .withAttribute(LocationCache.CODE_ATTRIBUTE, code);
+    }
+}
@@ -0,0 +1,112 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.Location;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LocationNameIndexTest {
+    private LocationNameIndex index;
+    private Location magu;
+    private Location kisesa;
+    private Location maguVillage;
+
+    @Before
+    public void setUp() {
+        index = new LocationNameIndex();
+        magu = location("Magu DC", "Council");
+        kisesa = location("Kisesa - Magu", "Ward");
+        maguVillage = location("Magu Mjini", "Village");
+        index.put(magu);
+        index.put(kisesa);
+        index.put(maguVillage);
+        index.put(location("Ilemela MC", "Council"));
+    }
+
+    @Test
+    public void normalizesCaseAccentsAndPunctuation() {
+        assertEquals("mamas clinic ilala", LocationNameIndex.normalize("Mama's  Clinic (Ilala)"));
+        assertEquals("mamas clinic", LocationNameIndex.normalize("Mama\u2019s Clinic"));
+        assertEquals("sao tome", LocationNameIndex.normalize("  S\u00e3o-Tom\u00e9 "));
+        assertEquals("", LocationNameIndex.normalize(" - "));
+        assertEquals("", LocationNameIndex.normalize(null));
+    }
+
+    @Test
+    public void findsAPrefixOfAnyWord() {
+        // Ordered by the matching word, so the bare "magu" comes first
+        assertEquals(List.of("Kisesa - Magu", "Magu DC", "Magu Mjini"), names(index.search("MAG", null, l -> true, 10)));
+        assertEquals(List.of("Kisesa - Magu"), names(index.search("kis", null, l -> true, 10)));
+        assertEquals(List.of("Magu DC"), names(index.search("magu d", null, l -> true, 10)));
+        assertTrue(index.search("agu", null, l -> true, 10).isEmpty());
+        assertTrue(index.search(" ", null, l -> true, 10).isEmpty());
+    }
+
+    @Test
+    public void appliesTheLevelTheFilterAndTheLimit() {
+        assertEquals(List.of("Magu DC"), names(index.search("mag", "council", l -> true, 10)));
+        assertTrue(index.search("mag", "Region", l -> true, 10).isEmpty());
+        assertEquals(List.of("Kisesa - Magu"), names(index.search("mag", null, l -> l != magu && l != maguVillage, 10)));
+        assertEquals(List.of("Kisesa - Magu", "Magu DC"), names(index.search("mag", null, l -> true, 2)));
+        assertTrue(index.search("mag", null, l -> true, 0).isEmpty());
+    }
+
+    @Test
+    public void listsALocationOnceWhenSeveralOfItsWordsMatch() {
+        index.put(location("Mwanza Mwanza", "Region"));
+        assertEquals(List.of("Mwanza Mwanza"), names(index.search("mwanza", null, l -> true, 10)));
+        assertEquals(List.of("Mwanza Mwanza"), names(index.search("mwanza", "Region", l -> true, 10)));
+    }
+
+    @Test
+    public void replacesTheKeysOfARenamedOrRetaggedLocation() {
+        Location renamed = magu.copy().withName("Busega DC");
+        index.put(renamed);
+        assertEquals(List.of("Kisesa - Magu", "Magu Mjini"), names(index.search("mag", null, l -> true, 10)));
+        assertEquals(List.of("Busega DC"), names(index.search("bus", "Council", l -> true, 10)));
+
+        Location retagged = new Location(renamed.getLocationId(), renamed.getName(), null).withTag("District");
+        index.put(retagged);
+        assertTrue(index.search("bus", "Council", l -> true, 10).isEmpty());
+        assertEquals(List.of("Busega DC"), names(index.search("bus", "District", l -> true, 10)));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void dropsALocationThatLosesItsNameOrIsRemoved() {
+        Location unnamed = new Location(kisesa.getLocationId(), null, null).withTag("Ward");
+        index.put(unnamed);
+        assertEquals(List.of("Magu DC", "Magu Mjini"), names(index.search("mag", null, l -> true, 10)));
+
+        // A stale copy does not remove the entry that replaced it
+        index.remove(magu.copy());
+        assertEquals(2, names(index.search("mag", null, l -> true, 10)).size());
+        index.remove(magu);
+        assertEquals(List.of("Magu Mjini"), names(index.search("mag", null, l -> true, 10)));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void findsAWholeNameIgnoringCase() {
+        assertSame(kisesa, index.findByName("KISESA - magu"));
+        assertNull(index.findByName("Kisesa"));
+        assertNull(index.findByName("Kisesa Magu"));
+        assertNull(index.findByName(""));
+    }
+
+    private static Location location(String name, String tag) {
+        return new Location(UUID.randomUUID().toString(), name, null).withTag(tag);
+    }
+
+    private static List<String> names(List<Location> locations) {
+        return locations.stream().map(Location::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,295 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.DeadLetter;
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.domain.LocationView;
+import com.moh.go.tz.domain.RefreshCheckpoint;
+import com.moh.go.tz.domain.RefreshRun;
+import com.moh.go.tz.domain.SyncResponse;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.ConfigException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocationSyncServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubOpenmrs openmrs;
+    private LocationSyncService service;
+
+    @Before
+    public void warmUp() throws Exception {
+        openmrs = new StubOpenmrs();
+        service = start(new HashMap<>());
+    }
+
+    private LocationSyncService start(Map<String, Object> settings) throws Exception {
+        LocationSyncService started = new LocationSyncService(openmrs.config(folder.newFolder().toPath(), settings));
+        started.startWarmUp();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!started.isReady()) {
+            assertTrue("cache did not load", System.nanoTime() < deadline);
+            Thread.sleep(20);
+        }
+        return started;
+    }
+
+    @After
+    public void stopOpenmrs() {
+        openmrs.close();
+    }
+
+    @Test
+    public void turnsAwayARefreshWhileOneIsRunning() {
+        List<Runnable> started = new ArrayList<>();
+        SyncResponse first = service.startRefresh(false, "manual", started::add);
+        assertEquals("accepted", first.getStatus());
+        assertTrue(service.isRefreshInProgress());
+
+        assertEquals(LocationSyncService.REFRESH_BUSY, service.startRefresh(false, "manual", started::add).getStatus());
+        assertEquals(LocationSyncService.REFRESH_BUSY, service.refresh(false, "scheduled").getStatus());
+        assertEquals(1, started.size());
+
+        started.get(0).run();
+        assertFalse(service.isRefreshInProgress());
+        assertEquals("accepted", service.startRefresh(false, "manual", Runnable::run).getStatus());
+        assertEquals(2, service.getRecentRefreshRuns().size());
+    }
+
+    @Test
+    public void keepsAFacilityDeadLetteredUntilOpenmrsCreatesItsLocations() {
+        openmrs.failWrites(true);
+        SyncResponse failed = service.syncFacility(StubOpenmrs.facilityPayload("TZ.R1", 1));
+        assertEquals("error", failed.getStatus());
+        List<DeadLetter> deadLetters = service.getDeadLetters().list(null, null, null);
+        assertEquals(1, deadLetters.size());
+        assertEquals(LocationSyncService.CREATE_FAILED, deadLetters.get(0).getErrorType());
+
+        openmrs.failWrites(false);
+        assertEquals("success", service.syncFacility(deadLetters.get(0).getPayload()).getStatus());
+        assertEquals(0, service.getDeadLetters().size());
+    }
+
+    @Test
+    public void holdsTheCheckpointBeforeAnAdminPageWithFailedRows() throws Exception {
+        List<Integer> requested = new ArrayList<>();
+        HttpServer hfr = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        hfr.createContext("/", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            int page = Integer.parseInt(query.substring(query.indexOf('=') + 1));
+            boolean hierarchy = exchange.getRequestURI().getPath().startsWith("/hierarchy");
+            JSONArray data = new JSONArray();
+            if (hierarchy) {
+                synchronized (requested) {
+                    requested.add(page);
+                }
+                data.put(adminRow("TZ.P" + page));
+            }
+            byte[] body = new JSONObject().put("data", data)
+                    .put("metaData", new JSONObject().put("pageCount", hierarchy ? 3 : 1).put("currentPage", page))
+                    .toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        hfr.start();
+        try {
+            String hfrUrl = "http://127.0.0.1:" + hfr.getAddress().getPort();
+            Map<String, Object> settings = new HashMap<>();
+            settings.put("hfr.base-url-hierarchy", hfrUrl + "/hierarchy?page=");
+            settings.put("hfr.base-url-health-facilities", hfrUrl + "/facilities?page=");
+            Path dir = folder.newFolder().toPath();
+            openmrs.seed("Tanzania", "Country", null, "TZ");
+            LocationSyncService refreshing = new LocationSyncService(openmrs.config(dir, settings));
+            refreshing.startWarmUp();
+            openmrs.failCreate("TZ.P2", true);
+
+            RefreshRun partial = refreshing.refresh(false, "manual");
+            assertEquals("partial", partial.getStatus());
+            RefreshCheckpoint checkpoint = new RefreshCheckpointStore(dir.resolve("hfr-refresh.checkpoint"),
+                    Duration.ofHours(1)).loadFresh();
+            assertEquals(HfrClient.ENDPOINT_HIERARCHY, checkpoint.getEndpoint());
+            assertEquals(1, checkpoint.getLastPage());
+
+            openmrs.failCreate("TZ.P2", false);
+            requested.clear();
+            assertEquals("success", refreshing.refresh(true, "manual").getStatus());
+            assertEquals(Arrays.asList(2, 3), requested);
+            assertTrue(openmrs.createdCodes().contains("TZ.P2"));
+        } finally {
+            hfr.stop(0);
+        }
+    }
+
+    @Test
+    public void findsAnUnhydratedLocationByNameWhenCreatingItFails() throws Exception {
+        String region = openmrs.seed("Region TZ.R9", "Region", null, "TZ.R9");
+        String district = openmrs.seed("District TZ.R9", "District", region, "TZ.R9.D1");
+        String council = openmrs.seed("Council TZ.R9", "Council", district, "TZ.R9.D1.C1");
+        String ward = openmrs.seed("Ward TZ.R9 - Council TZ.R9", "Ward", council, "TZ.R9.D1.C1.W1");
+        String facility = openmrs.seed("facility tz.r9 1 - tz.r9-1", "Facility", ward, null);
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("openmrs.warm-start.background-hydration", false);
+        settings.put("openmrs.cache.lookup-on-miss", false);
+        LocationSyncService unhydrated = start(settings);
+        openmrs.failCreate("TZ.R9-1", true);
+
+        assertEquals("success", unhydrated.syncFacility(StubOpenmrs.facilityPayload("TZ.R9", 1)).getStatus());
+        assertEquals(facility, unhydrated.findLocationView("TZ.R9-1").getUuid());
+        assertFalse(openmrs.createdCodes().contains("TZ.R9-1"));
+    }
+
+    @Test
+    public void servesReadsFromTheSnapshotWithoutLoadingDetails() throws Exception {
+        String region = openmrs.seed("Region TZ.R8", "Region", null, "TZ.R8");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("openmrs.warm-start.background-hydration", false);
+        LocationSyncService unhydrated = start(settings);
+        int fetches = openmrs.locationFetches();
+
+        LocationView view = unhydrated.findLocationView("TZ.R8");
+        assertEquals(region, view.getUuid());
+        assertEquals("TZ.R8", view.getCode());
+        assertNull(view.getName());
+        assertEquals(1, unhydrated.lookupLocations(Arrays.asList("TZ.R8", "TZ.R0")).getMissing().size());
+        assertEquals(fetches, openmrs.locationFetches());
+    }
+
+    @Test
+    public void keepsTheLiveCacheAndStopsBufferingWhenAReloadFails() throws Exception {
+        String region = openmrs.seed("Region TZ.R7", "Region", null, "TZ.R7");
+        service.refreshLocationCache();
+        openmrs.failListings(true);
+        int listings = openmrs.listings();
+        Throwable[] failure = new Throwable[1];
+        Thread reload = new Thread(() -> {
+            try {
+                service.refreshLocationCache();
+            } catch (RuntimeException e) {
+                failure[0] = e;
+            }
+        });
+        reload.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        // Background hydration lists locations too, so also wait for the load itself
+        while (openmrs.listings() == listings || !service.cache().isLoading()) {
+            assertTrue("reload did not start", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        reload.interrupt();
+        reload.join(10_000);
+
+        assertTrue("reload gave up", failure[0] != null);
+        assertFalse(service.cache().isLoading());
+        assertEquals(region, service.findLocationView("TZ.R7").getUuid());
+        assertEquals("success", service.syncFacility(StubOpenmrs.facilityPayload("TZ.R7", 1)).getStatus());
+        assertFalse("later writes are not buffered", service.cache().isLoading());
+
+        openmrs.failListings(false);
+        service.refreshLocationCache();
+        assertEquals(region, service.findLocationView("TZ.R7").getUuid());
+        assertTrue(service.findLocationView("TZ.R7-1") != null);
+    }
+
+    @Test(expected = ConfigException.BadValue.class)
+    public void refusesABoundedCacheWithoutLookupsOnMiss() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("openmrs.cache.max-leaf-entries", 100);
+        settings.put("openmrs.cache.lookup-on-miss", false);
+        new LocationSyncService(openmrs.config(folder.newFolder().toPath(), settings));
+    }
+
+    @Test
+    public void keepsTheLiveCacheWhileAListingPageFails() throws Exception {
+        String region = openmrs.seed("Region TZ.R5", "Region", null, "TZ.R5");
+        String village = openmrs.seed("Village TZ.R5.V1", "Village", region, "TZ.R5.V1");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("openmrs.cache.max-leaf-entries", 100);
+        settings.put("openmrs.cache.lookup-on-miss", true);
+        settings.put("openmrs.warm-start.background-hydration", false);
+        LocationSyncService bounded = start(settings);
+        long version = bounded.cache().version();
+
+        // The admin scopes load, then the village listing answers 500
+        openmrs.failListing("Village", true);
+        int listings = openmrs.listings();
+        Thread reload = new Thread(bounded::refreshLocationCache);
+        reload.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (openmrs.listings() < listings + 2 || !bounded.cache().isLoading()) {
+            assertTrue("reload did not reach the village listing", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        Thread.sleep(1500);
+        assertTrue("the failed page is retried", reload.isAlive());
+        assertEquals(version, bounded.cache().version());
+        assertEquals(village, bounded.findLocationView("TZ.R5.V1").getUuid());
+
+        openmrs.failListing("Village", false);
+        reload.join(10_000);
+        assertFalse(reload.isAlive());
+        assertTrue(bounded.cache().version() > version);
+        assertEquals(village, bounded.findLocationView("TZ.R5.V1").getUuid());
+    }
+
+    @Test
+    public void appliesTheJournalThroughTheRouterSetBeforeWarmUp() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hfr.journal.enabled", true);
+        LocationSyncService journaled = new LocationSyncService(openmrs.config(folder.newFolder().toPath(), settings));
+        journaled.acceptFacility(StubOpenmrs.facilityPayload("TZ.R6", 1));
+
+        CompletableFuture<HfrFacilityPayload> routed = new CompletableFuture<>();
+        journaled.setRegionRouter(new RegionRouter() {
+            @Override
+            public CompletionStage<SyncResponse> syncFacility(HfrFacilityPayload payload) {
+                routed.complete(payload);
+                return CompletableFuture.completedFuture(new SyncResponse("success", "routed"));
+            }
+
+            @Override
+            public CompletionStage<SyncResponse> applyAdminRows(String regionCode, Map<String, String> zoneUuids,
+                                                                List<String> rows) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        journaled.startWarmUp();
+        assertEquals("TZ.R6-1", routed.get(30, TimeUnit.SECONDS).getFacIdNumber());
+    }
+
+    private static JSONObject adminRow(String regionCode) {
+        return new JSONObject()
+                .put("country", "Tanzania").put("zone", "Zone").put("zone_code", "TZ.Z1")
+                .put("region", "Region " + regionCode).put("region_code", regionCode)
+                .put("district", "District").put("district_code", regionCode + ".D1")
+                .put("council", "Council").put("council_code", regionCode + ".D1.C1")
+                .put("ward", "Ward").put("ward_code", regionCode + ".D1.C1.W1")
+                .put("village_mtaa", "Village").put("village_mtaa_code", regionCode + ".D1.C1.W1.V1");
+    }
+}
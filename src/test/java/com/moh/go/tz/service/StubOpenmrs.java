@@ -0,0 +1,377 @@
+package com.moh.go.tz.service;
+
+import com.moh.go.tz.domain.HfrFacilityPayload;
+import com.moh.go.tz.util.CustomJacksonObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory stand-in for the OpenMRS location REST API, enough for {@link LocationSyncService} to load its
+ * cache, create, rename, reparent, retire and look up locations. Every location is returned with all
+ * fields whatever representation is asked for.
+ */
+public class StubOpenmrs implements AutoCloseable {
+    public static final String CODE_TYPE = "code-attribute-type";
+    public static final String HFR_CODE_TYPE = "hfr-code-attribute-type";
+    private static final String LOCATION_PATH = "/openmrs/ws/rest/v1/location";
+
+    private final HttpServer server;
+    private final Map<String, JSONObject> locations = new LinkedHashMap<>();
+    private final List<String> created = new ArrayList<>();
+    private final Set<String> failingCodes = ConcurrentHashMap.newKeySet();
+    private volatile boolean failingWrites;
+    private volatile boolean failingListings;
+    private final Set<String> failingListingTags = ConcurrentHashMap.newKeySet();
+    private int locationFetches;
+    private int listings;
+
+    public StubOpenmrs() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/openmrs/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/openmrs/";
+    }
+
+    /**
+     * Settings for a {@link LocationSyncService} talking to this stub, keeping all its files under {@code dir}.
+     * HFR itself is left unreachable.
+     */
+    public Config config(Path dir) {
+        return config(dir, Collections.emptyMap());
+    }
+
+    public Config config(Path dir, Map<String, Object> overrides) {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("openmrs.base-url", baseUrl());
+        settings.put("openmrs.code-location-attribute-uuid", CODE_TYPE);
+        settings.put("openmrs.hfr-code-location-attribute-uuid", HFR_CODE_TYPE);
+        settings.put("hfr.base-url-health-facilities", "http://127.0.0.1:1/facilities?page=");
+        settings.put("hfr.base-url-hierarchy", "http://127.0.0.1:1/hierarchy?page=");
+        settings.put("hfr.refresh.history.file", dir.resolve("refresh-runs.jsonl").toString());
+        settings.put("hfr.checkpoint.file", dir.resolve("hfr-refresh.checkpoint").toString());
+        settings.put("hfr.dead-letter.file", dir.resolve("dead-letters.jsonl").toString());
+        settings.put("hfr.spool.directory", dir.resolve("spool").toString());
+        settings.put("hfr.journal.directory", dir.resolve("journal").toString());
+        settings.putAll(overrides);
+        return ConfigFactory.parseMap(settings).withFallback(ConfigFactory.load());
+    }
+
+    /**
+     * Adds a location as if it had been created earlier; {@code parentUuid} and {@code code} may be null.
+     */
+    public synchronized String seed(String name, String tag, String parentUuid, String code) {
+        String uuid = UUID.randomUUID().toString();
+        JSONObject location = new JSONObject().put("uuid", uuid).put("retired", false);
+        location.put("tags", new JSONArray().put(new JSONObject().put("uuid", tag).put("display", tag)));
+        location.put("attributes", new JSONArray());
+        setName(location, name);
+        setParent(location, parentUuid);
+        if (code != null) {
+            setAttribute(location, "Facility".equalsIgnoreCase(tag) ? HFR_CODE_TYPE : CODE_TYPE, code);
+        }
+        locations.put(uuid, location);
+        return uuid;
+    }
+
+    /**
+     * Makes every create and update answer 500, as an OpenMRS outage would.
+     */
+    public void failWrites(boolean failing) {
+        this.failingWrites = failing;
+    }
+
+    /**
+     * Makes location listings answer with a body that is not JSON, so a cache reload keeps retrying.
+     */
+    public void failListings(boolean failing) {
+        this.failingListings = failing;
+    }
+
+    /**
+     * Makes listings of locations with this tag answer 500, or succeed again with {@code failing} false.
+     */
+    public void failListing(String tag, boolean failing) {
+        if (failing) {
+            failingListingTags.add(tag);
+        } else {
+            failingListingTags.remove(tag);
+        }
+    }
+
+    /**
+     * Makes creating a location with this code answer 500, or succeed again with {@code failing} false.
+     */
+    public void failCreate(String code, boolean failing) {
+        if (failing) {
+            failingCodes.add(code);
+        } else {
+            failingCodes.remove(code);
+        }
+    }
+
+    /**
+     * The codes of the locations created through the API, in order.
+     */
+    public synchronized List<String> createdCodes() {
+        return new ArrayList<>(created);
+    }
+
+    /**
+     * How many single locations or child lists have been fetched by uuid.
+     */
+    public synchronized int locationFetches() {
+        return locationFetches;
+    }
+
+    /**
+     * How many location listing pages have been requested.
+     */
+    public synchronized int listings() {
+        return listings;
+    }
+
+    public synchronized String nameOf(String uuid) {
+        JSONObject location = locations.get(uuid);
+        return location != null ? location.optString("name", null) : null;
+    }
+
+    /**
+     * A payload for facility {@code facility} of the region with the given code, with one district,
+     * council and ward per region and one village per facility.
+     */
+    public static HfrFacilityPayload facilityPayload(String regionCode, int facility) {
+        JSONObject payload = new JSONObject()
+                .put("Region_Code", regionCode).put("Region", "Region " + regionCode)
+                .put("District_Code", regionCode + ".D1").put("District", "District " + regionCode)
+                .put("Council_Code", regionCode + ".D1.C1").put("Council", "Council " + regionCode)
+                .put("Ward_Code", regionCode + ".D1.C1.W1").put("Ward", "Ward " + regionCode)
+                .put("Village_Code", regionCode + ".D1.C1.W1.V" + facility).put("Village", "Village " + facility)
+                .put("Fac_IDNumber", regionCode + "-" + facility)
+                .put("Name", "Facility " + regionCode + " " + facility)
+                .put("FacilityType", "Dispensary")
+                .put("OperatingStatus", "Operating");
+        try {
+            return CustomJacksonObjectMapper.mapper.readValue(payload.toString(), HfrFacilityPayload.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            String method = exchange.getRequestMethod();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (!path.startsWith(LOCATION_PATH)) {
+                respond(exchange, 404, new JSONObject());
+                return;
+            }
+            String uuid = path.length() > LOCATION_PATH.length() + 1 ? path.substring(LOCATION_PATH.length() + 1) : null;
+            if (!"GET".equals(method) && failingWrites) {
+                respond(exchange, 500, new JSONObject().put("error", "unavailable"));
+                return;
+            }
+            synchronized (this) {
+                if ("GET".equals(method) && uuid == null) {
+                    listings++;
+                    if (failingListings) {
+                        byte[] garbled = "<html>".getBytes(StandardCharsets.UTF_8);
+                        exchange.sendResponseHeaders(200, garbled.length);
+                        exchange.getResponseBody().write(garbled);
+                        exchange.close();
+                        return;
+                    }
+                    String tag = parameter(query, "tag");
+                    if (tag != null && failingListingTags.contains(tag)) {
+                        respond(exchange, 500, new JSONObject().put("error", "unavailable"));
+                        return;
+                    }
+                    respond(exchange, 200, new JSONObject().put("results", list(parameter(query, "tag"), parameter(query, "q"))));
+                } else if ("GET".equals(method)) {
+                    locationFetches++;
+                    JSONObject location = locations.get(uuid);
+                    if (location == null) {
+                        respond(exchange, 404, new JSONObject());
+                    } else if (query != null && query.contains("childLocations")) {
+                        respond(exchange, 200, new JSONObject().put("uuid", uuid).put("childLocations", children(uuid)));
+                    } else {
+                        respond(exchange, 200, location);
+                    }
+                } else if ("POST".equals(method) && uuid == null) {
+                    JSONObject location = create(new JSONObject(body));
+                    respond(exchange, location != null ? 201 : 500, location != null ? location : new JSONObject());
+                } else if ("POST".equals(method)) {
+                    JSONObject location = locations.get(uuid);
+                    if (location == null) {
+                        respond(exchange, 404, new JSONObject());
+                        return;
+                    }
+                    update(location, new JSONObject(body));
+                    respond(exchange, 200, location);
+                } else if ("DELETE".equals(method) && locations.containsKey(uuid)) {
+                    locations.get(uuid).put("retired", true);
+                    respond(exchange, 204, null);
+                } else {
+                    respond(exchange, 404, new JSONObject());
+                }
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 500, new JSONObject().put("error", String.valueOf(e)));
+        }
+    }
+
+    private JSONArray list(String tag, String search) {
+        JSONArray results = new JSONArray();
+        for (JSONObject location : locations.values()) {
+            if (tag != null && !hasTag(location, tag)) {
+                continue;
+            }
+            if (search != null && !location.optString("name").toLowerCase().contains(search.toLowerCase())) {
+                continue;
+            }
+            results.put(location);
+        }
+        return results;
+    }
+
+    private JSONArray children(String parentUuid) {
+        JSONArray children = new JSONArray();
+        for (JSONObject location : locations.values()) {
+            JSONObject parent = location.optJSONObject("parentLocation");
+            if (parent != null && parentUuid.equals(parent.optString("uuid"))) {
+                children.put(location);
+            }
+        }
+        return children;
+    }
+
+    private JSONObject create(JSONObject request) {
+        JSONArray attributes = request.optJSONArray("attributes");
+        for (int i = 0; attributes != null && i < attributes.length(); i++) {
+            if (failingCodes.contains(attributes.getJSONObject(i).getString("value"))) {
+                return null;
+            }
+        }
+        String uuid = UUID.randomUUID().toString();
+        JSONObject location = new JSONObject().put("uuid", uuid).put("retired", false).put("attributes", new JSONArray());
+        JSONArray tags = new JSONArray();
+        JSONArray requestedTags = request.optJSONArray("tags");
+        for (int i = 0; requestedTags != null && i < requestedTags.length(); i++) {
+            String tag = requestedTags.getJSONObject(i).getString("name");
+            tags.put(new JSONObject().put("uuid", tag).put("display", tag));
+        }
+        location.put("tags", tags);
+        setName(location, request.getString("name"));
+        setParent(location, request.optString("parentLocation", null));
+        for (int i = 0; attributes != null && i < attributes.length(); i++) {
+            JSONObject attribute = attributes.getJSONObject(i);
+            setAttribute(location, attribute.getString("attributeType"), attribute.getString("value"));
+            created.add(attribute.getString("value"));
+        }
+        locations.put(uuid, location);
+        return new JSONObject().put("uuid", uuid).put("name", location.getString("name"));
+    }
+
+    private void update(JSONObject location, JSONObject request) {
+        if (request.has("name")) {
+            setName(location, request.getString("name"));
+        }
+        if (request.has("parentLocation")) {
+            setParent(location, request.getJSONObject("parentLocation").getString("uuid"));
+        }
+        if (request.has("retired")) {
+            location.put("retired", request.getBoolean("retired"));
+        }
+        JSONArray attributes = request.optJSONArray("attributes");
+        for (int i = 0; attributes != null && i < attributes.length(); i++) {
+            JSONObject attribute = attributes.getJSONObject(i);
+            setAttribute(location, attribute.getString("attributeType"), attribute.getString("value"));
+        }
+    }
+
+    private static void setName(JSONObject location, String name) {
+        location.put("name", name).put("display", name);
+    }
+
+    private void setParent(JSONObject location, String parentUuid) {
+        JSONObject parent = parentUuid != null ? locations.get(parentUuid) : null;
+        location.put("parentLocation", parentUuid == null ? JSONObject.NULL
+                : new JSONObject().put("uuid", parentUuid).put("display", parent != null ? parent.optString("name") : ""));
+    }
+
+    private static void setAttribute(JSONObject location, String type, String value) {
+        String name = HFR_CODE_TYPE.equals(type) ? LocationCache.HFR_CODE_ATTRIBUTE : LocationCache.CODE_ATTRIBUTE;
+        JSONArray attributes = location.getJSONArray("attributes");
+        for (int i = attributes.length() - 1; i >= 0; i--) {
+            if (type.equals(attributes.getJSONObject(i).getJSONObject("attributeType").getString("uuid"))) {
+                attributes.remove(i);
+            }
+        }
+        attributes.put(new JSONObject().put("value", value).put("voided", false).put("display", name + ": " + value)
+                .put("attributeType", new JSONObject().put("uuid", type)));
+    }
+
+    private static boolean hasTag(JSONObject location, String tag) {
+        JSONArray tags = location.getJSONArray("tags");
+        for (int i = 0; i < tags.length(); i++) {
+            if (tag.equalsIgnoreCase(tags.getJSONObject(i).getString("display"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String parameter(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body != null ? body.toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.moh.go.tz.util;
+
+import com.moh.go.tz.Benchmark;
+
+/**
+ * Name normalization per call, against the split-based implementation it replaced.
+ */
+public class CapitalizeUtilBenchmark {
+    private static final String[] NAMES = {
+            "DAR ES SALAAM", "Kinondoni MC", "kisesa - MAGU DC", "Mwanza", "ilala municipal council",
+            "Zahanati ya Kijiji cha Mwamanyili - 103456-2", "\"St. Joseph\" Hospital - 100234-7", "Mbeya CC"
+    };
+
+    public static void main(String[] args) {
+        int ops = 1 << 20;
+        Benchmark.measure("split-based (before)", ops, i -> Benchmark.consume(splitBased(NAMES[i & 7])));
+        Benchmark.measure("capitalizeWords", ops, i -> Benchmark.consume(CapitalizeUtil.capitalizeWords(NAMES[i & 7])));
+        Benchmark.measure("capitalizeCached", ops, i -> Benchmark.consume(CapitalizeUtil.capitalizeCached(NAMES[i & 7])));
+    }
+
+    private static String splitBased(String input) {
+        String[] words = input.replace("\"", "").split("\\s+");
+        StringBuilder formatted = new StringBuilder();
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                formatted.append(word.length() <= 2 ? word.toUpperCase()
+                        : word.substring(0, 1).toUpperCase() + word.substring(1).toLowerCase()).append(' ');
+            }
+        }
+        return formatted.toString().trim();
+    }
+}
@@ -0,0 +1,82 @@
+package com.moh.go.tz.util;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CapitalizeUtilTest {
+    private static final String ALPHABET = "abcXYZ zQ\"\t\n\r\u000b\f-.'1\u00e9\u00c9\u0131\u0130i\u00df\u03a3\u00a0";
+
+    /**
+     * The split-based implementation {@link CapitalizeUtil#capitalizeWords} replaced.
+     */
+    private static String reference(String input) {
+        if (input == null || input.isEmpty()) {
+            return input;
+        }
+        String sanitizedInput = input.replace("\"", "");
+        String[] words = sanitizedInput.split("\\s+");
+        StringBuilder formatted = new StringBuilder();
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                if (word.length() <= 2) {
+                    formatted.append(word.toUpperCase()).append(" ");
+                } else {
+                    String capWord = word.substring(0, 1).toUpperCase() + word.substring(1).toLowerCase();
+                    formatted.append(capWord).append(" ");
+                }
+            }
+        }
+        return formatted.toString().trim();
+    }
+
+    @Test
+    public void matchesTheSplitBasedImplementationOnRandomInput() {
+        Locale original = Locale.getDefault();
+        try {
+            for (Locale locale : new Locale[]{Locale.ROOT, Locale.ENGLISH, new Locale("sw", "TZ"),
+                    new Locale("tr", "TR"), new Locale("lt")}) {
+                Locale.setDefault(locale);
+                Random random = new Random(locale.hashCode());
+                for (int n = 0; n < 50_000; n++) {
+                    char[] chars = new char[random.nextInt(24)];
+                    for (int i = 0; i < chars.length; i++) {
+                        chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+                    }
+                    String input = new String(chars);
+                    assertEquals(locale + " " + escape(input), reference(input), CapitalizeUtil.capitalizeWords(input));
+                }
+            }
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    public void normalizesTypicalNames() {
+        assertEquals("Kisesa - Magu DC", CapitalizeUtil.capitalizeWords("  KISESA -  magu dc "));
+        assertEquals("Mama's Clinic", CapitalizeUtil.capitalizeWords("mama's \"CLINIC\""));
+        assertEquals("", CapitalizeUtil.capitalizeWords(" \"\" "));
+        assertNull(CapitalizeUtil.capitalizeWords(null));
+    }
+
+    @Test
+    public void cachedMatchesUncached() {
+        String first = CapitalizeUtil.capitalizeCached("DAR ES SALAAM");
+        assertEquals(CapitalizeUtil.capitalizeWords("DAR ES SALAAM"), first);
+        assertSame(first, CapitalizeUtil.capitalizeCached("DAR ES SALAAM"));
+    }
+
+    private static String escape(String input) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : input.toCharArray()) {
+            escaped.append(c >= 0x20 && c < 0x7f ? String.valueOf(c) : String.format("\\u%04x", (int) c));
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package com.moh.go.tz.util;
+
+import com.moh.go.tz.Benchmark;
+import com.moh.go.tz.domain.LocationAttributeValue;
+import com.moh.go.tz.domain.LocationCreateRequest;
+import com.moh.go.tz.domain.LocationResponse;
+import com.moh.go.tz.domain.LocationUpdateRequest;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * The request and response work of one new-facility sync (create and its response, a rename, a
+ * reparent), with {@link OpenmrsCodec} against the org.json trees it replaced. Bodies go to an in-memory
+ * connection, so only encoding and decoding is measured.
+ */
+public class OpenmrsCodecBenchmark {
+    private static final String PARENT = "8d6c993e-c2cc-11de-8d13-0010c6dffd0f";
+    private static final String CODE_TYPE = "d1ea5c1b-4c54-4695-af80-5c4c25bdcaf7";
+    private static final byte[] CREATED = ("{\"uuid\":\"0c3ef2b5-8d8f-4b45-9f0e-2a2b1d5e7c11\","
+            + "\"display\":\"Zahanati Ya Mwamanyili - 103456-2\",\"name\":\"Zahanati Ya Mwamanyili - 103456-2\","
+            + "\"description\":\"Created via HFR integration\",\"retired\":false,\"links\":[{\"rel\":\"self\","
+            + "\"uri\":\"http://openmrs/ws/rest/v1/location/0c3ef2b5-8d8f-4b45-9f0e-2a2b1d5e7c11\"}]}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        MemoryConnection connection = new MemoryConnection();
+        int ops = 1 << 16;
+        Benchmark.measure("org.json (before)", ops, i -> Benchmark.consume(withOrgJson(connection, i)));
+        Benchmark.measure("OpenmrsCodec", ops, i -> Benchmark.consume(withCodec(connection, i)));
+    }
+
+    private static String withOrgJson(MemoryConnection connection, int i) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("name", "Zahanati Ya Mwamanyili - 103456-2");
+            json.put("description", "Created via HFR integration");
+            json.put("parentLocation", PARENT);
+            json.put("tags", new JSONArray().put(new JSONObject().put("name", "Facility")));
+            json.put("attributes", new JSONArray().put(new JSONObject()
+                    .put("attributeType", CODE_TYPE).put("value", "103456-" + (i & 7))));
+            send(connection, json);
+
+            StringBuilder response = new StringBuilder();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(CREATED)))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    response.append(line);
+                }
+            }
+            JSONObject created = new JSONObject(response.toString());
+
+            send(connection, new JSONObject().put("name", "Zahanati Ya Mwamanyili"));
+            send(connection, new JSONObject().put("parentLocation", new JSONObject().put("uuid", PARENT)));
+            return created.getString("uuid");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String withCodec(MemoryConnection connection, int i) {
+        try {
+            OpenmrsCodec.write(connection, new LocationCreateRequest("Zahanati Ya Mwamanyili - 103456-2",
+                    "Created via HFR integration", PARENT,
+                    Collections.singletonList(new LocationCreateRequest.TagRef("Facility")),
+                    Collections.singletonList(new LocationAttributeValue(CODE_TYPE, "103456-" + (i & 7)))));
+            LocationResponse created = OpenmrsCodec.readLocation(new ByteArrayInputStream(CREATED));
+            OpenmrsCodec.write(connection, LocationUpdateRequest.rename("Zahanati Ya Mwamanyili"));
+            OpenmrsCodec.write(connection, LocationUpdateRequest.reparent(PARENT));
+            return created.getUuid();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void send(MemoryConnection connection, JSONObject json) throws IOException {
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * A connection whose request body goes to a reused in-memory buffer.
+     */
+    private static final class MemoryConnection extends HttpURLConnection {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+        private MemoryConnection() throws IOException {
+            super(new URL("http://localhost/ws/rest/v1/location"));
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            body.reset();
+            return body;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+}
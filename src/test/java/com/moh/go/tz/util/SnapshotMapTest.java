@@ -0,0 +1,67 @@
+package com.moh.go.tz.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotMapTest {
+    private static final int KEYS = 2000;
+
+    @Test
+    public void leavesBuiltMapsUnchangedByLaterWrites() {
+        SnapshotMap.Builder<Integer> builder = SnapshotMap.<Integer>empty().toBuilder();
+        for (int i = 0; i < KEYS; i++) {
+            builder.put("k" + i, i);
+        }
+        SnapshotMap<Integer> first = builder.build();
+
+        builder.put("k0", -1);
+        builder.remove("k1");
+        builder.put("extra", 0);
+        SnapshotMap<Integer> second = builder.build();
+        builder.remove("k2");
+
+        assertEquals(KEYS, first.size());
+        assertEquals(0, (int) first.get("k0"));
+        assertEquals(1, (int) first.get("k1"));
+        assertNull(first.get("extra"));
+        assertEquals(KEYS, second.size());
+        assertEquals(-1, (int) second.get("k0"));
+        assertNull(second.get("k1"));
+        assertEquals(2, (int) second.get("k2"));
+        assertEquals(KEYS - 1, builder.size());
+        assertTrue(SnapshotMap.empty().size() == 0 && SnapshotMap.empty().get("k0") == null);
+    }
+
+    @Test
+    public void leavesTheBaseOfABuilderUnchanged() {
+        SnapshotMap.Builder<Integer> builder = SnapshotMap.<Integer>empty().toBuilder();
+        builder.put("a", 1);
+        SnapshotMap<Integer> base = builder.build();
+
+        SnapshotMap.Builder<Integer> changed = base.toBuilder();
+        changed.put("a", 2);
+        assertNull(changed.remove("missing"));
+        assertEquals(1, changed.size());
+        assertEquals(2, (int) changed.build().get("a"));
+        assertEquals(1, (int) base.get("a"));
+    }
+
+    @Test
+    public void iteratesEveryValueOnce() {
+        SnapshotMap.Builder<Integer> builder = SnapshotMap.<Integer>empty().toBuilder();
+        for (int i = 0; i < KEYS; i++) {
+            builder.put("k" + i, i);
+        }
+        Set<Integer> seen = new HashSet<>();
+        for (int value : builder.build()) {
+            assertTrue(seen.add(value));
+        }
+        assertEquals(KEYS, seen.size());
+    }
+}